@@ -345,8 +345,8 @@ class VirtualPostfixMachine:
 
         if r_token == "r-val":
             r_lexeme, r_token = self._get_value(r_lexeme)
-            if r_token != self.variable_types[l_lexeme]:
-                console.print(f"\nПОМИЛКА: Невідповідність типів у присвоєнні: {l_lexeme} ({self.variable_types[l_lexeme]}) та {r_lexeme} ({r_token}); рядок {self.pc + self.code_start_num}, модуль {self.module}")
+            if r_token != self._get_var_type(l_lexeme):
+                console.print(f"\nПОМИЛКА: Невідповідність типів у присвоєнні: {l_lexeme} ({self._get_var_type(l_lexeme)}) та {r_lexeme} ({r_token}); рядок {self.pc + self.code_start_num}, модуль {self.module}")
                 exit(1)
             self._set_value(l_lexeme, r_lexeme)
         else:
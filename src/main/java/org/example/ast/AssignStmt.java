@@ -1,9 +1,10 @@
 package org.example.ast;
 
-public class AssignStmt implements Stmt {
+public final class AssignStmt implements Stmt {
     public final String name;
     public final Expr value;
     public final int line;
+    public Binding binding; // Filled in by SemanticAnalyzer
 
     @Override
     public String toString() {
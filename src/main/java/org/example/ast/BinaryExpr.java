@@ -1,11 +1,11 @@
 package org.example.ast;
 
-public class BinaryExpr implements Expr {
+public final class BinaryExpr extends Expr {
     public final Expr left;
-    public final String op;
+    public final BinaryOp op;
     public final Expr right;
     public final int line;
-    public BinaryExpr(Expr left, String op, Expr right,int line) {
+    public BinaryExpr(Expr left, BinaryOp op, Expr right,int line) {
         this.left = left;
         this.op = op;
         this.right = right;
@@ -0,0 +1,34 @@
+package org.example.ast;
+
+/**
+ * Binary operators. toString() is the operator as written in source.
+ */
+public enum BinaryOp {
+    ADD("+"),
+    SUB("-"),
+    MUL("*"),
+    DIV("/"),
+    POW("^"),
+    EQ("=="),
+    NEQ("!="),
+    LT("<"),
+    LE("<="),
+    GT(">"),
+    GE(">=");
+
+    private final String symbol;
+
+    BinaryOp(String symbol) {
+        this.symbol = symbol;
+    }
+
+    // ==, !=, <, <=, >, >=
+    public boolean isComparison() {
+        return ordinal() >= EQ.ordinal();
+    }
+
+    @Override
+    public String toString() {
+        return symbol;
+    }
+}
@@ -0,0 +1,28 @@
+package org.example.ast;
+
+/**
+ * Where a variable lives, assigned once by SemanticAnalyzer for every declaration and reference.
+ * Slots are numbered per frame: globals of the program, parameters and locals of a function
+ * (the top-level code is the frame of Main).
+ */
+public final class Binding {
+    public enum Kind {
+        GLOBAL, // top-level variable; slot in the program's globals
+        PARAM,  // parameter of the current function; slot in its parameter list
+        LOCAL,  // block variable of the current function (or of Main); slot in its locals
+        OUTER   // parameter or local of an enclosing function, reachable only by name
+    }
+
+    public final Kind kind;
+    public final int slot;
+
+    public Binding(Kind kind, int slot) {
+        this.kind = kind;
+        this.slot = slot;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + slot;
+    }
+}
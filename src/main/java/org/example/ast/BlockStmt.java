@@ -1,7 +1,7 @@
 package org.example.ast;
 import java.util.List;
 
-public class BlockStmt implements Stmt {
+public final class BlockStmt implements Stmt {
     public final List<Stmt> statements;
     public final int line;
     public BlockStmt(List<Stmt> statements,int line) {
@@ -1,6 +1,6 @@
 package org.example.ast;
 
-public class BoolLiteral implements Expr {
+public final class BoolLiteral extends Expr {
     public final boolean value;
     public final int line;
     public BoolLiteral(boolean value,int line) { this.value = value;this.line = line; }
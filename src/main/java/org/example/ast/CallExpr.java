@@ -2,7 +2,7 @@ package org.example.ast;
 
 import java.util.List;
 
-public class CallExpr implements Expr {
+public final class CallExpr extends Expr {
     public final String name;
     public final List<Expr> args;
     public final int line;
@@ -0,0 +1,151 @@
+package org.example.ast;
+
+import org.example.lexer.Lexer;
+import org.example.syntaxAndSemantic.Parser;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-node dispatch cost of a traversal: a node-counting walk over a parsed program, once with the
+ * instanceof chains the passes used before Stmt and Expr were sealed (in SemanticAnalyzer's order),
+ * once with exhaustive pattern switches like the passes use now.
+ *   java -cp target/classes org.example.ast.DispatchBenchmark
+ */
+public class DispatchBenchmark {
+    private static final int FUNCTIONS = 20_000; // Size of the generated program
+    private static final int WARMUP = 5;         // Rounds left out of the median
+    private static final int RUNS = 25;
+
+    public static void main(String[] args) {
+        StringBuilder source = new StringBuilder();
+        for (int k = 0; k < FUNCTIONS; k++) {
+            source.append("fun f").append(k).append("(a: int, b: float) -> float {\n")
+                    .append("  var x: float = a * 2 + b ^ 2\n")
+                    .append("  if (x > 10) { x = x - f").append(k).append("(a - 1, 2.5) } else { print(\"small\") }\n")
+                    .append("  while (x > 0) { x = x - 1 }\n")
+                    .append("  return x\n")
+                    .append("}\n");
+        }
+        List<Stmt> statements = new Parser(new Lexer(source.toString()).tokenizeToBuffer()).parse();
+        long nodes = 0;
+        for (Stmt stmt : statements) nodes += chain(stmt);
+
+        // Both walks run in every round, so they see the same JIT state
+        long[] chain = new long[RUNS];
+        long[] sealed = new long[RUNS];
+        long sink = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long t0 = System.nanoTime();
+            for (Stmt stmt : statements) sink += chain(stmt);
+            long t1 = System.nanoTime();
+            for (Stmt stmt : statements) sink += sealed(stmt);
+            long t2 = System.nanoTime();
+            chain[run] = t1 - t0;
+            sealed[run] = t2 - t1;
+        }
+        System.out.printf("%,d nodes, median of %d rounds (checksum %d)%n", nodes, RUNS - WARMUP, sink);
+        System.out.printf("instanceof chain  %.2f ns/node%n", median(chain) / nodes);
+        System.out.printf("sealed switch     %.2f ns/node%n", median(sealed) / nodes);
+    }
+
+    private static double median(long[] times) {
+        long[] measured = Arrays.copyOfRange(times, WARMUP, times.length);
+        Arrays.sort(measured);
+        return measured[measured.length / 2];
+    }
+
+    // === Before: instanceof chains ===
+
+    private static long chain(Stmt stmt) {
+        if (stmt instanceof VarDecl) {
+            VarDecl v = (VarDecl) stmt;
+            return 1 + (v.initializer != null ? chain(v.initializer) : 0);
+        } else if (stmt instanceof AssignStmt) {
+            return 1 + chain(((AssignStmt) stmt).value);
+        } else if (stmt instanceof PrintStmt) {
+            return 1 + chain(((PrintStmt) stmt).expr);
+        } else if (stmt instanceof IfStmt) {
+            IfStmt i = (IfStmt) stmt;
+            return 1 + chain(i.condition) + chain(i.thenBranch) + (i.elseBranch != null ? chain(i.elseBranch) : 0);
+        } else if (stmt instanceof WhileStmt) {
+            WhileStmt w = (WhileStmt) stmt;
+            return 1 + chain(w.condition) + chain(w.body);
+        } else if (stmt instanceof BlockStmt) {
+            long n = 1;
+            for (Stmt s : ((BlockStmt) stmt).statements) n += chain(s);
+            return n;
+        } else if (stmt instanceof FunDecl) {
+            FunDecl f = (FunDecl) stmt;
+            long n = 1;
+            for (Stmt p : f.params) n += chain(p);
+            return n + chain(f.body);
+        } else if (stmt instanceof ExprStmt) {
+            return 1 + chain(((ExprStmt) stmt).expr);
+        } else if (stmt instanceof InputStmt) {
+            return 1;
+        } else if (stmt instanceof ReturnStmt) {
+            return 1 + chain(((ReturnStmt) stmt).expr);
+        }
+        return 0;
+    }
+
+    private static long chain(Expr expr) {
+        if (expr instanceof IntLiteral) return 1;
+        if (expr instanceof FloatLiteral) return 1;
+        if (expr instanceof BoolLiteral) return 1;
+        if (expr instanceof StringLiteral) return 1;
+        if (expr instanceof Variable) return 1;
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            return 1 + chain(b.left) + chain(b.right);
+        }
+        if (expr instanceof CallExpr) {
+            long n = 1;
+            for (Expr arg : ((CallExpr) expr).args) n += chain(arg);
+            return n;
+        }
+        return 0;
+    }
+
+    // === After: pattern switches over the sealed hierarchy ===
+
+    private static long sealed(Stmt stmt) {
+        return switch (stmt) {
+            case VarDecl v -> 1 + (v.initializer != null ? sealed(v.initializer) : 0);
+            case AssignStmt a -> 1 + sealed(a.value);
+            case PrintStmt p -> 1 + sealed(p.expr);
+            case IfStmt i -> 1 + sealed(i.condition) + sealed(i.thenBranch) + (i.elseBranch != null ? sealed(i.elseBranch) : 0);
+            case WhileStmt w -> 1 + sealed(w.condition) + sealed(w.body);
+            case BlockStmt b -> {
+                long n = 1;
+                for (Stmt s : b.statements) n += sealed(s);
+                yield n;
+            }
+            case FunDecl f -> {
+                long n = 1;
+                for (Stmt p : f.params) n += sealed(p);
+                yield n + sealed(f.body);
+            }
+            case ExprStmt e -> 1 + sealed(e.expr);
+            case InputStmt in -> 1;
+            case ReturnStmt r -> 1 + sealed(r.expr);
+        };
+    }
+
+    private static long sealed(Expr expr) {
+        return switch (expr) {
+            case IntLiteral e -> 1;
+            case FloatLiteral e -> 1;
+            case BoolLiteral e -> 1;
+            case StringLiteral e -> 1;
+            case Variable e -> 1;
+            case BinaryExpr b -> 1 + sealed(b.left) + sealed(b.right);
+            case CallExpr c -> {
+                long n = 1;
+                for (Expr arg : c.args) n += sealed(arg);
+                yield n;
+            }
+        };
+    }
+}
@@ -1,3 +1,8 @@
 package org.example.ast;
 
-public interface Expr extends Node {}
+public abstract sealed class Expr implements Node
+        permits IntLiteral, FloatLiteral, BoolLiteral, StringLiteral, Variable, BinaryExpr, CallExpr {
+    // Filled in by SemanticAnalyzer; IrBuilder reads them (through FlatAst) instead of inferring types again
+    public GorbType type;          // Type of the value this expression produces
+    public boolean widenToFloat;   // An int value its use site reads as float (IrBuilder converts it)
+}
@@ -1,7 +1,7 @@
 package org.example.ast;
 
 
-public class ExprStmt implements Stmt {
+public final class ExprStmt implements Stmt {
     public final Expr expr;
     public final int line;
     public ExprStmt(Expr expr,int line) { this.expr = expr;this.line = line; }
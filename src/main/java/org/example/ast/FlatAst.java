@@ -0,0 +1,400 @@
+package org.example.ast;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact encoding of a program: nodes are records in one int arena, laid out in pre-order, so a
+ * traversal reads memory front to back. Names and string literals are pooled.
+ * A node id is the offset of its record; -1 means "no node".
+ * What SemanticAnalyzer filled in is kept too: expression types in a side table by node id, and
+ * bindings in a pool that the records of named nodes refer to. RunCode encodes the analyzed and
+ * folded program once and IrBuilder reads it from here, so the object AST is dropped before the IR
+ * is built.
+ *
+ * Record layouts (after the header word):
+ *   INT        value
+ *   FLOAT      high bits, low bits
+ *   BOOL       - (value in the header flags)
+ *   STRING     string id
+ *   VARIABLE   name id, binding id
+ *   BINARY     right offset; left follows
+ *   CALL       name id, arg count, arg offsets...; args follow
+ *   VAR_DECL   name id, type ordinal (-1 if none), binding id; initializer follows if any
+ *   ASSIGN     name id, binding id; value follows
+ *   FUN_DECL   name id, return type ordinal, param count, param offsets..., body offset; params, body follow
+ *   BLOCK      statement count, statement offsets...; statements follow
+ *   IF         then offset, else offset (-1 if none); condition follows
+ *   WHILE      body offset; condition follows
+ *   PRINT, RETURN, EXPR_STMT   expression follows
+ *   INPUT      name id, binding id
+ * A binding id is -1 when the program was encoded before the semantic pass.
+ */
+public class FlatAst {
+    // Node kinds
+    public static final int VAR_DECL = 0;
+    public static final int ASSIGN = 1;
+    public static final int FUN_DECL = 2;
+    public static final int BLOCK = 3;
+    public static final int IF = 4;
+    public static final int WHILE = 5;
+    public static final int PRINT = 6;
+    public static final int INPUT = 7;
+    public static final int RETURN = 8;
+    public static final int EXPR_STMT = 9;
+    public static final int INT = 10;
+    public static final int FLOAT = 11;
+    public static final int BOOL = 12;
+    public static final int STRING = 13;
+    public static final int VARIABLE = 14;
+    public static final int BINARY = 15;
+    public static final int CALL = 16;
+
+    // Header word: kind (5 bits) | flags (4 bits) | line (23 bits)
+    private static final int KIND_BITS = 5;
+    private static final int FLAG_BITS = 4;
+    private static final int LINE_SHIFT = KIND_BITS + FLAG_BITS;
+    // Line field of a node whose line does not fit in it; the line is kept in longLines
+    private static final int LONG_LINE = (1 << (32 - LINE_SHIFT)) - 1;
+
+    // Flags
+    private static final int F_CONST = 1;   // VAR_DECL
+    private static final int F_INIT = 2;    // VAR_DECL has an initializer
+    private static final int F_TRUE = 1;    // BOOL
+    // BINARY stores the operator ordinal as its flags
+
+    // Expression side table: type ordinal + 1 (0 if not analyzed), and the widenToFloat bit
+    private static final int WIDEN = 0x80;
+
+    private static final GorbType[] TYPES = GorbType.values();
+    private static final BinaryOp[] OPS = BinaryOp.values();
+
+    private final int[] arena;
+    private final int size;
+    private final String[] strings;
+    private final int[] topLevel;
+    private final Map<Integer, Integer> longLines; // Lines from LONG_LINE up, by node
+    private final byte[] types;                    // Expressions, by node
+    private final Binding[] bindingPool;           // Each Binding object once, so IrBuilder can key on identity
+
+    private FlatAst(Encoder encoder, int[] topLevel) {
+        this.arena = Arrays.copyOf(encoder.arena, encoder.size);
+        this.size = encoder.size;
+        this.strings = encoder.strings.toArray(new String[0]);
+        this.topLevel = topLevel;
+        this.longLines = encoder.longLines;
+        this.types = Arrays.copyOf(encoder.types, encoder.size);
+        this.bindingPool = encoder.bindingPool.toArray(new Binding[0]);
+    }
+
+    // === Cursor ===
+
+    public int statementCount() { return topLevel.length; }
+
+    public int statement(int i) { return topLevel[i]; }
+
+    public int kind(int node) { return arena[node] & ((1 << KIND_BITS) - 1); }
+
+    public int line(int node) {
+        int line = arena[node] >>> LINE_SHIFT;
+        return line == LONG_LINE ? longLines.get(node) : line;
+    }
+
+    private int flags(int node) { return (arena[node] >>> KIND_BITS) & ((1 << FLAG_BITS) - 1); }
+
+    // VARIABLE, CALL, VAR_DECL, ASSIGN, FUN_DECL, INPUT
+    public String name(int node) { return strings[arena[node + 1]]; }
+
+    // VAR_DECL declared type (null if none), FUN_DECL return type
+    public GorbType type(int node) {
+        int type = arena[node + 2];
+        return type < 0 ? null : TYPES[type];
+    }
+
+    public boolean isConstant(int node) { return (flags(node) & F_CONST) != 0; }
+
+    public int intValue(int node) { return arena[node + 1]; }
+
+    public double floatValue(int node) {
+        long bits = ((long) arena[node + 1] << 32) | (arena[node + 2] & 0xFFFFFFFFL);
+        return Double.longBitsToDouble(bits);
+    }
+
+    public boolean boolValue(int node) { return (flags(node) & F_TRUE) != 0; }
+
+    public String stringValue(int node) { return strings[arena[node + 1]]; }
+
+    public BinaryOp op(int node) { return OPS[flags(node)]; }
+
+    // Expression type from the semantic pass (null if the program was encoded before it)
+    public GorbType exprType(int node) {
+        int type = types[node] & (WIDEN - 1);
+        return type == 0 ? null : TYPES[type - 1];
+    }
+
+    // An int expression its use site reads as float
+    public boolean widenToFloat(int node) { return (types[node] & WIDEN) != 0; }
+
+    // Binding of a VARIABLE, ASSIGN, INPUT or VAR_DECL (null if the program was encoded before the semantic pass)
+    public Binding binding(int node) {
+        int id = arena[node + (kind(node) == VAR_DECL ? 3 : 2)];
+        return id < 0 ? null : bindingPool[id];
+    }
+
+    public int left(int node) { return node + 2; }
+
+    public int right(int node) { return arena[node + 1]; }
+
+    /**
+     * The single expression of PRINT, RETURN, EXPR_STMT, ASSIGN (value), VAR_DECL (initializer, -1 if none),
+     * IF and WHILE (condition).
+     */
+    public int expr(int node) {
+        switch (kind(node)) {
+            case PRINT:
+            case RETURN:
+            case EXPR_STMT:
+                return node + 1;
+            case WHILE:
+                return node + 2;
+            case ASSIGN:
+            case IF:
+                return node + 3;
+            case VAR_DECL:
+                return (flags(node) & F_INIT) != 0 ? node + 4 : -1;
+            default:
+                throw new IllegalArgumentException("No expression in node kind " + kind(node));
+        }
+    }
+
+    public int thenBranch(int node) { return arena[node + 1]; }
+
+    public int elseBranch(int node) { return arena[node + 2]; }
+
+    // WHILE and FUN_DECL
+    public int body(int node) {
+        if (kind(node) == WHILE) return arena[node + 1];
+        return arena[node + 4 + arena[node + 3]];
+    }
+
+    // BLOCK statements, CALL arguments, FUN_DECL parameters
+    public int count(int node) { return arena[listStart(node)]; }
+
+    public int item(int node, int i) { return arena[listStart(node) + 1 + i]; }
+
+    private int listStart(int node) {
+        switch (kind(node)) {
+            case BLOCK: return node + 1;
+            case CALL: return node + 2;
+            case FUN_DECL: return node + 3;
+            default: throw new IllegalArgumentException("No child list in node kind " + kind(node));
+        }
+    }
+
+    // Ints used by the arena, and distinct pooled strings
+    public int arenaSize() { return size; }
+
+    public int stringCount() { return strings.length; }
+
+    // === Encoding ===
+
+    public static FlatAst encode(List<Stmt> statements) {
+        Encoder encoder = new Encoder();
+        int[] topLevel = new int[statements.size()];
+        for (int i = 0; i < topLevel.length; i++) topLevel[i] = encoder.encode(statements.get(i));
+        return new FlatAst(encoder, topLevel);
+    }
+
+    // Writes records in pre-order from an explicit stack, so nesting as deep as the parser accepts
+    // does not overflow the call stack. The offset of a child is known once it is written: a pending
+    // node carries the payload slot of its parent that receives it (-1 if the layout implies it)
+    private static class Encoder {
+        int[] arena = new int[1024];
+        byte[] types = new byte[1024];
+        int size = 0;
+        final List<String> strings = new ArrayList<>();
+        final Map<String, Integer> stringIds = new HashMap<>();
+        final List<Binding> bindingPool = new ArrayList<>();
+        final Map<Binding, Integer> bindingIds = new IdentityHashMap<>();
+        final Map<Integer, Integer> longLines = new HashMap<>();
+        final Deque<Pending> pending = new ArrayDeque<>();
+
+        private record Pending(Node node, int slot) { }
+
+        int encode(Stmt root) {
+            int start = size;
+            pending.push(new Pending(root, -1));
+            while (!pending.isEmpty()) {
+                Pending next = pending.pop();
+                int node = write(next.node);
+                if (next.slot >= 0) arena[next.slot] = node;
+            }
+            return start;
+        }
+
+        // Children are pushed last first, so they are written right after their parent, in order
+        private void later(Node child, int slot) {
+            pending.push(new Pending(child, slot));
+        }
+
+        private int write(Node n) {
+            int written = switch (n) {
+                case VarDecl s -> {
+                    int flags = (s.isConstant ? F_CONST : 0) | (s.initializer != null ? F_INIT : 0);
+                    int node = header(VAR_DECL, flags, s.line, 3);
+                    arena[node + 1] = string(s.name);
+                    arena[node + 2] = s.type == null ? -1 : s.type.ordinal();
+                    arena[node + 3] = binding(s.binding);
+                    if (s.initializer != null) later(s.initializer, -1);
+                    yield node;
+                }
+                case AssignStmt s -> {
+                    int node = header(ASSIGN, 0, s.line, 2);
+                    arena[node + 1] = string(s.name);
+                    arena[node + 2] = binding(s.binding);
+                    later(s.value, -1);
+                    yield node;
+                }
+                case FunDecl s -> {
+                    int params = s.params.size();
+                    int node = header(FUN_DECL, 0, s.line, 4 + params);
+                    arena[node + 1] = string(s.name);
+                    arena[node + 2] = s.returnType.ordinal();
+                    arena[node + 3] = params;
+                    later(s.body, node + 4 + params);
+                    for (int i = params - 1; i >= 0; i--) later(s.params.get(i), node + 4 + i);
+                    yield node;
+                }
+                case BlockStmt s -> {
+                    int count = s.statements.size();
+                    int node = header(BLOCK, 0, s.line, 1 + count);
+                    arena[node + 1] = count;
+                    for (int i = count - 1; i >= 0; i--) later(s.statements.get(i), node + 2 + i);
+                    yield node;
+                }
+                case IfStmt s -> {
+                    int node = header(IF, 0, s.line, 2);
+                    arena[node + 2] = -1;
+                    if (s.elseBranch != null) later(s.elseBranch, node + 2);
+                    later(s.thenBranch, node + 1);
+                    later(s.condition, -1);
+                    yield node;
+                }
+                case WhileStmt s -> {
+                    int node = header(WHILE, 0, s.line, 1);
+                    later(s.body, node + 1);
+                    later(s.condition, -1);
+                    yield node;
+                }
+                case PrintStmt s -> {
+                    int node = header(PRINT, 0, s.line, 0);
+                    later(s.expr, -1);
+                    yield node;
+                }
+                case InputStmt s -> {
+                    int node = header(INPUT, 0, s.line, 2);
+                    arena[node + 1] = string(s.variableName);
+                    arena[node + 2] = binding(s.binding);
+                    yield node;
+                }
+                case ReturnStmt s -> {
+                    int node = header(RETURN, 0, s.line, 0);
+                    later(s.expr, -1);
+                    yield node;
+                }
+                case ExprStmt s -> {
+                    int node = header(EXPR_STMT, 0, s.line, 0);
+                    later(s.expr, -1);
+                    yield node;
+                }
+                case IntLiteral e -> {
+                    int node = header(INT, 0, e.line, 1);
+                    arena[node + 1] = e.value;
+                    yield node;
+                }
+                case FloatLiteral e -> {
+                    long bits = Double.doubleToRawLongBits(e.value);
+                    int node = header(FLOAT, 0, e.line, 2);
+                    arena[node + 1] = (int) (bits >>> 32);
+                    arena[node + 2] = (int) bits;
+                    yield node;
+                }
+                case BoolLiteral e -> header(BOOL, e.value ? F_TRUE : 0, e.line, 0);
+                case StringLiteral e -> {
+                    int node = header(STRING, 0, e.line, 1);
+                    arena[node + 1] = string(e.value);
+                    yield node;
+                }
+                case Variable e -> {
+                    int node = header(VARIABLE, 0, e.line, 2);
+                    arena[node + 1] = string(e.name);
+                    arena[node + 2] = binding(e.binding);
+                    yield node;
+                }
+                case BinaryExpr e -> {
+                    int node = header(BINARY, e.op.ordinal(), e.line, 1);
+                    later(e.right, node + 1);
+                    later(e.left, -1);
+                    yield node;
+                }
+                case CallExpr e -> {
+                    int count = e.args.size();
+                    int node = header(CALL, 0, e.line, 2 + count);
+                    arena[node + 1] = string(e.name);
+                    arena[node + 2] = count;
+                    for (int i = count - 1; i >= 0; i--) later(e.args.get(i), node + 3 + i);
+                    yield node;
+                }
+            };
+            if (n instanceof Expr e && e.type != null) {
+                types[written] = (byte) ((e.type.ordinal() + 1) | (e.widenToFloat ? WIDEN : 0));
+            }
+            return written;
+        }
+
+        // Appends a record with the given number of payload ints, returns its offset
+        private int header(int kind, int flags, int line, int payload) {
+            int node = size;
+            int needed = size + 1 + payload;
+            if (needed > arena.length) {
+                int capacity = Math.max(arena.length * 2, needed);
+                arena = Arrays.copyOf(arena, capacity);
+                types = Arrays.copyOf(types, capacity);
+            }
+            if (line < 0 || line >= LONG_LINE) {
+                longLines.put(node, line);
+                line = LONG_LINE;
+            }
+            arena[node] = kind | (flags << KIND_BITS) | (line << LINE_SHIFT);
+            size = needed;
+            return node;
+        }
+
+        private int binding(Binding binding) {
+            if (binding == null) return -1;
+            Integer id = bindingIds.get(binding);
+            if (id == null) {
+                id = bindingPool.size();
+                bindingPool.add(binding);
+                bindingIds.put(binding, id);
+            }
+            return id;
+        }
+
+        private int string(String s) {
+            Integer id = stringIds.get(s);
+            if (id == null) {
+                id = strings.size();
+                strings.add(s);
+                stringIds.put(s, id);
+            }
+            return id;
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package org.example.ast;
 
-public class FloatLiteral implements Expr {
+public final class FloatLiteral extends Expr {
     public final double value;
     public final int line;
     public FloatLiteral(double value,int line) { this.value = value;this.line = line; }
@@ -1,14 +1,14 @@
 package org.example.ast;
 import java.util.List;
 
-public class FunDecl implements Stmt {
+public final class FunDecl implements Stmt {
     public final String name;
-    public final String returnType;
+    public final GorbType returnType;
     public final List<VarDecl> params;
     public final BlockStmt body;
     public final int line;// <-- Здесь теперь BlockStmt, а не List<Stmt>
 
-    public FunDecl(String name, String returnType, List<VarDecl> params, BlockStmt body,int line) {
+    public FunDecl(String name, GorbType returnType, List<VarDecl> params, BlockStmt body,int line) {
         this.name = name;
         this.returnType = returnType;
         this.params = params;
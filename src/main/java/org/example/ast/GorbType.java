@@ -0,0 +1,33 @@
+package org.example.ast;
+
+/**
+ * Value types of Gorb. toString() is the keyword used in source, diagnostics and generated files.
+ */
+public enum GorbType {
+    INT("int"),
+    FLOAT("float"),
+    BOOL("bool"),
+    STRING("string"),
+    VOID("void"),       // Call of an unknown function (generators only)
+    UNKNOWN("unknown"); // Operands a binary operator does not define a result for
+
+    private final String keyword;
+
+    GorbType(String keyword) {
+        this.keyword = keyword;
+    }
+
+    public boolean isNumeric() {
+        return this == INT || this == FLOAT;
+    }
+
+    // A value of the given type may be stored in a slot of this type (int widens to float)
+    public boolean accepts(GorbType value) {
+        return this == value || (this == FLOAT && value == INT);
+    }
+
+    @Override
+    public String toString() {
+        return keyword;
+    }
+}
@@ -1,6 +1,6 @@
 package org.example.ast;
 
-public class IfStmt implements Stmt {
+public final class IfStmt implements Stmt {
     public final Expr condition;
     public final Stmt thenBranch;
     public final Stmt elseBranch;
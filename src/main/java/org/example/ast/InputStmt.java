@@ -1,8 +1,9 @@
 package org.example.ast;
 
-public class InputStmt implements Stmt {
+public final class InputStmt implements Stmt {
     public final String variableName;
     public final int line;
+    public Binding binding; // Filled in by SemanticAnalyzer
 
     public InputStmt(String variableName,int line) {
         this.variableName = variableName;
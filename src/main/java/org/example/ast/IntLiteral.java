@@ -1,7 +1,7 @@
 package org.example.ast;
 
 
-public class IntLiteral implements Expr {
+public final class IntLiteral extends Expr {
     public final int value;
     public final int line;
     public IntLiteral(int value,int line) { this.value = value;this.line = line; }
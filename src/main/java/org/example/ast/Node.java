@@ -1,5 +1,4 @@
 package org.example.ast;
 
-public interface Node {
+public sealed interface Node permits Stmt, Expr {
 }
-
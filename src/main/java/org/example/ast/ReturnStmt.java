@@ -1,6 +1,6 @@
 package org.example.ast;
 
-public class ReturnStmt implements Stmt {
+public final class ReturnStmt implements Stmt {
     public final Expr expr;
     public final int line;
     public ReturnStmt(Expr expr,int line) { this.expr = expr;this.line = line;}
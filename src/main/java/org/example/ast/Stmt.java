@@ -1,3 +1,4 @@
 package org.example.ast;
 
-public interface Stmt extends Node {}
+public sealed interface Stmt extends Node
+        permits VarDecl, AssignStmt, FunDecl, BlockStmt, IfStmt, WhileStmt, PrintStmt, InputStmt, ReturnStmt, ExprStmt {}
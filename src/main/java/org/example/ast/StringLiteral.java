@@ -1,6 +1,6 @@
 package org.example.ast;
 
-public class StringLiteral implements Expr {
+public final class StringLiteral extends Expr {
     public final String value;
     public final int line;
     @Override
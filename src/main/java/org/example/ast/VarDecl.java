@@ -1,12 +1,13 @@
 package org.example.ast;
 
-public class VarDecl implements Stmt {
+public final class VarDecl implements Stmt {
     public final String name;
-    public final String type;      // Может быть null, если это const (тип выводится)
+    public final GorbType type;    // Может быть null, если это const (тип выводится)
     public final Expr initializer; // Может быть null (например, в аргументах функции)
     public final boolean isConstant; // Новое поле
     public final int line;
-    public VarDecl(String name, String type, Expr initializer, boolean isConstant,int line) {
+    public Binding binding; // Slot of the declared variable, filled in by SemanticAnalyzer
+    public VarDecl(String name, GorbType type, Expr initializer, boolean isConstant,int line) {
         this.name = name;
         this.type = type;
         this.initializer = initializer;
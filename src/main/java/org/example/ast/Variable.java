@@ -1,8 +1,9 @@
 package org.example.ast;
 
-public class Variable implements Expr {
+public final class Variable extends Expr {
     public final String name;
     public final int line;
+    public Binding binding; // Filled in by SemanticAnalyzer
     public Variable(String name,int line) { this.name = name;this.line = line; }
 
     @Override
@@ -1,6 +1,6 @@
 package org.example.ast;
 
-public class WhileStmt implements Stmt {
+public final class WhileStmt implements Stmt {
     public final Expr condition;
     public final Stmt body;
     public final int line;
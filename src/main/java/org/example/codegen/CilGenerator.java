@@ -1,6 +1,10 @@
 package org.example.codegen;
 
 import org.example.ast.*;
+import org.example.codegen.CilInstr.Op;
+import org.example.diagnostics.DiagnosticsListener;
+import org.example.diagnostics.Phase;
+import org.example.ir.*;
 import org.example.syntaxAndSemantic.SemanticAnalyzer;
 
 import java.io.FileWriter;
@@ -8,99 +12,23 @@ import java.io.IOException;
 import java.util.*;
 
 public class CilGenerator {
-    private final StringBuilder mainCode = new StringBuilder();
     private final StringBuilder functionsCode = new StringBuilder();
 
-    // Global variables (Class fields)
-    private final Map<String, String> globalFields = new LinkedHashMap<>();
-
-    // Local variables and parameters
-    private Map<String, String> currentLocals = new LinkedHashMap<>();
-    private List<String> currentParams = new ArrayList<>();
-
-    // --- FIX: Store return type of the current function ---
-    private String currentReturnType = "void";
-
     private final Map<String, SemanticAnalyzer.FunSignature> functionTable;
     private final String moduleName;
     private int labelCounter = 1;
+    private DiagnosticsListener listener;
 
     public CilGenerator(String moduleName, Map<String, SemanticAnalyzer.FunSignature> functionTable) {
         this.moduleName = moduleName;
         this.functionTable = functionTable;
     }
 
-    public void generate(List<Stmt> statements) throws IOException {
-        // 1. Define global fields
-        for (Stmt stmt : statements) {
-            if (stmt instanceof VarDecl) {
-                VarDecl v = (VarDecl) stmt;
-                String type = v.type;
-                if (type == null && v.initializer != null) type = inferType(v.initializer);
-                if (type == null) type = "int";
-                globalFields.put(v.name, mapTypeToCil(type));
-            }
-        }
-
-        // 2. Generate functions
-        for (Stmt stmt : statements) {
-            if (stmt instanceof FunDecl) {
-                genFunction((FunDecl) stmt);
-            }
-        }
-
-        // 3. Generate Main
-        currentLocals = new LinkedHashMap<>();
-        currentParams = new ArrayList<>();
-        currentReturnType = "void"; // Main is always void
-
-        collectLocals(statements, currentLocals);
-
-        for (Stmt stmt : statements) {
-            if (!(stmt instanceof FunDecl) && !(stmt instanceof VarDecl)) {
-                genStmt(stmt, mainCode);
-            } else if (stmt instanceof VarDecl) {
-                VarDecl v = (VarDecl) stmt;
-                if (v.initializer != null) {
-                    genExpr(v.initializer, mainCode);
-                    String fieldType = globalFields.get(v.name);
-                    mainCode.append("    stsfld ").append(fieldType).append(" Program::").append(v.name).append("\n");
-                }
-            }
-        }
-
-        saveToFile();
-    }
-
-    private void collectLocals(List<Stmt> statements, Map<String, String> localsMap) {
-        for (Stmt stmt : statements) {
-            if (stmt instanceof VarDecl) {
-                VarDecl v = (VarDecl) stmt;
-                if (!globalFields.containsKey(v.name)) {
-                    String type = v.type != null ? v.type : "int";
-                    if (type == null && v.initializer != null) type = inferType(v.initializer);
-                    localsMap.put(v.name, mapTypeToCil(type));
-                }
-            } else if (stmt instanceof BlockStmt) {
-                collectLocals(((BlockStmt) stmt).statements, localsMap);
-            } else if (stmt instanceof IfStmt) {
-                IfStmt i = (IfStmt) stmt;
-                if (i.thenBranch instanceof BlockStmt) collectLocals(((BlockStmt) i.thenBranch).statements, localsMap);
-                else collectLocals(Collections.singletonList(i.thenBranch), localsMap);
-
-                if (i.elseBranch != null) {
-                    if (i.elseBranch instanceof BlockStmt) collectLocals(((BlockStmt) i.elseBranch).statements, localsMap);
-                    else collectLocals(Collections.singletonList(i.elseBranch), localsMap);
-                }
-            } else if (stmt instanceof WhileStmt) {
-                WhileStmt w = (WhileStmt) stmt;
-                if (w.body instanceof BlockStmt) collectLocals(((BlockStmt) w.body).statements, localsMap);
-                else collectLocals(Collections.singletonList(w.body), localsMap);
-            }
-        }
+    public void setListener(DiagnosticsListener listener) {
+        this.listener = listener;
     }
 
-    private void saveToFile() throws IOException {
+    private void saveToFile(CharSequence fields, String main) throws IOException {
         String filename = moduleName + ".il";
         try (FileWriter writer = new FileWriter(filename)) {
             writer.write(".assembly extern mscorlib {}\n");
@@ -108,335 +36,315 @@ public class CilGenerator {
             writer.write(".module " + moduleName + ".exe\n\n");
             writer.write(".class private auto ansi beforefieldinit Program extends [mscorlib]System.Object {\n");
 
-            for (Map.Entry<String, String> field : globalFields.entrySet()) {
-                writer.write("  .field public static " + field.getValue() + " " + field.getKey() + "\n");
-            }
+            writer.write(fields.toString());
             writer.write("\n");
             writer.write(functionsCode.toString());
 
             writer.write("  .method private hidebysig static void Main(string[] args) cil managed {\n");
             writer.write("    .entrypoint\n");
-            if (!currentLocals.isEmpty()) {
-                writer.write("    .locals init (\n");
-                int i = 0;
-                for (Map.Entry<String, String> entry : currentLocals.entrySet()) {
-                    writer.write("      [" + i + "] " + entry.getValue() + " " + entry.getKey() + (i == currentLocals.size() - 1 ? "" : ",") + "\n");
-                    i++;
-                }
-                writer.write("    )\n");
-            }
-            writer.write(mainCode.toString());
-            writer.write("    ret\n");
+            writer.write(main);
             writer.write("  }\n");
             writer.write("}\n");
         }
-        System.out.println("Generated CIL: " + filename);
+        if (listener != null) listener.fileGenerated(Phase.CIL, filename);
     }
 
-    private void genFunction(FunDecl f) {
-        StringBuilder bodyCode = new StringBuilder();
-        Map<String, String> oldLocals = currentLocals;
-        List<String> oldParams = currentParams;
-        String oldRetType = currentReturnType;
-
-        currentLocals = new LinkedHashMap<>();
-        currentParams = new ArrayList<>();
-        // --- FIX: Set return type ---
-        currentReturnType = f.returnType;
-
-        collectLocals(((BlockStmt)f.body).statements, currentLocals);
-
-        functionsCode.append("\n  .method public hidebysig static ")
-                .append(mapTypeToCil(f.returnType))
-                .append(" ").append(f.name).append("(");
-
-        for (int i = 0; i < f.params.size(); i++) {
-            VarDecl p = f.params.get(i);
-            String cilType = mapTypeToCil(p.type);
-            functionsCode.append(cilType).append(" ").append(p.name);
-            if (i < f.params.size() - 1) functionsCode.append(", ");
-            currentParams.add(p.name);
-        }
-        functionsCode.append(") cil managed {\n");
-
-        for (Stmt s : ((BlockStmt) f.body).statements) {
-            genStmt(s, bodyCode);
-        }
-
-        if (!currentLocals.isEmpty()) {
-            functionsCode.append("    .locals init (\n");
-            int i = 0;
-            for (Map.Entry<String, String> entry : currentLocals.entrySet()) {
-                functionsCode.append("      [").append(i).append("] ").append(entry.getValue()).append(" ").append(entry.getKey())
-                        .append(i == currentLocals.size() - 1 ? "" : ",").append("\n");
-                i++;
+    // === Methods lowered from the IR ===
+
+    public void generate(IrProgram program) throws IOException {
+        Lowering.lower(program);
+
+        // Only top-level functions are emitted: a method cannot reach the locals of an enclosing one
+        for (IrFunction f : program.functions) {
+            if (!f.topLevel) continue;
+            functionsCode.append("\n  .method public hidebysig static ")
+                    .append(mapTypeToCil(f.returnType))
+                    .append(" ").append(f.name).append("(");
+            for (int i = 0; i < f.params.size(); i++) {
+                IrVariable p = f.params.get(i);
+                functionsCode.append(mapTypeToCil(p.type)).append(" ").append(p.name);
+                if (i < f.params.size() - 1) functionsCode.append(", ");
             }
-            functionsCode.append("    )\n");
+            functionsCode.append(") cil managed {\n");
+            functionsCode.append(genMethod(f));
+            functionsCode.append("  }\n");
         }
 
-        functionsCode.append(bodyCode);
-
-        if (f.returnType.equals("void") && !bodyCode.toString().contains("ret")) {
-            functionsCode.append("    ret\n");
+        StringBuilder fields = new StringBuilder();
+        for (IrVariable global : program.globals) {
+            fields.append("  .field public static ").append(mapTypeToCil(global.type)).append(" ").append(global.name).append("\n");
         }
-        functionsCode.append("  }\n");
-
-        currentLocals = oldLocals;
-        currentParams = oldParams;
-        currentReturnType = oldRetType;
+        saveToFile(fields, genMethod(program.main));
     }
 
-    private void genStmt(Stmt stmt, StringBuilder sb) {
-        if (stmt instanceof VarDecl) {
-            VarDecl v = (VarDecl) stmt;
-            if (v.initializer != null) {
-                genExpr(v.initializer, sb);
-                sb.append("    stloc ").append(v.name).append("\n");
+    // Declarations and body of a method
+    private String genMethod(IrFunction f) {
+        StringBuilder sb = new StringBuilder();
+        List<CilInstr> body = new ArrayList<>();
+        List<Block> blocks = f.blocks;
+
+        // A branch falls through to the next block when it can: brtrue when that is the else block
+        Map<Block, String> blockLabels = new HashMap<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            Block next = i + 1 < blocks.size() ? blocks.get(i + 1) : null;
+            Instr last = blocks.get(i).terminator();
+            if (last.op == Opcode.JUMP && last.targets[0] != next) blockLabels.computeIfAbsent(last.targets[0], b -> newLabel());
+            if (last.op == Opcode.BRANCH) {
+                if (last.targets[0] != next) blockLabels.computeIfAbsent(last.targets[0], b -> newLabel());
+                if (last.targets[1] != next || last.targets[0] == next) blockLabels.computeIfAbsent(last.targets[1], b -> newLabel());
             }
         }
-        else if (stmt instanceof AssignStmt) {
-            AssignStmt a = (AssignStmt) stmt;
-            genExpr(a.value, sb);
-
-            if (currentParams.contains(a.name)) {
-                sb.append("    starg ").append(a.name).append("\n");
-            } else if (currentLocals.containsKey(a.name)) {
-                sb.append("    stloc ").append(a.name).append("\n");
-            } else if (globalFields.containsKey(a.name)) {
-                String type = globalFields.get(a.name);
-                sb.append("    stsfld ").append(type).append(" Program::").append(a.name).append("\n");
+
+        int maxStack = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            Block block = blocks.get(i);
+            Block next = i + 1 < blocks.size() ? blocks.get(i + 1) : null;
+            if (blockLabels.containsKey(block)) emit(body, Op.LABEL, blockLabels.get(block));
+            for (Instr instr : block.instrs) {
+                if (instr.inline) continue;
+                genRoot(instr, next, blockLabels, body);
+                maxStack = Math.max(maxStack, stackDepth(instr));
             }
         }
-        else if (stmt instanceof PrintStmt) {
-            Expr expr = ((PrintStmt) stmt).expr;
-            genExpr(expr, sb);
-            String type = inferType(expr);
-            String cilType = mapTypeToCil(type);
-            sb.append("    call void [mscorlib]System.Console::WriteLine(").append(cilType).append(")\n");
-        }
-        else if (stmt instanceof InputStmt) {
-            InputStmt inp = (InputStmt) stmt;
-            String varName = inp.variableName;
-
-            sb.append("    call string [mscorlib]System.Console::ReadLine()\n");
 
-            String targetType = "int32";
-            if (currentLocals.containsKey(varName)) targetType = currentLocals.get(varName);
-            else if (globalFields.containsKey(varName)) targetType = globalFields.get(varName);
-
-            if (targetType.equals("int32")) sb.append("    call int32 [mscorlib]System.Convert::ToInt32(string)\n");
-            else if (targetType.equals("float32")) sb.append("    call float32 [mscorlib]System.Convert::ToSingle(string)\n");
-
-            if (currentParams.contains(varName)) sb.append("    starg ").append(varName).append("\n");
-            else if (currentLocals.containsKey(varName)) sb.append("    stloc ").append(varName).append("\n");
-            else if (globalFields.containsKey(varName)) sb.append("    stsfld ").append(targetType).append(" Program::").append(varName).append("\n");
-        }
-        else if (stmt instanceof IfStmt) {
-            IfStmt i = (IfStmt) stmt;
-            String elseLabel = newLabel();
-            String endLabel = newLabel();
-            genExpr(i.condition, sb);
-            sb.append("    brfalse ").append(elseLabel).append("\n");
-            genStmt(i.thenBranch, sb);
-            sb.append("    br ").append(endLabel).append("\n");
-            sb.append(elseLabel).append(":\n");
-            if (i.elseBranch != null) genStmt(i.elseBranch, sb);
-            sb.append(endLabel).append(":\n");
-        }
-        else if (stmt instanceof WhileStmt) {
-            WhileStmt w = (WhileStmt) stmt;
-            String startLabel = newLabel();
-            String endLabel = newLabel();
-            sb.append(startLabel).append(":\n");
-            genExpr(w.condition, sb);
-            sb.append("    brfalse ").append(endLabel).append("\n");
-            genStmt(w.body, sb);
-            sb.append("    br ").append(startLabel).append("\n");
-            sb.append(endLabel).append(":\n");
-        }
-        else if (stmt instanceof BlockStmt) {
-            for (Stmt s : ((BlockStmt) stmt).statements) genStmt(s, sb);
+        // Without .maxstack the assembler allows 8
+        if (maxStack > 8) sb.append("    .maxstack ").append(maxStack).append("\n");
+        List<String> names = new ArrayList<>(f.locals.size());
+        List<GorbType> types = new ArrayList<>(f.locals.size());
+        for (IrVariable local : f.locals) {
+            names.add(local.name);
+            types.add(local.type);
         }
-        else if (stmt instanceof ReturnStmt) {
-            genExpr(((ReturnStmt) stmt).expr, sb);
+        sb.append(localsInit(names, types));
+        CilPeephole.optimize(body);
+        sb.append(text(body));
+        return sb.toString();
+    }
 
-            // --- FIX: Auto-conversion on return ---
-            String exprType = inferType(((ReturnStmt) stmt).expr);
-            if (currentReturnType.equals("float") && exprType.equals("int")) {
-                sb.append("    conv.r4\n"); // int -> float
-            }
-            // --------------------------------------------
+    private static String text(List<CilInstr> code) {
+        StringBuilder sb = new StringBuilder();
+        for (CilInstr instr : code) sb.append(instr).append('\n');
+        return sb.toString();
+    }
 
-            sb.append("    ret\n");
-        }
-        else if (stmt instanceof ExprStmt) {
-            genExpr(((ExprStmt) stmt).expr, sb);
-            sb.append("    pop\n");
-        }
+    private static void emit(List<CilInstr> code, Op op) {
+        code.add(new CilInstr(op, null));
     }
 
-    private void genExpr(Expr expr, StringBuilder sb) {
-        if (expr instanceof IntLiteral) {
-            sb.append("    ldc.i4 ").append(((IntLiteral) expr).value).append("\n");
-        }
-        else if (expr instanceof FloatLiteral) {
-            sb.append("    ldc.r4 ").append(((FloatLiteral) expr).value).append("\n");
-        }
-        else if (expr instanceof BoolLiteral) {
-            sb.append("    ldc.i4.").append(((BoolLiteral) expr).value ? "1" : "0").append("\n");
-        }
-        else if (expr instanceof StringLiteral) {
-            sb.append("    ldstr \"").append(((StringLiteral) expr).value).append("\"\n");
-        }
-        else if (expr instanceof Variable) {
-            String name = ((Variable) expr).name;
-            if (currentParams.contains(name)) {
-                sb.append("    ldarg ").append(name).append("\n");
-            } else if (currentLocals.containsKey(name)) {
-                sb.append("    ldloc ").append(name).append("\n");
-            } else if (globalFields.containsKey(name)) {
-                String type = globalFields.get(name);
-                sb.append("    ldsfld ").append(type).append(" Program::").append(name).append("\n");
-            } else {
-                sb.append("    ldloc ").append(name).append("\n");
+    private static void emit(List<CilInstr> code, Op op, Object operand) {
+        code.add(new CilInstr(op, operand));
+    }
+
+    private void genRoot(Instr instr, Block next, Map<Block, String> blockLabels, List<CilInstr> code) {
+        switch (instr.op) {
+            case STORE, COPY -> {
+                genValue(instr.operands.get(0), code);
+                genStore(instr.variable, code);
             }
-        }
-        else if (expr instanceof BinaryExpr) {
-            BinaryExpr b = (BinaryExpr) expr;
-            String typeLeft = inferType(b.left);
-            String typeRight = inferType(b.right);
-
-            if (b.op.equals("+") && (typeLeft.equals("string") || typeRight.equals("string"))) {
-                genExpr(b.left, sb);
-                if (!typeLeft.equals("string")) sb.append("    box [mscorlib]System.").append(getCilBoxType(typeLeft)).append("\n");
-                genExpr(b.right, sb);
-                if (!typeRight.equals("string")) sb.append("    box [mscorlib]System.").append(getCilBoxType(typeRight)).append("\n");
-                sb.append("    call string [mscorlib]System.String::Concat(object, object)\n");
-                return;
+            case PRINT -> {
+                Value value = instr.operands.get(0);
+                genValue(value, code);
+                emit(code, Op.CALL, "void [mscorlib]System.Console::WriteLine(" + mapTypeToCil(value.type) + ")");
             }
-
-            if (b.op.equals("^")) {
-                genExpr(b.left, sb);
-                sb.append("    conv.r8\n");
-                genExpr(b.right, sb);
-                sb.append("    conv.r8\n");
-                sb.append("    call float64 [mscorlib]System.Math::Pow(float64, float64)\n");
-                sb.append("    conv.r4\n");
-                return;
+            case JUMP -> {
+                if (instr.targets[0] != next) emit(code, Op.BR, blockLabels.get(instr.targets[0]));
             }
-
-            genExpr(b.left, sb);
-            if (typeLeft.equals("int") && typeRight.equals("float")) sb.append("    conv.r4\n");
-            genExpr(b.right, sb);
-            if (typeRight.equals("int") && typeLeft.equals("float")) sb.append("    conv.r4\n");
-
-            switch (b.op) {
-                case "+": sb.append("    add\n"); break;
-                case "-": sb.append("    sub\n"); break;
-                case "*": sb.append("    mul\n"); break;
-                case "/": sb.append("    div\n"); break;
-                case ">": sb.append("    cgt\n"); break;
-                case "<": sb.append("    clt\n"); break;
-                case "==": sb.append("    ceq\n"); break;
-                case "<=":
-                    sb.append("    cgt\n");
-                    sb.append("    ldc.i4.0\n");
-                    sb.append("    ceq\n");
-                    break;
-                case ">=":
-                    sb.append("    clt\n");
-                    sb.append("    ldc.i4.0\n");
-                    sb.append("    ceq\n");
-                    break;
-                case "!=":
-                    sb.append("    ceq\n");
-                    sb.append("    ldc.i4.0\n");
-                    sb.append("    ceq\n");
-                    break;
-                case "&&": sb.append("    and\n"); break;
-                case "||": sb.append("    or\n"); break;
-                default: throw new RuntimeException("Unknown op: " + b.op);
+            case BRANCH -> {
+                genValue(instr.operands.get(0), code);
+                Block thenBlock = instr.targets[0];
+                Block elseBlock = instr.targets[1];
+                if (elseBlock == next && thenBlock != next) {
+                    emit(code, Op.BRTRUE, blockLabels.get(thenBlock));
+                } else {
+                    emit(code, Op.BRFALSE, blockLabels.get(elseBlock));
+                    if (thenBlock != next) emit(code, Op.BR, blockLabels.get(thenBlock));
+                }
+            }
+            case RETURN -> {
+                if (!instr.operands.isEmpty()) genValue(instr.operands.get(0), code);
+                emit(code, Op.RET);
+            }
+            default -> {
+                genInstr(instr, code);
+                if (instr.storage != null) genStore(instr.storage, code);
+                else if (instr.type != GorbType.VOID) emit(code, Op.POP); // Result nothing uses
             }
         }
-        else if (expr instanceof CallExpr) {
-            CallExpr c = (CallExpr) expr;
-            SemanticAnalyzer.FunSignature sig = functionTable.get(c.name);
-
-            for (int i = 0; i < c.args.size(); i++) {
-                Expr arg = c.args.get(i);
-                genExpr(arg, sb);
-                if (sig != null && i < sig.paramTypes.size()) {
-                    String expectedType = sig.paramTypes.get(i);
-                    String actualType = inferType(arg);
-                    if (expectedType.equals("float") && actualType.equals("int")) {
-                        sb.append("    conv.r4\n");
-                    }
+    }
+
+    private void genValue(Value value, List<CilInstr> code) {
+        switch (value) {
+            case Constant c -> {
+                switch (c.type) {
+                    case INT -> emit(code, Op.LDC_I4, c.value);
+                    case FLOAT -> emit(code, Op.LDC_R4, c.value);
+                    case BOOL -> emit(code, Op.LDC_I4, (Boolean) c.value ? 1 : 0);
+                    default -> emit(code, Op.LDSTR, c.value);
                 }
             }
+            case Instr i when i.inline -> genInstr(i, code);
+            default -> genLoad(value.storage, code);
+        }
+    }
 
-            String retType = (sig != null) ? mapTypeToCil(sig.returnType) : "void";
-            StringBuilder argsSig = new StringBuilder();
-            if (sig != null) {
-                for (int i = 0; i < sig.paramTypes.size(); i++) {
-                    if (i > 0) argsSig.append(", ");
-                    argsSig.append(mapTypeToCil(sig.paramTypes.get(i)));
+    private void genInstr(Instr instr, List<CilInstr> code) {
+        switch (instr.op) {
+            case BINARY -> {
+                Value left = instr.operands.get(0);
+                Value right = instr.operands.get(1);
+                if (instr.type == GorbType.STRING) {
+                    genValue(left, code);
+                    if (left.type != GorbType.STRING) emit(code, Op.BOX, "[mscorlib]System." + getCilBoxType(left.type));
+                    genValue(right, code);
+                    if (right.type != GorbType.STRING) emit(code, Op.BOX, "[mscorlib]System." + getCilBoxType(right.type));
+                    emit(code, Op.CALL, "string [mscorlib]System.String::Concat(object, object)");
+                } else if (instr.binary == BinaryOp.POW) {
+                    genValue(left, code);
+                    emit(code, Op.CONV_R8);
+                    genValue(right, code);
+                    emit(code, Op.CONV_R8);
+                    emit(code, Op.CALL, "float64 [mscorlib]System.Math::Pow(float64, float64)");
+                    emit(code, instr.type == GorbType.INT ? Op.CONV_I4 : Op.CONV_R4);
+                } else {
+                    genValue(left, code);
+                    genValue(right, code);
+                    genOperator(instr.binary, code);
                 }
             }
-            sb.append("    call ").append(retType).append(" Program::").append(c.name).append("(").append(argsSig).append(")\n");
+            case WIDEN -> {
+                genValue(instr.operands.get(0), code);
+                emit(code, Op.CONV_R4);
+            }
+            case CALL -> {
+                for (Value arg : instr.operands) genValue(arg, code);
+                genCallInstruction(instr.callee, code);
+            }
+            case LOAD -> genLoad(instr.variable, code);
+            case INPUT -> {
+                emit(code, Op.CALL, "string [mscorlib]System.Console::ReadLine()");
+                if (instr.type == GorbType.INT) emit(code, Op.CALL, "int32 [mscorlib]System.Convert::ToInt32(string)");
+                else if (instr.type == GorbType.FLOAT) emit(code, Op.CALL, "float32 [mscorlib]System.Convert::ToSingle(string)");
+            }
+            default -> throw new RuntimeException("CIL backend cannot compute " + instr.op + " as a value");
         }
     }
 
-    private String newLabel() { return "L" + (labelCounter++); }
+    private void genLoad(IrVariable variable, List<CilInstr> code) {
+        switch (variable.kind) {
+            case PARAM -> emit(code, Op.LDARG, variable.index);
+            case LOCAL -> emit(code, Op.LDLOC, variable.index);
+            case GLOBAL -> emit(code, Op.LDSFLD, mapTypeToCil(variable.type) + " Program::" + variable.name);
+            case OUTER -> throw outerAccess(variable);
+        }
+    }
 
-    private String mapTypeToCil(String gorbType) {
-        switch (gorbType) {
-            case "int": return "int32";
-            case "float": return "float32";
-            case "bool": return "bool";
-            case "string": return "string";
-            default: return "void";
+    private void genStore(IrVariable variable, List<CilInstr> code) {
+        switch (variable.kind) {
+            case PARAM -> emit(code, Op.STARG, variable.index);
+            case LOCAL -> emit(code, Op.STLOC, variable.index);
+            case GLOBAL -> emit(code, Op.STSFLD, mapTypeToCil(variable.type) + " Program::" + variable.name);
+            case OUTER -> throw outerAccess(variable);
         }
     }
 
-    private String getCilBoxType(String gorbType) {
-        switch (gorbType) {
-            case "int": return "Int32";
-            case "float": return "Single";
-            case "bool": return "Boolean";
-            default: return "Object";
+    private static RuntimeException outerAccess(IrVariable variable) {
+        return new RuntimeException("CIL backend cannot access '" + variable.name + "' of an enclosing function");
+    }
+
+    // Evaluation stack slots the code of a root instruction needs
+    private static int stackDepth(Instr root) {
+        return switch (root.op) {
+            case STORE, COPY, PRINT, BRANCH, RETURN -> root.operands.isEmpty() ? 0 : stackDepth(root.operands.get(0));
+            case JUMP -> 0;
+            default -> treeDepth(root);
+        };
+    }
+
+    private static int stackDepth(Value value) {
+        return value instanceof Instr i && i.inline ? treeDepth(i) : 1;
+    }
+
+    private static int treeDepth(Instr instr) {
+        int depth = 1;
+        for (int i = 0; i < instr.operands.size(); i++) {
+            depth = Math.max(depth, i + stackDepth(instr.operands.get(i)));
         }
+        return depth;
     }
 
-    private String inferType(Expr expr) {
-        if (expr instanceof IntLiteral) return "int";
-        if (expr instanceof FloatLiteral) return "float";
-        if (expr instanceof StringLiteral) return "string";
-        if (expr instanceof BoolLiteral) return "bool";
-        if (expr instanceof Variable) {
-            String name = ((Variable) expr).name;
-            if (currentParams.contains(name)) return "int";
-            if (currentLocals.containsKey(name)) return inverseMap(currentLocals.get(name));
-            if (globalFields.containsKey(name)) return inverseMap(globalFields.get(name));
-            return "int";
+    private void genOperator(BinaryOp op, List<CilInstr> code) {
+        switch (op) {
+            case ADD -> emit(code, Op.ADD);
+            case SUB -> emit(code, Op.SUB);
+            case MUL -> emit(code, Op.MUL);
+            case DIV -> emit(code, Op.DIV);
+            case GT -> emit(code, Op.CGT);
+            case LT -> emit(code, Op.CLT);
+            case EQ -> emit(code, Op.CEQ);
+            case LE -> {
+                emit(code, Op.CGT);
+                emit(code, Op.LDC_I4, 0);
+                emit(code, Op.CEQ);
+            }
+            case GE -> {
+                emit(code, Op.CLT);
+                emit(code, Op.LDC_I4, 0);
+                emit(code, Op.CEQ);
+            }
+            case NEQ -> {
+                emit(code, Op.CEQ);
+                emit(code, Op.LDC_I4, 0);
+                emit(code, Op.CEQ);
+            }
+            case POW -> { } // Emitted by genInstr through Math.Pow
         }
-        if (expr instanceof BinaryExpr) {
-            String l = inferType(((BinaryExpr) expr).left);
-            String r = inferType(((BinaryExpr) expr).right);
-            if (l.equals("string") || r.equals("string")) return "string";
-            if (l.equals("float") || r.equals("float")) return "float";
-            if (((BinaryExpr) expr).op.matches("(>|<|==|!=|<=|>=)")) return "bool";
-            return "int";
+    }
+
+    private void genCallInstruction(String name, List<CilInstr> code) {
+        SemanticAnalyzer.FunSignature sig = functionTable.get(name);
+        String retType = (sig != null) ? mapTypeToCil(sig.returnType) : "void";
+        StringBuilder argsSig = new StringBuilder();
+        if (sig != null) {
+            for (int i = 0; i < sig.paramTypes.size(); i++) {
+                if (i > 0) argsSig.append(", ");
+                argsSig.append(mapTypeToCil(sig.paramTypes.get(i)));
+            }
         }
-        if (expr instanceof CallExpr) {
-            SemanticAnalyzer.FunSignature sig = functionTable.get(((CallExpr) expr).name);
-            return sig != null ? sig.returnType : "void";
+        emit(code, Op.CALL, retType + " Program::" + name + "(" + argsSig + ")");
+    }
+
+    private String localsInit(List<String> localNames, List<GorbType> types) {
+        if (localNames.isEmpty()) return "";
+        StringBuilder sb = new StringBuilder("    .locals init (\n");
+        // Shadowing and sibling blocks may declare the same name twice; slots are distinct
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < localNames.size(); i++) {
+            String name = names.add(localNames.get(i)) ? localNames.get(i) : localNames.get(i) + "$" + i;
+            sb.append("      [").append(i).append("] ").append(mapTypeToCil(types.get(i))).append(" ").append(name)
+                    .append(i == localNames.size() - 1 ? "" : ",").append("\n");
         }
-        return "int";
+        sb.append("    )\n");
+        return sb.toString();
+    }
+
+    private String newLabel() { return "L" + (labelCounter++); }
+
+    private String mapTypeToCil(GorbType gorbType) {
+        return switch (gorbType) {
+            case INT -> "int32";
+            case FLOAT -> "float32";
+            case BOOL -> "bool";
+            case STRING -> "string";
+            case VOID, UNKNOWN -> "void";
+        };
     }
 
-    private String inverseMap(String cilType) {
-        if (cilType.equals("int32")) return "int";
-        if (cilType.equals("float32")) return "float";
-        return cilType;
+    private String getCilBoxType(GorbType gorbType) {
+        return switch (gorbType) {
+            case INT -> "Int32";
+            case FLOAT -> "Single";
+            case BOOL -> "Boolean";
+            default -> "Object";
+        };
     }
-}
\ No newline at end of file
+}
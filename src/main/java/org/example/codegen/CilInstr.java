@@ -0,0 +1,61 @@
+package org.example.codegen;
+
+/**
+ * One line of a CIL method body: an instruction and its operand, or a label.
+ */
+final class CilInstr {
+    enum Op {
+        LDC_I4("ldc.i4"), LDC_R4("ldc.r4"), LDC_R8("ldc.r8"), LDSTR("ldstr"),
+        LDARG("ldarg"), STARG("starg"), LDLOC("ldloc"), STLOC("stloc"), LDSFLD("ldsfld"), STSFLD("stsfld"),
+        ADD("add"), SUB("sub"), MUL("mul"), DIV("div"), CGT("cgt"), CLT("clt"), CEQ("ceq"),
+        CONV_R4("conv.r4"), CONV_R8("conv.r8"), CONV_I4("conv.i4"), BOX("box"), CALL("call"),
+        BR("br"), BRTRUE("brtrue"), BRFALSE("brfalse"), RET("ret"), POP("pop"),
+        LABEL(null);
+
+        final String mnemonic;
+
+        Op(String mnemonic) {
+            this.mnemonic = mnemonic;
+        }
+
+        boolean isBranch() {
+            return this == BR || this == BRTRUE || this == BRFALSE;
+        }
+    }
+
+    final Op op;
+    // Integer for ldc.i4 and the slot of an argument or local, Number for ldc.r4 / ldc.r8,
+    // the text of ldstr, the label of a branch or label, else the type or member reference
+    final Object operand;
+
+    CilInstr(Op op, Object operand) {
+        this.op = op;
+        this.operand = operand;
+    }
+
+    boolean isConstant() {
+        return op == Op.LDC_I4 || op == Op.LDC_R4 || op == Op.LDC_R8;
+    }
+
+    @Override
+    public String toString() {
+        return switch (op) {
+            case LABEL -> operand + ":";
+            case LDC_I4 -> {
+                // -1 to 8 have one-byte forms, and a byte fits in the .s form
+                int value = (Integer) operand;
+                if (value == -1) yield "    ldc.i4.m1";
+                if (value >= 0 && value <= 8) yield "    ldc.i4." + value;
+                yield value >= -128 && value <= 127 ? "    ldc.i4.s " + value : "    ldc.i4 " + value;
+            }
+            // ldarg/ldloc/stloc have one-byte forms for slots 0-3, and all four have .s forms up to 255
+            case LDARG, STARG, LDLOC, STLOC -> {
+                int slot = (Integer) operand;
+                if (slot <= 3 && op != Op.STARG) yield "    " + op.mnemonic + "." + slot;
+                yield "    " + op.mnemonic + (slot <= 255 ? ".s " : " ") + slot;
+            }
+            case LDSTR -> "    ldstr \"" + operand + "\"";
+            default -> "    " + op.mnemonic + (operand != null ? " " + operand : "");
+        };
+    }
+}
@@ -0,0 +1,163 @@
+package org.example.codegen;
+
+import org.example.codegen.CilInstr.Op;
+import org.example.optimizer.ConstantFolder;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites the instructions of a CIL method before they are written out:
+ * - stloc x; ldloc x (or starg / ldarg) where nothing else reads x: the value stays on the stack
+ * - a branch to a label right after it is dropped; a conditional one pops its condition instead
+ * - a constant followed by a conversion is loaded as the converted constant
+ * - brtrue / brfalse on a constant becomes br or nothing, and on a negated condition
+ *   (ldc.i4.0; ceq) the opposite branch
+ * - a constant or variable loaded only to be popped, code after br or ret up to the next label,
+ *   and labels no branch goes to are dropped
+ * It repeats until nothing changes, since one rewrite can enable another.
+ */
+final class CilPeephole {
+    private CilPeephole() { }
+
+    static void optimize(List<CilInstr> code) {
+        boolean changed = true;
+        while (changed) {
+            changed = removeUnreachable(code);
+            changed |= removeLabels(code);
+            Map<Object, Integer> loads = loads(code);
+            for (int i = 0; i < code.size(); i++) {
+                if (rewrite(code, i, loads)) {
+                    changed = true;
+                    loads = loads(code);
+                    i = Math.max(i - 3, -1); // The rewrite may complete a pattern that starts earlier
+                }
+            }
+        }
+    }
+
+    // Rewrites the instructions starting at i; returns true if it changed any
+    private static boolean rewrite(List<CilInstr> code, int i, Map<Object, Integer> loads) {
+        CilInstr first = code.get(i);
+        CilInstr second = i + 1 < code.size() ? code.get(i + 1) : null;
+        CilInstr third = i + 2 < code.size() ? code.get(i + 2) : null;
+
+        if (second != null && isStore(first) && second.op == loadOf(first.op) && second.operand.equals(first.operand)
+                && loads.get(variable(second)) == 1) {
+            remove(code, i, 2);
+            return true;
+        }
+        if (first.op.isBranch() && targetsNextLabel(code, i)) {
+            if (first.op == Op.BR) code.remove(i);
+            else code.set(i, new CilInstr(Op.POP, null));
+            return true;
+        }
+        if (second != null && (first.isConstant() || first.op == Op.LDLOC || first.op == Op.LDARG) && second.op == Op.POP) {
+            remove(code, i, 2);
+            return true;
+        }
+        if (second != null && first.isConstant()) {
+            CilInstr converted = convert(first, second.op);
+            if (converted != null) {
+                code.set(i, converted);
+                code.remove(i + 1);
+                return true;
+            }
+        }
+        if (second != null && first.op == Op.LDC_I4 && (second.op == Op.BRTRUE || second.op == Op.BRFALSE)) {
+            boolean taken = ((Integer) first.operand != 0) == (second.op == Op.BRTRUE);
+            if (taken) {
+                code.set(i, new CilInstr(Op.BR, second.operand));
+                code.remove(i + 1);
+            } else {
+                remove(code, i, 2);
+            }
+            return true;
+        }
+        if (third != null && first.op == Op.LDC_I4 && (Integer) first.operand == 0 && second.op == Op.CEQ
+                && (third.op == Op.BRTRUE || third.op == Op.BRFALSE)) {
+            code.set(i, new CilInstr(third.op == Op.BRTRUE ? Op.BRFALSE : Op.BRTRUE, third.operand));
+            remove(code, i + 1, 2);
+            return true;
+        }
+        return false;
+    }
+
+    // The constant a conversion leaves on the stack, or null if the conversion is not one or the
+    // result has no literal the assembler reads back the same
+    private static CilInstr convert(CilInstr constant, Op conversion) {
+        // ldc.r4 pushes the float32 nearest to its operand
+        double value = constant.op == Op.LDC_R4 ? ((Number) constant.operand).floatValue() : ((Number) constant.operand).doubleValue();
+        return switch (conversion) {
+            case CONV_R4 -> {
+                if (constant.op == Op.LDC_R4) yield constant;
+                float single = (float) value;
+                yield ConstantFolder.isPrintable(single) ? new CilInstr(Op.LDC_R4, (double) single) : null;
+            }
+            case CONV_R8 -> ConstantFolder.isPrintable(value) ? new CilInstr(Op.LDC_R8, value) : null;
+            case CONV_I4 -> {
+                if (constant.op == Op.LDC_I4) yield constant;
+                // Out of range the result is unspecified
+                yield value > Integer.MIN_VALUE - 1.0 && value < Integer.MAX_VALUE + 1.0 ? new CilInstr(Op.LDC_I4, (int) value) : null;
+            }
+            default -> null;
+        };
+    }
+
+    // Between a branch and the next instruction there are only labels, one of them its target
+    private static boolean targetsNextLabel(List<CilInstr> code, int branch) {
+        for (int i = branch + 1; i < code.size() && code.get(i).op == Op.LABEL; i++) {
+            if (code.get(i).operand.equals(code.get(branch).operand)) return true;
+        }
+        return false;
+    }
+
+    // Nothing reaches an instruction after br or ret but a branch to a label in between
+    private static boolean removeUnreachable(List<CilInstr> code) {
+        boolean changed = false;
+        for (int i = 0; i < code.size(); i++) {
+            if (code.get(i).op != Op.BR && code.get(i).op != Op.RET) continue;
+            while (i + 1 < code.size() && code.get(i + 1).op != Op.LABEL) {
+                code.remove(i + 1);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean removeLabels(List<CilInstr> code) {
+        Set<Object> targets = new HashSet<>();
+        for (CilInstr instr : code) {
+            if (instr.op.isBranch()) targets.add(instr.operand);
+        }
+        return code.removeIf(instr -> instr.op == Op.LABEL && !targets.contains(instr.operand));
+    }
+
+    // Reads of each argument and local
+    private static Map<Object, Integer> loads(List<CilInstr> code) {
+        Map<Object, Integer> loads = new HashMap<>();
+        for (CilInstr instr : code) {
+            if (instr.op == Op.LDARG || instr.op == Op.LDLOC) loads.merge(variable(instr), 1, Integer::sum);
+        }
+        return loads;
+    }
+
+    private static Object variable(CilInstr instr) {
+        return (instr.op == Op.LDARG || instr.op == Op.STARG ? "arg " : "loc ") + instr.operand;
+    }
+
+    private static boolean isStore(CilInstr instr) {
+        return instr.op == Op.STLOC || instr.op == Op.STARG;
+    }
+
+    private static Op loadOf(Op store) {
+        return store == Op.STLOC ? Op.LDLOC : Op.LDARG;
+    }
+
+    private static void remove(List<CilInstr> code, int from, int count) {
+        code.subList(from, from + count).clear();
+    }
+}
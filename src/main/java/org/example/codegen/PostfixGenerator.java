@@ -1,7 +1,9 @@
 package org.example.codegen;
 
 import org.example.ast.*;
-import org.example.syntaxAndSemantic.SemanticAnalyzer;
+import org.example.diagnostics.DiagnosticsListener;
+import org.example.diagnostics.Phase;
+import org.example.ir.*;
 
 import java.io.FileWriter;
 import java.io.IOException;
@@ -26,113 +28,205 @@ public class PostfixGenerator {
     private final List<Instruction> code = new ArrayList<>();
 
     // Local variables of the current module
-    private final Map<String, String> localVars = new LinkedHashMap<>();
-
-    // Global variables (from parent module)
-    private final Map<String, String> parentGlobals;
+    private final Map<String, GorbType> localVars = new LinkedHashMap<>();
 
     // Global variables actually used in this function (for .globVarList)
     private final Set<String> usedGlobalVars = new LinkedHashSet<>();
 
     private final Map<String, Integer> labels = new LinkedHashMap<>();
     private final Set<String> externalFunctions = new LinkedHashSet<>();
-    private final Map<String, SemanticAnalyzer.FunSignature> functionTable;
 
     private int labelCounter = 1;
     private final String moduleName;
+    private final boolean isFunction; // Module of a function: top-level variables are the parent's
+    private DiagnosticsListener listener;
 
     // Constructor for Main module
-    public PostfixGenerator(String moduleName, Map<String, SemanticAnalyzer.FunSignature> functionTable) {
-        this(moduleName, functionTable, Collections.emptyMap());
+    public PostfixGenerator(String moduleName) {
+        this(moduleName, false);
     }
 
-    // Constructor for nested functions
-    public PostfixGenerator(String moduleName,
-                            Map<String, SemanticAnalyzer.FunSignature> functionTable,
-                            Map<String, String> parentGlobals) {
+    // Constructor for the modules of functions
+    private PostfixGenerator(String moduleName, boolean isFunction) {
         this.moduleName = moduleName;
-        this.functionTable = functionTable;
-        this.parentGlobals = parentGlobals;
+        this.isFunction = isFunction;
+    }
+
+    public void setListener(DiagnosticsListener listener) {
+        this.listener = listener;
+    }
+
+    // === Modules lowered from the IR ===
+
+    public void generate(IrProgram program) throws IOException {
+        Lowering.lower(program);
+        for (IrFunction f : program.functions) {
+            PostfixGenerator funcGen = new PostfixGenerator(moduleOf(f), true);
+            funcGen.setListener(listener);
+            funcGen.generate(f);
+        }
+        for (IrVariable global : program.globals) {
+            localVars.put(global.name, global.type);
+        }
+        generate(program.main);
+    }
+
+    // Nested functions are named after the functions they are declared in: main$outer$inner
+    private String moduleOf(IrFunction f) {
+        return f.parent.parent == null ? moduleName + "$" + f.name : moduleOf(f.parent) + "$" + f.name;
     }
 
-    public void generate(List<Stmt> statements) throws IOException {
-        // 1. Collect local variables from ALL blocks (recursive)
-        collectLocals(statements);
+    private void generate(IrFunction f) throws IOException {
+        // The machine passes arguments in the first variables of the module
+        for (IrVariable param : f.params) localVars.put(param.name, param.type);
+        for (IrVariable local : f.locals) localVars.put(local.name, local.type);
+
+        List<Block> blocks = f.blocks;
+        Map<Block, String> blockLabels = new HashMap<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            Block next = i + 1 < blocks.size() ? blocks.get(i + 1) : null;
+            Instr last = blocks.get(i).terminator();
+            if (last.op == Opcode.JUMP && last.targets[0] != next) blockLabels.put(last.targets[0], newLabel());
+            if (last.op == Opcode.BRANCH) {
+                blockLabels.computeIfAbsent(last.targets[1], b -> newLabel());
+                if (last.targets[0] != next) blockLabels.computeIfAbsent(last.targets[0], b -> newLabel());
+            }
+        }
 
-        // 2. Generate code
-        for (Stmt stmt : statements) {
-            genStmt(stmt);
+        String end = null;
+        for (int i = 0; i < blocks.size(); i++) {
+            Block block = blocks.get(i);
+            Block next = i + 1 < blocks.size() ? blocks.get(i + 1) : null;
+            if (blockLabels.containsKey(block)) markLabel(blockLabels.get(block));
+            for (Instr instr : block.instrs) {
+                if (instr.inline) continue;
+                if (instr.op == Opcode.RETURN && instr.operands.isEmpty() && next != null
+                        && (f.parent == null || f.returnType != GorbType.VOID)) {
+                    // Main (and a function missing its return) ends by running off the end of the code
+                    if (end == null) end = newLabel();
+                    emit(end, "label");
+                    emit("JMP", "jump");
+                    continue;
+                }
+                genRoot(instr, next, blockLabels);
+            }
         }
+        if (end != null) markLabel(end);
 
-        // 3. Save to file
         saveToFile();
     }
 
-    // Recursive variable collection to catch vars inside blocks (e.g. 'check' inside 'while')
-    private void collectLocals(List<Stmt> statements) {
-        for (Stmt stmt : statements) {
-            if (stmt instanceof VarDecl) {
-                VarDecl v = (VarDecl) stmt;
-                String type = v.type;
-                if (type == null && v.initializer != null) type = inferType(v.initializer);
-                if (type == null) type = "int";
-                localVars.put(v.name, type);
-            } else if (stmt instanceof BlockStmt) {
-                collectLocals(((BlockStmt) stmt).statements);
-            } else if (stmt instanceof IfStmt) {
-                IfStmt i = (IfStmt) stmt;
-                if (i.thenBranch instanceof BlockStmt) collectLocals(((BlockStmt) i.thenBranch).statements);
-                else collectLocals(Collections.singletonList(i.thenBranch));
-
-                if (i.elseBranch != null) {
-                    if (i.elseBranch instanceof BlockStmt) collectLocals(((BlockStmt) i.elseBranch).statements);
-                    else collectLocals(Collections.singletonList(i.elseBranch));
+    private void genRoot(Instr instr, Block next, Map<Block, String> blockLabels) {
+        switch (instr.op) {
+            case STORE, COPY -> {
+                useVariable(instr.variable);
+                emit(instr.variable.name, "l-val");
+                genValue(instr.operands.get(0));
+                emit(":=", "assign_op");
+            }
+            case PRINT -> {
+                genValue(instr.operands.get(0));
+                emit("OUT", "out_op");
+            }
+            case JUMP -> {
+                if (instr.targets[0] != next) {
+                    emit(blockLabels.get(instr.targets[0]), "label");
+                    emit("JMP", "jump");
+                }
+            }
+            case BRANCH -> {
+                genValue(instr.operands.get(0));
+                emit(blockLabels.get(instr.targets[1]), "label");
+                emit("JF", "jf");
+                if (instr.targets[0] != next) {
+                    emit(blockLabels.get(instr.targets[0]), "label");
+                    emit("JMP", "jump");
+                }
+            }
+            case RETURN -> {
+                if (!instr.operands.isEmpty()) genValue(instr.operands.get(0));
+                if (!instr.operands.isEmpty() || next != null) emit("RET", "ret_op");
+            }
+            default -> {
+                if (instr.storage != null) {
+                    useVariable(instr.storage);
+                    emit(instr.storage.name, "l-val");
+                    genInstr(instr);
+                    emit(":=", "assign_op");
+                } else {
+                    genInstr(instr);
+                    if (instr.type != GorbType.VOID) emit("POP", "stack_op"); // Result nothing uses
                 }
-            } else if (stmt instanceof WhileStmt) {
-                WhileStmt w = (WhileStmt) stmt;
-                if (w.body instanceof BlockStmt) collectLocals(((BlockStmt) w.body).statements);
-                else collectLocals(Collections.singletonList(w.body));
             }
         }
     }
 
-    private String inferType(Expr expr) {
-        if (expr instanceof IntLiteral) return "int";
-        if (expr instanceof FloatLiteral) return "float";
-        if (expr instanceof BoolLiteral) return "bool";
-        if (expr instanceof StringLiteral) return "string";
-
-        if (expr instanceof BinaryExpr) {
-            BinaryExpr b = (BinaryExpr) expr;
-            String l = inferType(b.left);
-            String r = inferType(b.right);
-
-            // Boolean logic operators
-            if (b.op.matches("(>|<|==|!=|<=|>=)")) return "bool";
-            // String concatenation
-            if (l.equals("string") || r.equals("string")) return "string";
-            // Float propagation
-            if (l.equals("float") || r.equals("float")) return "float";
-
-            // --- FIX: Division and Power always return float ---
-            if (b.op.equals("^") || b.op.equals("/")) return "float";
-            // ------------------------------------------------
-
-            return l;
+    private void genValue(Value value) {
+        switch (value) {
+            case Constant c -> {
+                switch (c.type) {
+                    case STRING -> emit("\"" + c.value + "\"", "string");
+                    case INT -> emit(String.valueOf(c.value), "int");
+                    case FLOAT -> emit(String.valueOf(c.value), "float");
+                    default -> emit(String.valueOf(c.value), "bool");
+                }
+            }
+            case Instr i when i.inline -> genInstr(i);
+            default -> {
+                useVariable(value.storage);
+                emit(value.storage.name, "r-val");
+            }
         }
+    }
 
-        if (expr instanceof Variable) {
-            String name = ((Variable) expr).name;
-            if (localVars.containsKey(name)) return localVars.get(name);
-            if (parentGlobals.containsKey(name)) return parentGlobals.get(name);
-            return "int";
+    private void genInstr(Instr instr) {
+        switch (instr.op) {
+            case BINARY -> {
+                Value left = instr.operands.get(0);
+                Value right = instr.operands.get(1);
+                if (instr.type == GorbType.STRING) {
+                    genValue(left);
+                    convertToString(left.type);
+                    genValue(right);
+                    convertToString(right.type);
+                    emit("CAT", "cat_op");
+                    return;
+                }
+                // The machine only raises floats: int ^ int is computed in float and truncated back
+                BinaryOp op = instr.binary;
+                genValue(left);
+                if (op == BinaryOp.POW && left.type == GorbType.INT) emit("i2f", "conv");
+                genValue(right);
+                if (op == BinaryOp.POW && right.type == GorbType.INT) emit("i2f", "conv");
+                emit(op.toString(), op.isComparison() ? "rel_op" : "math_op");
+                if (op == BinaryOp.POW && instr.type == GorbType.INT) emit("f2i", "conv");
+            }
+            case WIDEN -> {
+                genValue(instr.operands.get(0));
+                emit("i2f", "conv");
+            }
+            case CALL -> {
+                for (Value arg : instr.operands) genValue(arg);
+                emit(instr.callee, "CALL");
+                externalFunctions.add(instr.callee + " " + instr.type + " " + instr.operands.size());
+            }
+            case LOAD -> {
+                useVariable(instr.variable);
+                emit(instr.variable.name, "r-val");
+            }
+            case INPUT -> {
+                emit("INP", "inp_op");
+                if (instr.type == GorbType.INT) emit("s2i", "conv");
+                else if (instr.type == GorbType.FLOAT) emit("s2f", "conv");
+            }
+            default -> throw new RuntimeException("Postfix backend cannot compute " + instr.op + " as a value");
         }
+    }
 
-        if (expr instanceof CallExpr) {
-            SemanticAnalyzer.FunSignature sig = functionTable.get(((CallExpr) expr).name);
-            return (sig != null) ? sig.returnType : "void";
+    private void useVariable(IrVariable variable) {
+        if (variable.kind == Binding.Kind.OUTER || (isFunction && variable.kind == Binding.Kind.GLOBAL)) {
+            usedGlobalVars.add(variable.name);
         }
-        return "int";
     }
 
     private void saveToFile() throws IOException {
@@ -143,7 +237,7 @@ public class PostfixGenerator {
 
             if (!localVars.isEmpty()) {
                 writer.write(".vars(\n");
-                for (Map.Entry<String, String> entry : localVars.entrySet()) {
+                for (Map.Entry<String, GorbType> entry : localVars.entrySet()) {
                     writer.write("    " + entry.getKey() + " " + entry.getValue() + "\n");
                 }
                 writer.write(")\n\n");
@@ -179,197 +273,16 @@ public class PostfixGenerator {
             }
             writer.write(")\n");
         }
-        System.out.println("Generated PSM: " + filename);
+        if (listener != null) listener.fileGenerated(Phase.POSTFIX, filename);
     }
 
-    private void genStmt(Stmt stmt) throws IOException {
-        if (stmt instanceof VarDecl) {
-            VarDecl v = (VarDecl) stmt;
-            if (v.initializer != null) {
-                emit(v.name, "l-val");
-                genExpr(v.initializer);
-                emit(":=", "assign_op");
-            }
-        }
-        else if (stmt instanceof AssignStmt) {
-            AssignStmt a = (AssignStmt) stmt;
-            if (!localVars.containsKey(a.name) && parentGlobals.containsKey(a.name)) {
-                usedGlobalVars.add(a.name);
-            }
-            emit(a.name, "l-val");
-            genExpr(a.value);
-            emit(":=", "assign_op");
+    private void convertToString(GorbType type) {
+        switch (type) {
+            case INT -> emit("i2s", "conv");
+            case FLOAT -> emit("f2s", "conv");
+            case BOOL -> { emit("b2i", "conv"); emit("i2s", "conv"); }
+            default -> { }
         }
-        else if (stmt instanceof PrintStmt) {
-            genExpr(((PrintStmt) stmt).expr);
-            emit("OUT", "out_op");
-        }
-        else if (stmt instanceof InputStmt) {
-            InputStmt inp = (InputStmt) stmt;
-            String name = inp.variableName;
-
-            if (!localVars.containsKey(name) && parentGlobals.containsKey(name)) {
-                usedGlobalVars.add(name);
-            }
-
-            String type = localVars.containsKey(name) ? localVars.get(name) : parentGlobals.get(name);
-            if (type == null) type = "int";
-
-            emit(name, "l-val");
-            emit("INP", "inp_op");
-            if (type.equals("int")) emit("s2i", "conv");
-            else if (type.equals("float")) emit("s2f", "conv");
-            emit(":=", "assign_op");
-        }
-        else if (stmt instanceof IfStmt) {
-            IfStmt i = (IfStmt) stmt;
-            String m1 = newLabel();
-            String m2 = newLabel();
-            genExpr(i.condition);
-            emit(m1, "label");
-            emit("JF", "jf");
-            genStmt(i.thenBranch);
-            emit(m2, "label");
-            emit("JMP", "jump");
-            markLabel(m1);
-            if (i.elseBranch != null) genStmt(i.elseBranch);
-            markLabel(m2);
-        }
-        else if (stmt instanceof WhileStmt) {
-            WhileStmt w = (WhileStmt) stmt;
-            String m1 = newLabel();
-            String m2 = newLabel();
-            markLabel(m1);
-            genExpr(w.condition);
-            emit(m2, "label");
-            emit("JF", "jf");
-            genStmt(w.body);
-            emit(m1, "label");
-            emit("JMP", "jump");
-            markLabel(m2);
-        }
-        else if (stmt instanceof BlockStmt) {
-            for (Stmt s : ((BlockStmt) stmt).statements) genStmt(s);
-        }
-        else if (stmt instanceof FunDecl) {
-            FunDecl f = (FunDecl) stmt;
-            // Generate a separate module name for the function
-            String funcModuleName = moduleName + "$" + f.name;
-
-            Map<String, String> visibleGlobals = new HashMap<>();
-            visibleGlobals.putAll(parentGlobals);
-            visibleGlobals.putAll(localVars);
-
-            PostfixGenerator funcGen = new PostfixGenerator(funcModuleName, functionTable, visibleGlobals);
-
-            for (VarDecl param : f.params) {
-                funcGen.localVars.put(param.name, param.type);
-            }
-            funcGen.generate(((BlockStmt) f.body).statements);
-        }
-        else if (stmt instanceof ReturnStmt) {
-            genExpr(((ReturnStmt) stmt).expr);
-            emit("RET", "ret_op");
-        }
-        else if (stmt instanceof ExprStmt) {
-            genExpr(((ExprStmt) stmt).expr);
-        }
-    }
-
-    private void genExpr(Expr expr) {
-        if (expr instanceof IntLiteral) {
-            emit(String.valueOf(((IntLiteral) expr).value), "int");
-        }
-        else if (expr instanceof FloatLiteral) {
-            emit(String.valueOf(((FloatLiteral) expr).value), "float");
-        }
-        else if (expr instanceof BoolLiteral) {
-            emit(((BoolLiteral) expr).value ? "true" : "false", "bool");
-        }
-        else if (expr instanceof StringLiteral) {
-            emit("\"" + ((StringLiteral) expr).value + "\"", "string");
-        }
-        else if (expr instanceof Variable) {
-            String name = ((Variable) expr).name;
-            if (!localVars.containsKey(name) && parentGlobals.containsKey(name)) {
-                usedGlobalVars.add(name);
-            }
-            emit(name, "r-val");
-        }
-        else if (expr instanceof BinaryExpr) {
-            BinaryExpr b = (BinaryExpr) expr;
-            String typeLeft = inferType(b.left);
-            String typeRight = inferType(b.right);
-
-            // Handle string concatenation
-            if (b.op.equals("+") && (typeLeft.equals("string") || typeRight.equals("string"))) {
-                genExpr(b.left);
-                if (!typeLeft.equals("string")) convertToString(typeLeft);
-                genExpr(b.right);
-                if (!typeRight.equals("string")) convertToString(typeRight);
-                emit("CAT", "cat_op");
-                return;
-            }
-
-            genExpr(b.left);
-            // Implicit coercion int -> float if needed
-            if (typeLeft.equals("int") && (typeRight.equals("float") || b.op.equals("^"))) {
-                emit("i2f", "conv");
-            }
-
-            genExpr(b.right);
-            if (typeRight.equals("int") && (typeLeft.equals("float") || b.op.equals("^"))) {
-                emit("i2f", "conv");
-            }
-
-            switch (b.op) {
-                case "+": emit("+", "math_op"); break;
-                case "-": emit("-", "math_op"); break;
-                case "*": emit("*", "math_op"); break;
-                case "/": emit("/", "math_op"); break;
-                case "^": emit("^", "math_op"); break;
-                case ">": emit(">", "rel_op"); break;
-                case "<": emit("<", "rel_op"); break;
-                case "==": emit("==", "rel_op"); break;
-                case "<=": emit("<=", "rel_op"); break;
-                case ">=": emit(">=", "rel_op"); break;
-                case "!=": emit("!=", "rel_op"); break;
-                case "&&": emit("AND", "bool_op"); break;
-                case "||": emit("OR", "bool_op"); break;
-                default: throw new RuntimeException("Unknown op: " + b.op);
-            }
-        }
-        else if (expr instanceof CallExpr) {
-            CallExpr c = (CallExpr) expr;
-            SemanticAnalyzer.FunSignature sig = functionTable.get(c.name);
-
-            for (int i = 0; i < c.args.size(); i++) {
-                Expr arg = c.args.get(i);
-                genExpr(arg);
-
-                // Check for implicit conversion in arguments
-                if (sig != null && i < sig.paramTypes.size()) {
-                    String expectedType = sig.paramTypes.get(i);
-                    String actualType = inferType(arg);
-                    if (expectedType.equals("float") && actualType.equals("int")) {
-                        emit("i2f", "conv");
-                    }
-                }
-            }
-
-            String funcName = c.name;
-            emit(funcName, "CALL");
-
-            String returnType = (sig != null) ? sig.returnType : "void";
-            int argCount = c.args.size();
-            externalFunctions.add(funcName + " " + returnType + " " + argCount);
-        }
-    }
-
-    private void convertToString(String type) {
-        if (type.equals("int")) emit("i2s", "conv");
-        else if (type.equals("float")) emit("f2s", "conv");
-        else if (type.equals("bool")) { emit("b2i", "conv"); emit("i2s", "conv"); }
     }
 
     private void emit(String lexeme, String token) {
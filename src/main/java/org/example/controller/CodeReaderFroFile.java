@@ -1,11 +1,30 @@
 package org.example.controller;
 
 import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 
 public class CodeReaderFroFile {
     public String getCode(File file){
         return createString(file);
     }
+
+    // Maps the file read-only instead of copying it onto the heap (for the byte mode of the Lexer)
+    public MappedByteBuffer mapCode(File file){
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new RuntimeException("File too large: " + file.getName());
+            }
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            throw new RuntimeException("File not found: " + file.getName(), e);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading file: " + file.getName(), e);
+        }
+    }
     private String createString(File file){
         try(BufferedReader fileToRead = new BufferedReader(new FileReader(file))){
             String line;
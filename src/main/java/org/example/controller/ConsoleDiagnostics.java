@@ -0,0 +1,80 @@
+package org.example.controller;
+
+import org.example.ast.Stmt;
+import org.example.diagnostics.DiagnosticsListener;
+import org.example.diagnostics.Phase;
+import org.example.tokens.TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prints all diagnostics to the console (lexer tables, AST tree, phase messages).
+ */
+public class ConsoleDiagnostics implements DiagnosticsListener {
+    private final List<String> tableOfSymb = new ArrayList<>();
+
+    @Override
+    public void phaseStarted(Phase phase) {
+        switch (phase) {
+            case SYNTAX: System.out.println("SYNTAX ANALYSIS"); break;
+            case SEMANTIC: System.out.println("\nSEMANTIC ANALYSIS"); break;
+            case POSTFIX: System.out.println("\n=== CODE GENERATION ==="); break;
+            default: break;
+        }
+    }
+
+    @Override
+    public void phaseFinished(Phase phase) {
+        switch (phase) {
+            // If execution reaches here, no errors occurred
+            case SEMANTIC: System.out.println("SUCCESS"); break;
+            case POSTFIX: System.out.println("Postfix code generation finished."); break;
+            case CIL: System.out.println("CIL code generation finished."); break;
+            default: break;
+        }
+    }
+
+    @Override
+    public void token(int line, String lexeme, TokenType type, int index) {
+        tableOfSymb.add(String.format("%-5d | %-15s | %-15s | %-5s", line, lexeme, type, index == 0 ? "" : String.valueOf(index)));
+    }
+
+    @Override
+    public void symbolTables(Map<String, Integer> ids, Map<String, String> consts) {
+        System.out.println("\n 3.2.2 Parsing Table ");
+        System.out.println(String.format("%-5s | %-15s | %-15s | %-5s", "Line", "Lexeme", "Token", "Index"));
+        System.out.println("-------------------------------------------------------");
+        for (String row : tableOfSymb) {
+            System.out.println(row);
+        }
+        tableOfSymb.clear();
+
+        System.out.println("\n 3.2.3 ID Table ");
+        ids.forEach((k, v) -> System.out.println(k + " -> " + v));
+
+        System.out.println("\n 3.2.4 Const Table ");
+        consts.forEach((k, v) -> System.out.println(k + " -> " + v));
+    }
+
+    @Override
+    public void ast(List<Stmt> statements) {
+        new AstPrinter().print(statements);
+    }
+
+    @Override
+    public void inlining(String caller, String callee, boolean inlined, String reason) {
+        System.out.println((inlined ? "Inlined " : "Kept call to ") + callee + " in " + caller + " (" + reason + ")");
+    }
+
+    @Override
+    public void memoization(String function, boolean memoized, String reason) {
+        System.out.println((memoized ? "Memoized " : "Did not memoize ") + function + " (" + reason + ")");
+    }
+
+    @Override
+    public void fileGenerated(Phase phase, String filename) {
+        System.out.println("Generated " + (phase == Phase.CIL ? "CIL" : "PSM") + ": " + filename);
+    }
+}
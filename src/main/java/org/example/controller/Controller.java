@@ -1,14 +1,33 @@
 package org.example.controller;
 
 import java.io.File;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 public class Controller {
+    // Arguments: [--memoize=f,g,...] [source file]
+    // --memoize names the functions to give a table of recent results; only pure ones get it
     public static void main(String[] args) throws Exception {
+        String path = "/Users/zecqeem/IdeaProjects/Kotlin/src/main/java/org/example/code.txt";
+        Set<String> memoized = new LinkedHashSet<>();
+        for (String arg : args) {
+            if (arg.startsWith("--memoize=")) {
+                for (String name : arg.substring("--memoize=".length()).split(",")) {
+                    if (!name.isBlank()) memoized.add(name.trim());
+                }
+            } else if (arg.startsWith("--")) {
+                throw new RuntimeException("Unknown option: " + arg);
+            } else {
+                path = arg;
+            }
+        }
+
         CodeReaderFroFile str = new CodeReaderFroFile();
-        String codeFromFile = str.getCode(new File("/Users/zecqeem/IdeaProjects/Kotlin/src/main/java/org/example/code.txt"));
-        RunCode runCode = new RunCode();
-        runCode.running(codeFromFile);
-        //runCode.gorbRun(codeFromFile);
+        File file = new File(path);
+        RunCode runCode = new RunCode(new ConsoleDiagnostics());
+        runCode.setMemoized(memoized);
+        runCode.running(str.mapCode(file));
+        //runCode.gorbRun(str.getCode(file));
     }
 
-}
\ No newline at end of file
+}
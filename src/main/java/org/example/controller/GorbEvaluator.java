@@ -12,6 +12,8 @@ public class GorbEvaluator extends GorbBaseVisitor<Object> {
     private final Map<String, Object> variables = new HashMap<>();
     private final Scanner scanner = new Scanner(System.in);
 
+    private static final int MAX_INT_EXPONENT = 16; // Largest int ^ exponent multiplied out
+
     @Override
     public Object visitVarDecl(GorbParser.VarDeclContext ctx) {
         String varName = ctx.ID().getText();
@@ -137,6 +139,8 @@ public class GorbEvaluator extends GorbBaseVisitor<Object> {
         // Grammar: primaryExpr (CARET powerExpr)?
         if (ctx.powerExpr() != null) {
             Object right = visit(ctx.powerExpr());
+            Object reduced = smallPower(left, right);
+            if (reduced != null) return reduced;
             double result = Math.pow(asDouble(left), asDouble(right));
             return formatNumber(result);
         }
@@ -193,6 +197,28 @@ public class GorbEvaluator extends GorbBaseVisitor<Object> {
         return null;
     }
 
+    // Small whole exponents are multiplied out instead of going through Math.pow.
+    // Returns null when Math.pow has to decide (other operands, or an int result out of range)
+    private Object smallPower(Object left, Object right) {
+        if (!(right instanceof Integer n) || n < 0 || n > MAX_INT_EXPONENT) return null;
+        if (left instanceof Integer base) {
+            // Square-and-multiply; Math.pow is exact for every result that fits in an int
+            long result = 1;
+            long square = base;
+            for (int e = n; e > 0; e >>= 1) {
+                if ((e & 1) != 0) result *= square;
+                if (e > 1) square *= square;
+                if (result != (int) result || Math.abs(square) > Integer.MAX_VALUE) return null;
+            }
+            return (int) result;
+        }
+        // x * x is rounded once, like Math.pow(x, 2); longer chains would not be
+        if (left instanceof Double d && n <= 2) {
+            return formatNumber(n == 0 ? 1.0 : n == 1 ? d : d * d);
+        }
+        return null;
+    }
+
     private Double asDouble(Object o) {
         if (o instanceof Number) {
             return ((Number) o).doubleValue();
@@ -9,46 +9,105 @@ import org.example.codegen.CilGenerator;
 import org.example.codegen.PostfixGenerator;
 import org.example.GorbLexer;
 import org.example.GorbParser;
+import org.example.diagnostics.DiagnosticsListener;
+import org.example.diagnostics.Phase;
+import org.example.ir.Inliner;
+import org.example.ir.IrBuilder;
+import org.example.ir.IrOptimizer;
+import org.example.ir.IrProgram;
+import org.example.ir.Memoizer;
+import org.example.ir.PartialEvaluator;
 
 import org.example.lexer.Lexer;
+import org.example.optimizer.ConstantFolder;
 import org.example.syntaxAndSemantic.Parser;
 import org.example.syntaxAndSemantic.SemanticAnalyzer;
-import org.example.tokens.Token;
+import org.example.tokens.TokenStream;
 
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Set;
 
 public class RunCode {
+    private final DiagnosticsListener listener;
+    private Set<String> memoized = Set.of();
+
+    // No listener: tables, AST dump and phase messages are never built
+    public RunCode() {
+        this(null);
+    }
+
+    public RunCode(DiagnosticsListener listener) {
+        this.listener = listener;
+    }
+
+    // Functions to give a table of recent results (see Memoizer), by name; only pure ones get it
+    public void setMemoized(Set<String> functions) {
+        this.memoized = functions;
+    }
 
     // Legacy pipeline (Labs 1-5: Manual Lexer/Parser + Codegen)
     public void running(String code) throws Exception {
+        running(new Lexer(code), false);
+    }
+
+    // Same pipeline over UTF-8 bytes (e.g. a memory-mapped source file).
+    // Files large enough to split are scanned in parallel chunks before parsing; smaller ones are streamed.
+    public void running(ByteBuffer code) throws Exception {
+        Lexer lexer = new Lexer(code);
+        running(lexer, lexer.scansInParallel());
+    }
+
+    private void running(Lexer lexer, boolean parallel) throws Exception {
         try {
-            System.out.println("SYNTAX ANALYSIS");
-            Lexer lexer = new Lexer(code);
-            List<Token> tokens = lexer.tokenize();
+            if (listener != null) listener.phaseStarted(Phase.SYNTAX);
+            lexer.setListener(listener);
 
-            Parser parser = new Parser(tokens);
+            // Parser pulls tokens from the lexer on demand, or reads the parallel scan result
+            Parser parser = new Parser(parallel ? lexer.tokenizeParallel() : new TokenStream(lexer));
             List<Stmt> statements = parser.parse();
+            lexer.printTables();
 
             // Pretty print the AST to visualize nesting
-            // Note: Ensure AstPrinter class exists in your project
-            AstPrinter printer = new AstPrinter();
-            printer.print(statements);
+            if (listener != null) listener.ast(statements);
 
-            System.out.println("\nSEMANTIC ANALYSIS");
+            if (listener != null) listener.phaseStarted(Phase.SEMANTIC);
             SemanticAnalyzer semantic = new SemanticAnalyzer();
             semantic.analyze(statements);
-
-            // If execution reaches here, no errors occurred
-            System.out.println("SUCCESS");
-
-            System.out.println("\n=== CODE GENERATION ===");
-            PostfixGenerator generator = new PostfixGenerator("main", semantic.getFunctions());
-            generator.generate(statements);
-            System.out.println("Postfix code generation finished.");
-
+            if (listener != null) listener.phaseFinished(Phase.SEMANTIC);
+
+            if (listener != null) listener.phaseStarted(Phase.OPTIMIZE);
+            statements = new ConstantFolder().optimize(statements);
+            // From here on the program is read from its flat encoding; the object AST is dropped
+            FlatAst ast = FlatAst.encode(statements);
+            statements = null;
+            // Both backends are lowered from the same optimized SSA IR
+            IrProgram program = new IrBuilder().build(ast);
+            IrOptimizer optimizer = new IrOptimizer();
+            optimizer.optimize(program);
+            // Pure calls on constants become their values, which may make more arguments constant
+            PartialEvaluator evaluator = new PartialEvaluator();
+            while (evaluator.evaluate(program)) optimizer.optimize(program);
+            // Before inlining, so every call of a memoized function goes through its table
+            Memoizer memoizer = new Memoizer(memoized);
+            memoizer.setListener(listener);
+            if (memoizer.memoize(program)) optimizer.optimize(program);
+            Inliner inliner = new Inliner();
+            inliner.setListener(listener);
+            if (inliner.inline(program)) optimizer.optimize(program);
+            if (listener != null) listener.phaseFinished(Phase.OPTIMIZE);
+
+            if (listener != null) listener.phaseStarted(Phase.POSTFIX);
+            PostfixGenerator generator = new PostfixGenerator("main");
+            generator.setListener(listener);
+            generator.generate(program);
+            if (listener != null) listener.phaseFinished(Phase.POSTFIX);
+
+            if (listener != null) listener.phaseStarted(Phase.CIL);
             CilGenerator cilGenerator = new CilGenerator("main", semantic.getFunctions());
-            cilGenerator.generate(statements);
-            System.out.println("CIL code generation finished.");
+            cilGenerator.setListener(listener);
+            cilGenerator.generate(program);
+            if (listener != null) listener.phaseFinished(Phase.CIL);
 
         } catch (Exception e) {
             System.err.println("ERROR " + e.getMessage());
@@ -0,0 +1,33 @@
+package org.example.diagnostics;
+
+import org.example.ast.Stmt;
+import org.example.tokens.TokenType;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receives optional compiler output (lexer tables, AST dump, phase events).
+ * Every phase takes a nullable listener and skips building these arguments when none is set.
+ */
+public interface DiagnosticsListener {
+
+    default void phaseStarted(Phase phase) {}
+
+    default void phaseFinished(Phase phase) {}
+
+    // One row of the lexer parsing table; index is the ID/const table index, 0 if none
+    default void token(int line, String lexeme, TokenType type, int index) {}
+
+    default void symbolTables(Map<String, Integer> ids, Map<String, String> consts) {}
+
+    default void ast(List<Stmt> statements) {}
+
+    // A call the IR inliner considered; reason is the cost when inlined, or why it stays a call
+    default void inlining(String caller, String callee, boolean inlined, String reason) {}
+
+    // A function chosen for a table of results; reason is the table size when it got one, or why not
+    default void memoization(String function, boolean memoized, String reason) {}
+
+    default void fileGenerated(Phase phase, String filename) {}
+}
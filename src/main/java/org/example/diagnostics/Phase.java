@@ -0,0 +1,5 @@
+package org.example.diagnostics;
+
+public enum Phase {
+    SYNTAX, SEMANTIC, OPTIMIZE, POSTFIX, CIL
+}
@@ -0,0 +1,37 @@
+package org.example.ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public final class Block {
+    final int id;
+    public final List<Instr> phis = new ArrayList<>();
+    public final List<Instr> instrs = new ArrayList<>(); // The last one is the terminator
+    public final List<Block> preds = new ArrayList<>();  // Phi operands are in this order
+
+    Block(int id) {
+        this.id = id;
+    }
+
+    public Instr terminator() {
+        return instrs.isEmpty() ? null : instrs.get(instrs.size() - 1);
+    }
+
+    public List<Block> succs() {
+        Instr last = terminator();
+        return last == null || last.targets == null ? Collections.emptyList() : Arrays.asList(last.targets);
+    }
+
+    // Drops the edge from the pred at index, with its phi operands
+    void removePred(int index) {
+        preds.remove(index);
+        for (Instr phi : phis) phi.operands.remove(index);
+    }
+
+    @Override
+    public String toString() {
+        return "b" + id;
+    }
+}
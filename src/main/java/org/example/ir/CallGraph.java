@@ -0,0 +1,69 @@
+package org.example.ir;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which functions of a program call which, with the top-level code as the root. Built once from the
+ * IR; passes that change calls build a new one.
+ */
+public final class CallGraph {
+    private final IrProgram program;
+    private final Map<IrFunction, Set<IrFunction>> callees = new LinkedHashMap<>();
+    private final Map<IrFunction, Set<IrFunction>> callers = new HashMap<>();
+
+    public CallGraph(IrProgram program) {
+        this.program = program;
+        Map<String, IrFunction> byName = new HashMap<>();
+        for (IrFunction f : program.functions) byName.put(f.name, f);
+
+        add(program.main, byName);
+        for (IrFunction f : program.functions) add(f, byName);
+    }
+
+    private void add(IrFunction f, Map<String, IrFunction> byName) {
+        Set<IrFunction> calls = new LinkedHashSet<>();
+        for (Block block : f.blocks) {
+            for (Instr instr : block.instrs) {
+                if (instr.op == Opcode.CALL && byName.containsKey(instr.callee)) calls.add(byName.get(instr.callee));
+            }
+        }
+        callees.put(f, calls);
+        callers.putIfAbsent(f, new LinkedHashSet<>());
+        for (IrFunction callee : calls) callers.computeIfAbsent(callee, key -> new LinkedHashSet<>()).add(f);
+    }
+
+    // Functions f calls directly, in the order of their first calls
+    public Set<IrFunction> callees(IrFunction f) {
+        return Collections.unmodifiableSet(callees.getOrDefault(f, Set.of()));
+    }
+
+    // Functions, or the top-level code, that call f directly
+    public Set<IrFunction> callers(IrFunction f) {
+        return Collections.unmodifiableSet(callers.getOrDefault(f, Set.of()));
+    }
+
+    // Functions some run of the program may call: those the top-level code calls, and theirs
+    public Set<IrFunction> reachable() {
+        Set<IrFunction> reached = new LinkedHashSet<>();
+        Deque<IrFunction> work = new ArrayDeque<>(callees.get(program.main));
+        while (!work.isEmpty()) {
+            IrFunction f = work.pop();
+            if (reached.add(f)) work.addAll(callees.get(f));
+        }
+        return reached;
+    }
+
+    // Drops the functions the top-level code never reaches, so no backend emits them.
+    // Returns true if some were dropped
+    public boolean removeUnreachable() {
+        Set<IrFunction> reached = reachable();
+        return program.functions.removeIf(f -> !reached.contains(f));
+    }
+}
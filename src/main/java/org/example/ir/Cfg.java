@@ -0,0 +1,177 @@
+package org.example.ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Graph algorithms over the blocks of a function.
+ */
+final class Cfg {
+    private Cfg() { }
+
+    // Depth-first from the entry, else-successor first, so that a then-branch and a loop body
+    // come right after the block that branches to them
+    static List<Block> reversePostorder(IrFunction f) {
+        List<Block> order = new ArrayList<>();
+        Set<Block> visited = new HashSet<>();
+        Deque<Block> path = new ArrayDeque<>();
+        Deque<Integer> next = new ArrayDeque<>(); // Successor of each block on the path to visit next, counting down
+
+        Block entry = f.entry();
+        visited.add(entry);
+        path.push(entry);
+        next.push(entry.succs().size() - 1);
+        while (!path.isEmpty()) {
+            Block block = path.peek();
+            int i = next.pop();
+            if (i < 0) {
+                order.add(path.pop());
+                continue;
+            }
+            next.push(i - 1);
+            Block succ = block.succs().get(i);
+            if (visited.add(succ)) {
+                path.push(succ);
+                next.push(succ.succs().size() - 1);
+            }
+        }
+        Collections.reverse(order);
+        return order;
+    }
+
+    // Drops the blocks the entry does not reach, and their edges into reachable blocks
+    static void removeUnreachable(IrFunction f) {
+        Set<Block> reachable = new HashSet<>(reversePostorder(f));
+        if (reachable.size() == f.blocks.size()) return;
+        f.blocks.retainAll(reachable);
+        for (Block block : f.blocks) {
+            for (int i = block.preds.size() - 1; i >= 0; i--) {
+                if (!reachable.contains(block.preds.get(i))) block.removePred(i);
+            }
+        }
+    }
+
+    // Immediate dominator of each block (Cooper, Harvey, Kennedy, "A Simple, Fast Dominance Algorithm");
+    // the entry is its own
+    static Map<Block, Block> dominators(List<Block> rpo) {
+        Map<Block, Integer> index = new HashMap<>();
+        for (int i = 0; i < rpo.size(); i++) index.put(rpo.get(i), i);
+
+        Block[] idom = new Block[rpo.size()];
+        idom[0] = rpo.get(0);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < rpo.size(); i++) {
+                Block dom = null;
+                for (Block pred : rpo.get(i).preds) {
+                    Integer p = index.get(pred);
+                    if (p == null || idom[p] == null) continue; // Not processed yet
+                    dom = dom == null ? pred : intersect(pred, dom, idom, index);
+                }
+                if (dom != idom[i]) {
+                    idom[i] = dom;
+                    changed = true;
+                }
+            }
+        }
+
+        Map<Block, Block> result = new HashMap<>();
+        for (int i = 0; i < rpo.size(); i++) result.put(rpo.get(i), idom[i]);
+        return result;
+    }
+
+    // Blocks inside some loop. Gorb code is structured, so every cycle is entered through a header
+    // that dominates the blocks jumping back to it
+    static Set<Block> loopBlocks(IrFunction f) {
+        List<Block> rpo = reversePostorder(f);
+        Map<Block, Block> idom = dominators(rpo);
+        Set<Block> loops = new HashSet<>();
+        for (Block block : rpo) {
+            for (Block header : block.succs()) {
+                if (!dominates(header, block, idom)) continue;
+                // A back edge: the loop is the header and what reaches the edge without passing it
+                Set<Block> body = new HashSet<>(List.of(header, block));
+                Deque<Block> work = new ArrayDeque<>();
+                if (block != header) work.push(block);
+                while (!work.isEmpty()) {
+                    for (Block pred : work.pop().preds) {
+                        if (body.add(pred)) work.push(pred);
+                    }
+                }
+                loops.addAll(body);
+            }
+        }
+        return loops;
+    }
+
+    static boolean dominates(Block a, Block b, Map<Block, Block> idom) {
+        for (Block x = b; ; x = idom.get(x)) {
+            if (x == a) return true;
+            if (idom.get(x) == x) return false;
+        }
+    }
+
+    private static Block intersect(Block a, Block b, Block[] idom, Map<Block, Integer> index) {
+        while (a != b) {
+            while (index.get(a) > index.get(b)) a = idom[index.get(a)];
+            while (index.get(b) > index.get(a)) b = idom[index.get(b)];
+        }
+        return a;
+    }
+
+    // Copies blocks to the end of target's, in the same order, and returns each copy by its original.
+    // A value values already maps is read as what it maps to (e.g. a parameter as an argument) and not
+    // copied; values is filled with the copies. Values defined elsewhere and targets outside the blocks
+    // stay as they are. Predecessors outside the blocks are left out: the caller connects the copy
+    static Map<Block, Block> copyBlocks(List<Block> blocks, IrFunction target, Map<Value, Value> values) {
+        Map<Block, Block> copies = new LinkedHashMap<>();
+        for (Block block : blocks) copies.put(block, target.newBlock());
+
+        for (Block block : blocks) {
+            Block copy = copies.get(block);
+            for (Block pred : block.preds) {
+                if (copies.containsKey(pred)) copy.preds.add(copies.get(pred));
+            }
+            for (Instr phi : block.phis) {
+                if (!values.containsKey(phi)) copy.phis.add(copyInstr(phi, copy, target, copies, values));
+            }
+            for (Instr instr : block.instrs) copy.instrs.add(copyInstr(instr, copy, target, copies, values));
+        }
+
+        // Operands last: a phi may read a value defined further down
+        for (Block copy : copies.values()) {
+            for (Instr phi : copy.phis) phi.operands.replaceAll(v -> copyOperand(v, target, values));
+            for (Instr instr : copy.instrs) instr.operands.replaceAll(v -> copyOperand(v, target, values));
+        }
+        return copies;
+    }
+
+    private static Instr copyInstr(Instr instr, Block block, IrFunction target, Map<Block, Block> blocks, Map<Value, Value> values) {
+        Instr copy = target.newInstr(instr.op, instr.type, instr.operands);
+        copy.block = block;
+        copy.binary = instr.binary;
+        copy.callee = instr.callee;
+        copy.variable = instr.variable;
+        copy.name = instr.name;
+        if (instr.targets != null) {
+            copy.targets = new Block[instr.targets.length];
+            for (int i = 0; i < instr.targets.length; i++) copy.targets[i] = blocks.getOrDefault(instr.targets[i], instr.targets[i]);
+        }
+        values.put(instr, copy);
+        return copy;
+    }
+
+    private static Value copyOperand(Value value, IrFunction target, Map<Value, Value> values) {
+        // Constants are interned per function
+        return value instanceof Constant c ? target.constant(c.type, c.value) : values.getOrDefault(value, value);
+    }
+}
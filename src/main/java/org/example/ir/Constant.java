@@ -0,0 +1,17 @@
+package org.example.ir;
+
+import org.example.ast.GorbType;
+
+public final class Constant extends Value {
+    public final Object value; // Integer, Double, Boolean or String, by type
+
+    Constant(int id, GorbType type, Object value) {
+        super(id, type);
+        this.value = value;
+    }
+
+    @Override
+    public String toString() {
+        return type == GorbType.STRING ? "\"" + value + "\"" : String.valueOf(value);
+    }
+}
@@ -0,0 +1,230 @@
+package org.example.ir;
+
+import org.example.ast.Binding;
+import org.example.ast.GorbType;
+import org.example.diagnostics.DiagnosticsListener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replaces calls to small functions with a copy of the callee's blocks: the arguments take the
+ * place of the parameters, and each return jumps to the code after the call with its value.
+ * A call inside a loop is inlined when the callee costs at most maxCost instructions; elsewhere
+ * only when the copy is no bigger than the call and its arguments.
+ * Calls in the copied blocks are considered too, so a recursive function is unrolled into itself
+ * up to maxRecursion times. Run IrOptimizer afterwards to clean up the joined blocks.
+ */
+public class Inliner {
+    private final int maxCost;      // Largest callee inlined into a loop, in instructions
+    private final int maxGrowth;    // Instructions inlining may add to one function
+    private final int maxRecursion; // Copies of a function inside its own copies
+
+    private DiagnosticsListener listener;
+
+    // Functions as they were before any inlining: copies are taken from these, so a function
+    // inlined into itself is not copied while it changes
+    private final Map<String, IrFunction> templates = new HashMap<>();
+    private final Map<IrFunction, Set<Block>> templateLoops = new HashMap<>();
+
+    // The function each call site is in, then the functions it was inlined through
+    private final Map<Instr, List<String>> chains = new IdentityHashMap<>();
+    private final Set<Instr> inLoop = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    public Inliner() {
+        this(12, 64, 1);
+    }
+
+    public Inliner(int maxCost, int maxGrowth, int maxRecursion) {
+        this.maxCost = maxCost;
+        this.maxGrowth = maxGrowth;
+        this.maxRecursion = maxRecursion;
+    }
+
+    public void setListener(DiagnosticsListener listener) {
+        this.listener = listener;
+    }
+
+    // Returns true if some call was inlined
+    public boolean inline(IrProgram program) {
+        for (IrFunction f : program.functions) {
+            IrFunction template = template(f);
+            templates.put(f.name, template);
+            templateLoops.put(template, Cfg.loopBlocks(template));
+        }
+        boolean changed = inline(program.main);
+        for (IrFunction f : program.functions) changed |= inline(f);
+        return changed;
+    }
+
+    private boolean inline(IrFunction caller) {
+        Deque<Instr> calls = new ArrayDeque<>();
+        Set<Block> loops = Cfg.loopBlocks(caller);
+        for (Block block : caller.blocks) {
+            for (Instr instr : block.instrs) {
+                if (instr.op != Opcode.CALL) continue;
+                calls.add(instr);
+                if (loops.contains(block)) inLoop.add(instr);
+            }
+        }
+
+        int growth = 0;
+        boolean changed = false;
+        while (!calls.isEmpty()) {
+            Instr call = calls.poll();
+            IrFunction callee = templates.get(call.callee);
+            List<String> chain = chains.getOrDefault(call, List.of(caller.name));
+
+            String reason = rejection(call, callee, chain);
+            int cost = callee != null ? cost(callee) : 0;
+            if (reason == null && growth + cost > maxGrowth) reason = caller.name + " grew by " + growth + " instructions";
+            if (listener != null) listener.inlining(caller.name, call.callee, reason == null, reason != null ? reason : "cost " + cost);
+            if (reason != null) continue;
+
+            List<String> inner = new ArrayList<>(chain);
+            inner.add(callee.name);
+            for (Instr copied : inlineCall(caller, call, callee)) {
+                chains.put(copied, inner);
+                calls.add(copied);
+            }
+            inLoop.remove(call);
+            growth += cost;
+            changed = true;
+        }
+        return changed;
+    }
+
+    // Why a call to callee through chain stays a call, or null to inline it
+    private String rejection(Instr call, IrFunction callee, List<String> chain) {
+        if (callee == null) return "not a function of the program";
+        if (Collections.frequency(chain, callee.name) > maxRecursion) return "recursion deeper than " + maxRecursion;
+        if (!callee.entry().preds.isEmpty()) return "entry block is a loop header";
+        for (Block block : callee.blocks) {
+            for (Instr instr : block.instrs) {
+                // Parameters and locals of a function that declares nested ones, and variables of
+                // enclosing functions, are reached by name from the callee's module only
+                if (instr.variable != null && instr.variable.kind != Binding.Kind.GLOBAL) return "keeps " + instr.variable + " in memory";
+                if (instr.op == Opcode.RETURN && instr.operands.isEmpty()) return "may end without a value";
+            }
+        }
+        // Outside loops the call itself is all inlining saves, so the copy may not be bigger
+        int cost = cost(callee);
+        int limit = inLoop.contains(call) ? maxCost : call.operands.size() + 1;
+        return cost > limit ? "cost " + cost + " over " + limit + (inLoop.contains(call) ? "" : " outside loops") : null;
+    }
+
+    // Instructions a copy adds; the returns become the jumps out
+    private static int cost(IrFunction f) {
+        int cost = 0;
+        for (Block block : f.blocks) {
+            cost += block.phis.size();
+            for (Instr instr : block.instrs) {
+                if (instr.op != Opcode.JUMP && instr.op != Opcode.RETURN) cost++;
+            }
+        }
+        return cost;
+    }
+
+    // === Copying ===
+
+    private static IrFunction template(IrFunction f) {
+        IrFunction template = new IrFunction(f.name, f.returnType, f.parent, f.topLevel);
+        template.params.addAll(f.params);
+        copyBlocks(f, template, null);
+        return template;
+    }
+
+    // Splits the block at the call, and puts a copy of the callee between the two halves.
+    // Returns the calls in the copy
+    private List<Instr> inlineCall(IrFunction caller, Instr call, IrFunction callee) {
+        Block block = call.block;
+        int at = block.instrs.indexOf(call);
+
+        // The rest of the block moves to a new block, which the copy returns to
+        Block rest = caller.newBlock();
+        List<Instr> tail = block.instrs.subList(at + 1, block.instrs.size());
+        for (Instr instr : tail) instr.block = rest;
+        rest.instrs.addAll(tail);
+        tail.clear();
+        for (Block succ : rest.succs()) succ.preds.replaceAll(p -> p == block ? rest : p);
+
+        List<Block> copy = copyBlocks(callee, caller, call.operands);
+        block.instrs.remove(at);
+        Instr jump = caller.newInstr(Opcode.JUMP, GorbType.VOID);
+        jump.block = block;
+        jump.targets = new Block[]{copy.get(0)};
+        block.instrs.add(jump);
+        copy.get(0).preds.add(block);
+
+        // Each return jumps to the rest of the block; their values meet in a phi there
+        List<Value> results = new ArrayList<>();
+        List<Instr> calls = new ArrayList<>();
+        Set<Block> loops = templateLoops.get(callee);
+        for (int i = 0; i < copy.size(); i++) {
+            Block copied = copy.get(i);
+            boolean loop = inLoop.contains(call) || loops.contains(callee.blocks.get(i));
+            Instr last = copied.terminator();
+            if (last.op == Opcode.RETURN) {
+                results.add(last.operands.get(0));
+                Instr back = caller.newInstr(Opcode.JUMP, GorbType.VOID);
+                back.block = copied;
+                back.targets = new Block[]{rest};
+                copied.instrs.set(copied.instrs.size() - 1, back);
+                rest.preds.add(copied);
+            }
+            for (Instr instr : copied.instrs) {
+                if (instr.op != Opcode.CALL) continue;
+                calls.add(instr);
+                if (loop) inLoop.add(instr);
+            }
+        }
+
+        Value result;
+        if (results.size() == 1) {
+            result = results.get(0);
+        } else if (results.isEmpty()) {
+            result = caller.constant(call.type, IrOptimizer.defaultValue(call.type)); // Never returns: rest is unreachable
+        } else {
+            Instr phi = caller.newInstr(Opcode.PHI, call.type, results);
+            phi.block = rest;
+            phi.name = call.name;
+            rest.phis.add(phi);
+            result = phi;
+        }
+        replaceUses(caller, call, result);
+        return calls;
+    }
+
+    // Copies the blocks of source to the end of target's, the entry first. A parameter of source
+    // becomes the argument at its index, or stays itself without args
+    private static List<Block> copyBlocks(IrFunction source, IrFunction target, List<Value> args) {
+        Map<Value, Value> values = new IdentityHashMap<>();
+        if (args != null) {
+            for (Block block : source.blocks) {
+                for (Instr instr : block.phis) seedParams(instr, args, values);
+                for (Instr instr : block.instrs) seedParams(instr, args, values);
+            }
+        }
+        return new ArrayList<>(Cfg.copyBlocks(source.blocks, target, values).values());
+    }
+
+    private static void seedParams(Instr instr, List<Value> args, Map<Value, Value> values) {
+        for (Value operand : instr.operands) {
+            if (operand instanceof Param p) values.put(p, args.get(p.variable.index));
+        }
+    }
+
+    private static void replaceUses(IrFunction f, Value value, Value with) {
+        for (Block block : f.blocks) {
+            for (Instr phi : block.phis) phi.operands.replaceAll(v -> v == value ? with : v);
+            for (Instr instr : block.instrs) instr.operands.replaceAll(v -> v == value ? with : v);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.ir;
+
+import org.example.ast.BinaryOp;
+import org.example.ast.GorbType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class Instr extends Value {
+    public final Opcode op;
+    public final List<Value> operands;
+    public Block block;
+
+    public BinaryOp binary;   // BINARY
+    public String callee;     // CALL
+    public IrVariable variable; // LOAD, STORE, COPY
+    public Block[] targets;   // JUMP, BRANCH
+
+    public String name;       // Source variable the value was assigned to, if any; names its register
+    public boolean inline;    // After Lowering: computed at its only use rather than kept in storage
+
+    Instr(int id, Opcode op, GorbType type, List<Value> operands) {
+        super(id, type);
+        this.op = op;
+        this.operands = new ArrayList<>(operands);
+    }
+
+    // Has an effect a program can observe besides its value, or may stop the program
+    // (the postfix machine raises on division by zero and on float overflow of ^)
+    public boolean hasSideEffects() {
+        return switch (op) {
+            case CALL, INPUT, PRINT, STORE, COPY, JUMP, BRANCH, RETURN -> true;
+            case BINARY -> mayFail();
+            default -> false;
+        };
+    }
+
+    public boolean mayFail() {
+        if (op != Opcode.BINARY) return false;
+        return switch (binary) {
+            case DIV -> !(operands.get(1) instanceof Constant c) || ((Number) c.value).doubleValue() == 0;
+            case POW -> !(operands.get(0) instanceof Constant) || !(operands.get(1) instanceof Constant);
+            default -> false;
+        };
+    }
+
+    public boolean readsMemory() {
+        return op == Opcode.LOAD || op == Opcode.CALL;
+    }
+
+    public boolean writesMemory() {
+        return op == Opcode.STORE || op == Opcode.CALL;
+    }
+
+    @Override
+    public String toString() {
+        return "%" + id;
+    }
+}
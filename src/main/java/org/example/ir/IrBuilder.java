@@ -0,0 +1,460 @@
+package org.example.ir;
+
+import org.example.ast.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds the IR of the analyzed AST, read from its flat encoding (FlatAst, with the types and
+ * bindings of the semantic pass): a control-flow graph for the top-level code and one for each
+ * function. Locals and parameters become SSA values, with phis placed while the blocks are built
+ * (Braun et al., "Simple and Efficient Construction of SSA Form"). Variables another function can
+ * reach stay in memory and are read and written by LOAD and STORE: the globals some function uses,
+ * and all variables of a function (or top-level code) that declares nested functions.
+ */
+public class IrBuilder {
+    private FlatAst ast;
+    private IrProgram program;
+    private final Map<Integer, IrVariable> sharedGlobals = new HashMap<>(); // By slot
+    private Frame frame;
+
+    // Construction state of the function being built
+    private static class Frame {
+        final IrFunction function;
+        final Frame enclosing;
+        final boolean inMemory; // Declares nested functions: its variables stay in memory
+
+        final Map<Binding, IrVariable> memory = new IdentityHashMap<>(); // Own variables when inMemory
+        final Map<String, IrVariable> outer = new HashMap<>();           // Variables of enclosing functions
+        final Map<Binding, GorbType> types = new IdentityHashMap<>();    // SSA variables
+        final Map<Binding, String> names = new IdentityHashMap<>();
+
+        // Current value of each SSA variable at the end of each block built so far
+        final Map<Binding, Map<Block, Value>> defs = new IdentityHashMap<>();
+        // Blocks whose predecessors are all known, and phis waiting for the others
+        final Set<Block> sealed = new HashSet<>();
+        final Map<Block, Map<Binding, Instr>> incomplete = new HashMap<>();
+
+        Block current;
+
+        Frame(IrFunction function, Frame enclosing, boolean inMemory) {
+            this.function = function;
+            this.enclosing = enclosing;
+            this.inMemory = inMemory;
+        }
+    }
+
+    public IrProgram build(FlatAst ast) {
+        this.ast = ast;
+        Set<Integer> used = new HashSet<>();
+        boolean nested = false;
+        for (int i = 0; i < ast.statementCount(); i++) {
+            int stmt = ast.statement(i);
+            usedGlobals(stmt, false, used);
+            if (ast.kind(stmt) != FlatAst.FUN_DECL && declaresFunction(stmt)) nested = true;
+        }
+
+        IrFunction main = new IrFunction("main", GorbType.VOID, null, true);
+        program = new IrProgram(main);
+        for (int i = 0; i < ast.statementCount(); i++) {
+            int stmt = ast.statement(i);
+            if (ast.kind(stmt) == FlatAst.VAR_DECL && used.contains(ast.binding(stmt).slot)) {
+                IrVariable global = new IrVariable(ast.name(stmt), variableType(stmt), Binding.Kind.GLOBAL, program.globals.size());
+                program.globals.add(global);
+                sharedGlobals.put(ast.binding(stmt).slot, global);
+            }
+        }
+
+        // Top-level code first, then the functions, as in the semantic pass
+        frame = new Frame(main, null, nested);
+        startEntry();
+        for (int i = 0; i < ast.statementCount(); i++) {
+            int stmt = ast.statement(i);
+            if (ast.kind(stmt) != FlatAst.FUN_DECL) stmt(stmt);
+        }
+        finish();
+
+        for (int i = 0; i < ast.statementCount(); i++) {
+            int stmt = ast.statement(i);
+            if (ast.kind(stmt) == FlatAst.FUN_DECL) function(stmt, true);
+        }
+        return program;
+    }
+
+    private void function(int f, boolean topLevel) {
+        IrFunction function = new IrFunction(ast.name(f), ast.type(f), frame.function, topLevel);
+        program.functions.add(function);
+
+        Frame enclosing = frame;
+        int body = ast.body(f);
+        frame = new Frame(function, enclosing, declaresFunction(body));
+        Block entry = startEntry();
+        for (int i = 0; i < ast.count(f); i++) {
+            int param = ast.item(f, i);
+            String name = ast.name(param);
+            GorbType type = ast.type(param);
+            IrVariable variable = function.addParam(name, type);
+            if (frame.inMemory) {
+                frame.memory.put(ast.binding(param), variable);
+            } else {
+                declare(ast.binding(param), name, type);
+                write(ast.binding(param), entry, function.param(variable));
+            }
+        }
+        for (int i = 0; i < ast.count(body); i++) stmt(ast.item(body, i));
+        finish();
+        frame = enclosing;
+    }
+
+    private Block startEntry() {
+        Block entry = frame.function.newBlock();
+        frame.sealed.add(entry);
+        frame.current = entry;
+        return entry;
+    }
+
+    // === Statements ===
+
+    private void stmt(int stmt) {
+        switch (ast.kind(stmt)) {
+            case FlatAst.VAR_DECL -> {
+                Binding binding = ast.binding(stmt);
+                String name = ast.name(stmt);
+                GorbType type = variableType(stmt);
+                int init = ast.expr(stmt);
+                Value value = init >= 0 ? expr(init) : null;
+                if (binding.kind == Binding.Kind.LOCAL && frame.inMemory) {
+                    frame.memory.put(binding, frame.function.addLocal(name, type));
+                } else if (binding.kind != Binding.Kind.GLOBAL || !sharedGlobals.containsKey(binding.slot)) {
+                    declare(binding, name, type);
+                    // A declaration without a value starts over: nothing flows in from a previous loop iteration
+                    if (value == null) write(binding, frame.current, undefined(type));
+                }
+                if (value != null) assign(binding, name, value);
+            }
+            // The semantic pass widened the value to the variable's type
+            case FlatAst.ASSIGN -> assign(ast.binding(stmt), ast.name(stmt), expr(ast.expr(stmt)));
+            case FlatAst.INPUT -> {
+                Binding binding = ast.binding(stmt);
+                String name = ast.name(stmt);
+                Instr input = add(Opcode.INPUT, inputType(binding, name));
+                assign(binding, name, input);
+            }
+            case FlatAst.PRINT -> add(Opcode.PRINT, GorbType.VOID, expr(ast.expr(stmt)));
+            case FlatAst.IF -> {
+                Value condition = expr(ast.expr(stmt));
+                int elseBranch = ast.elseBranch(stmt);
+                Block thenBlock = frame.function.newBlock();
+                Block elseBlock = elseBranch >= 0 ? frame.function.newBlock() : null;
+                Block join = frame.function.newBlock();
+                branch(condition, thenBlock, elseBlock != null ? elseBlock : join);
+
+                seal(thenBlock);
+                frame.current = thenBlock;
+                stmt(ast.thenBranch(stmt));
+                jump(join);
+                if (elseBlock != null) {
+                    seal(elseBlock);
+                    frame.current = elseBlock;
+                    stmt(elseBranch);
+                    jump(join);
+                }
+                seal(join);
+                frame.current = join;
+            }
+            case FlatAst.WHILE -> {
+                // The header is sealed once the body has added the back edge
+                Block header = frame.function.newBlock();
+                jump(header);
+                frame.current = header;
+                Value condition = expr(ast.expr(stmt));
+                Block body = frame.function.newBlock();
+                Block exit = frame.function.newBlock();
+                branch(condition, body, exit);
+
+                seal(body);
+                frame.current = body;
+                stmt(ast.body(stmt));
+                jump(header);
+                seal(header);
+                seal(exit);
+                frame.current = exit;
+            }
+            case FlatAst.BLOCK -> {
+                for (int i = 0; i < ast.count(stmt); i++) stmt(ast.item(stmt, i));
+            }
+            case FlatAst.FUN_DECL -> function(stmt, false);
+            case FlatAst.RETURN -> ret(expr(ast.expr(stmt)));
+            case FlatAst.EXPR_STMT -> expr(ast.expr(stmt));
+            default -> throw new IllegalArgumentException("Not a statement: kind " + ast.kind(stmt));
+        }
+    }
+
+    private void assign(Binding binding, String name, Value value) {
+        IrVariable variable = memoryVariable(binding, name, value.type);
+        if (variable != null) {
+            add(Opcode.STORE, GorbType.VOID, value).variable = variable;
+            return;
+        }
+        if (value instanceof Instr instr && instr.name == null) instr.name = name;
+        write(binding, frame.current, value);
+    }
+
+    private GorbType inputType(Binding binding, String name) {
+        IrVariable variable = memoryVariable(binding, name, null);
+        if (variable != null) return variable.type;
+        GorbType type = frame.types.get(binding);
+        return type != null ? type : GorbType.INT;
+    }
+
+    // Returns at the end of the code; no block is left open
+    private void finish() {
+        ret(null);
+        frame.function.blocks.remove(frame.current);
+    }
+
+    // === Terminators ===
+
+    private void jump(Block target) {
+        Instr jump = add(Opcode.JUMP, GorbType.VOID);
+        jump.targets = new Block[]{target};
+        target.preds.add(frame.current);
+    }
+
+    private void branch(Value condition, Block thenBlock, Block elseBlock) {
+        Instr branch = add(Opcode.BRANCH, GorbType.VOID, condition);
+        branch.targets = new Block[]{thenBlock, elseBlock};
+        thenBlock.preds.add(frame.current);
+        elseBlock.preds.add(frame.current);
+    }
+
+    // Code after a return goes to a block nothing jumps to; IrOptimizer and Lowering drop it
+    private void ret(Value value) {
+        if (value != null) add(Opcode.RETURN, GorbType.VOID, value);
+        else add(Opcode.RETURN, GorbType.VOID);
+        frame.current = frame.function.newBlock();
+        frame.sealed.add(frame.current);
+    }
+
+    // === Expressions ===
+
+    private Value expr(int expr) {
+        Value value = switch (ast.kind(expr)) {
+            case FlatAst.INT -> frame.function.constant(GorbType.INT, ast.intValue(expr));
+            case FlatAst.FLOAT -> frame.function.constant(GorbType.FLOAT, ast.floatValue(expr));
+            case FlatAst.BOOL -> frame.function.constant(GorbType.BOOL, ast.boolValue(expr));
+            case FlatAst.STRING -> frame.function.constant(GorbType.STRING, ast.stringValue(expr));
+            case FlatAst.VARIABLE -> {
+                Binding binding = ast.binding(expr);
+                IrVariable variable = memoryVariable(binding, ast.name(expr), ast.exprType(expr));
+                if (variable == null) yield readVariable(binding, frame.current);
+                Instr load = add(Opcode.LOAD, variable.type);
+                load.variable = variable;
+                yield load;
+            }
+            case FlatAst.BINARY -> {
+                Value left = expr(ast.left(expr));
+                Value right = expr(ast.right(expr));
+                Instr binary = add(Opcode.BINARY, ast.exprType(expr), left, right);
+                binary.binary = ast.op(expr);
+                yield binary;
+            }
+            case FlatAst.CALL -> {
+                int count = ast.count(expr);
+                List<Value> args = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) args.add(expr(ast.item(expr, i)));
+                Instr call = add(Opcode.CALL, ast.exprType(expr), args);
+                call.callee = ast.name(expr);
+                yield call;
+            }
+            default -> throw new IllegalArgumentException("Not an expression: kind " + ast.kind(expr));
+        };
+        return ast.widenToFloat(expr) ? widen(value) : value;
+    }
+
+    private Value widen(Value value) {
+        // Converted here when the float prints without an exponent, which the backends do not read
+        if (value instanceof Constant c && c.value instanceof Integer i && String.valueOf((double) i).indexOf('E') < 0) {
+            return frame.function.constant(GorbType.FLOAT, (double) i);
+        }
+        return add(Opcode.WIDEN, GorbType.FLOAT, value);
+    }
+
+    private Instr add(Opcode op, GorbType type, Value... operands) {
+        return add(op, type, List.of(operands));
+    }
+
+    private Instr add(Opcode op, GorbType type, List<Value> operands) {
+        Instr instr = frame.function.newInstr(op, type, operands);
+        instr.block = frame.current;
+        frame.current.instrs.add(instr);
+        return instr;
+    }
+
+    // Read from before any assignment; the backends start variables at these values too
+    private Value undefined(GorbType type) {
+        return switch (type) {
+            case FLOAT -> frame.function.constant(type, 0.0);
+            case BOOL -> frame.function.constant(type, false);
+            case STRING -> frame.function.constant(type, "");
+            default -> frame.function.constant(type, 0);
+        };
+    }
+
+    // === Variables ===
+
+    // The variable a binding is kept in, or null for an SSA variable. type is that of the value
+    // read or assigned, which the semantic pass made the variable's own
+    private IrVariable memoryVariable(Binding binding, String name, GorbType type) {
+        return switch (binding.kind) {
+            case GLOBAL -> sharedGlobals.get(binding.slot);
+            case PARAM, LOCAL -> frame.inMemory ? frame.memory.get(binding) : null;
+            case OUTER -> frame.outer.computeIfAbsent(name,
+                    key -> new IrVariable(name, type != null ? type : enclosingType(name), Binding.Kind.OUTER, -1));
+        };
+    }
+
+    // Type of a variable of an enclosing function; those keep all their variables in memory
+    private GorbType enclosingType(String name) {
+        for (Frame f = frame.enclosing; f != null; f = f.enclosing) {
+            GorbType type = null;
+            for (IrVariable variable : f.memory.values()) {
+                if (variable.name.equals(name)) type = variable.type;
+            }
+            if (type != null) return type;
+        }
+        return GorbType.INT;
+    }
+
+    private void declare(Binding binding, String name, GorbType type) {
+        frame.types.put(binding, type);
+        frame.names.put(binding, name);
+    }
+
+    private void write(Binding variable, Block block, Value value) {
+        frame.defs.computeIfAbsent(variable, key -> new HashMap<>()).put(block, value);
+    }
+
+    private Value readVariable(Binding variable, Block block) {
+        Map<Block, Value> defs = frame.defs.get(variable);
+        Value value = defs != null ? defs.get(block) : null;
+        return value != null ? value : readFromPreds(variable, block);
+    }
+
+    private Value readFromPreds(Binding variable, Block block) {
+        Value value;
+        if (!frame.sealed.contains(block)) {
+            // More predecessors are coming: the operands are added when the block is sealed
+            Instr phi = phi(variable, block);
+            frame.incomplete.computeIfAbsent(block, key -> new IdentityHashMap<>()).put(variable, phi);
+            value = phi;
+        } else if (block.preds.isEmpty()) {
+            value = undefined(frame.types.get(variable)); // Unreachable block
+        } else if (block.preds.size() == 1) {
+            value = readVariable(variable, block.preds.get(0));
+        } else {
+            // Written before the operands are read, so a loop through the block ends at the phi
+            Instr phi = phi(variable, block);
+            write(variable, block, phi);
+            addOperands(variable, phi);
+            value = phi;
+        }
+        write(variable, block, value);
+        return value;
+    }
+
+    private Instr phi(Binding variable, Block block) {
+        Instr phi = frame.function.newInstr(Opcode.PHI, frame.types.get(variable));
+        phi.block = block;
+        phi.name = frame.names.get(variable);
+        block.phis.add(phi);
+        return phi;
+    }
+
+    private void addOperands(Binding variable, Instr phi) {
+        for (Block pred : phi.block.preds) {
+            phi.operands.add(readVariable(variable, pred));
+        }
+    }
+
+    private void seal(Block block) {
+        Map<Binding, Instr> waiting = frame.incomplete.remove(block);
+        if (waiting != null) {
+            for (Map.Entry<Binding, Instr> entry : waiting.entrySet()) addOperands(entry.getKey(), entry.getValue());
+        }
+        frame.sealed.add(block);
+    }
+
+    // === Helpers ===
+
+    // A constant has the type of its initializer, as in the semantic pass
+    private GorbType variableType(int v) {
+        int init = ast.expr(v);
+        GorbType type = ast.isConstant(v) || ast.type(v) == null ? (init >= 0 ? ast.exprType(init) : null) : ast.type(v);
+        return type != null ? type : GorbType.INT;
+    }
+
+    // Slots of the globals read or written inside some function
+    private void usedGlobals(int node, boolean inFunction, Set<Integer> used) {
+        switch (ast.kind(node)) {
+            case FlatAst.VAR_DECL -> {
+                int init = ast.expr(node);
+                if (init >= 0) usedGlobals(init, inFunction, used);
+            }
+            case FlatAst.ASSIGN -> {
+                usedGlobal(node, inFunction, used);
+                usedGlobals(ast.expr(node), inFunction, used);
+            }
+            case FlatAst.INPUT, FlatAst.VARIABLE -> usedGlobal(node, inFunction, used);
+            case FlatAst.PRINT, FlatAst.RETURN, FlatAst.EXPR_STMT -> usedGlobals(ast.expr(node), inFunction, used);
+            case FlatAst.IF -> {
+                usedGlobals(ast.expr(node), inFunction, used);
+                usedGlobals(ast.thenBranch(node), inFunction, used);
+                if (ast.elseBranch(node) >= 0) usedGlobals(ast.elseBranch(node), inFunction, used);
+            }
+            case FlatAst.WHILE -> {
+                usedGlobals(ast.expr(node), inFunction, used);
+                usedGlobals(ast.body(node), inFunction, used);
+            }
+            case FlatAst.BLOCK, FlatAst.CALL -> {
+                for (int i = 0; i < ast.count(node); i++) usedGlobals(ast.item(node, i), inFunction, used);
+            }
+            case FlatAst.BINARY -> {
+                usedGlobals(ast.left(node), inFunction, used);
+                usedGlobals(ast.right(node), inFunction, used);
+            }
+            case FlatAst.FUN_DECL -> usedGlobals(ast.body(node), true, used);
+            default -> { }
+        }
+    }
+
+    private void usedGlobal(int node, boolean inFunction, Set<Integer> used) {
+        Binding binding = ast.binding(node);
+        if (inFunction && binding.kind == Binding.Kind.GLOBAL) used.add(binding.slot);
+    }
+
+    private boolean declaresFunction(int stmt) {
+        switch (ast.kind(stmt)) {
+            case FlatAst.FUN_DECL:
+                return true;
+            case FlatAst.BLOCK:
+                for (int i = 0; i < ast.count(stmt); i++) {
+                    if (declaresFunction(ast.item(stmt, i))) return true;
+                }
+                return false;
+            case FlatAst.IF:
+                return declaresFunction(ast.thenBranch(stmt))
+                        || (ast.elseBranch(stmt) >= 0 && declaresFunction(ast.elseBranch(stmt)));
+            case FlatAst.WHILE:
+                return declaresFunction(ast.body(stmt));
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.example.ir;
+
+import org.example.ast.Binding;
+import org.example.ast.GorbType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Control-flow graph of a function, or of the top-level code (Main). The first block is the entry.
+ */
+public final class IrFunction {
+    public final String name;
+    public final GorbType returnType;
+    public final IrFunction parent; // Function the declaration is nested in; null for the top-level code
+    public final boolean topLevel;  // Top-level code, or a function declared at the top level
+
+    public final List<IrVariable> params = new ArrayList<>();
+    public final List<IrVariable> locals = new ArrayList<>(); // Locals kept in memory, then registers
+    public final List<Block> blocks = new ArrayList<>();
+    public boolean lowered; // Set by Lowering; blocks are then in emission order
+
+    private int valueCount = 0;
+    private int blockCount = 0;
+    private final Map<List<Object>, Constant> constants = new HashMap<>();
+
+    IrFunction(String name, GorbType returnType, IrFunction parent, boolean topLevel) {
+        this.name = name;
+        this.returnType = returnType;
+        this.parent = parent;
+        this.topLevel = topLevel;
+    }
+
+    public Block entry() {
+        return blocks.get(0);
+    }
+
+    Block newBlock() {
+        Block block = new Block(blockCount++);
+        blocks.add(block);
+        return block;
+    }
+
+    Instr newInstr(Opcode op, GorbType type, Value... operands) {
+        return new Instr(valueCount++, op, type, Arrays.asList(operands));
+    }
+
+    Instr newInstr(Opcode op, GorbType type, List<Value> operands) {
+        return new Instr(valueCount++, op, type, operands);
+    }
+
+    // Constants are shared within a function, so equal operands are the same value
+    Constant constant(GorbType type, Object value) {
+        return constants.computeIfAbsent(List.of(type, value), key -> new Constant(valueCount++, type, value));
+    }
+
+    Param param(IrVariable variable) {
+        return new Param(valueCount++, variable);
+    }
+
+    IrVariable addParam(String name, GorbType type) {
+        IrVariable param = new IrVariable(name, type, Binding.Kind.PARAM, params.size());
+        params.add(param);
+        return param;
+    }
+
+    IrVariable addLocal(String name, GorbType type) {
+        IrVariable local = new IrVariable(name, type, Binding.Kind.LOCAL, locals.size());
+        locals.add(local);
+        return local;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(parent == null ? "main" : "fun " + name).append('(');
+        for (int i = 0; i < params.size(); i++) {
+            sb.append(i > 0 ? ", " : "").append(params.get(i).name).append(": ").append(params.get(i).type);
+        }
+        sb.append(") -> ").append(returnType).append('\n');
+        for (Block block : blocks) {
+            sb.append(block).append(':');
+            if (!block.preds.isEmpty()) sb.append(" preds ").append(block.preds);
+            sb.append('\n');
+            for (Instr phi : block.phis) dump(sb, phi);
+            for (Instr instr : block.instrs) dump(sb, instr);
+        }
+        return sb.toString();
+    }
+
+    private static void dump(StringBuilder sb, Instr instr) {
+        sb.append("  ");
+        if (instr.inline) sb.append('(');
+        if (instr.type != GorbType.VOID && !instr.op.isTerminator() && instr.op != Opcode.STORE && instr.op != Opcode.PRINT) {
+            sb.append(instr).append(": ").append(instr.type).append(" = ");
+        }
+        sb.append(instr.op.name().toLowerCase());
+        if (instr.binary != null) sb.append(' ').append(instr.binary);
+        if (instr.callee != null) sb.append(' ').append(instr.callee);
+        if (instr.variable != null) sb.append(' ').append(instr.variable);
+        for (int i = 0; i < instr.operands.size(); i++) {
+            sb.append(i == 0 ? " " : ", ").append(instr.operands.get(i));
+        }
+        if (instr.targets != null) sb.append(" -> ").append(Arrays.toString(instr.targets));
+        if (instr.storage != null && instr.op != Opcode.COPY) sb.append("  in ").append(instr.storage);
+        if (instr.inline) sb.append(')');
+        sb.append('\n');
+    }
+}
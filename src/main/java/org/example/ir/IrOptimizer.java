@@ -0,0 +1,488 @@
+package org.example.ir;
+
+import org.example.ast.BinaryOp;
+import org.example.ast.Binding;
+import org.example.ast.GorbType;
+import org.example.optimizer.ConstantFolder;
+
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * SSA passes over every function of a program:
+ * - tail calls: a function returning the value of a call to itself loops back to its start instead
+ * - CFG cleanup: constant branches, unreachable blocks, a block merged into its only predecessor,
+ *   and jumps to a branch on a phi that is constant along them (e.g. an inlined bool function)
+ * - copy propagation: an assignment is already just another name for its value; phis whose
+ *   operands are all the same value are replaced by it
+ * - memory forwarding: a LOAD after a STORE or LOAD of the same variable reuses that value,
+ *   and a STORE overwritten before anything can read it is dropped
+ * - strength reduction: ^ with a small constant exponent becomes multiplications
+ * - constant folding, with the rules of ConstantFolder
+ * - global value numbering: a computation already done in a dominating block is reused (CSE)
+ * - dead code elimination: values nothing uses and that have no side effects
+ * - loops: invariant code motion and unrolling of short counted loops, see LoopOptimizer
+ * - dead functions: those the top-level code never calls are dropped from the program
+ */
+public class IrOptimizer {
+    // Values replaced by an equal one; operands are redirected by rewriteOperands
+    private final Map<Value, Value> replaced = new IdentityHashMap<>();
+    private final LoopOptimizer loops = new LoopOptimizer();
+
+    public void optimize(IrProgram program) {
+        optimize(program.main);
+        for (IrFunction f : program.functions) optimize(f);
+        // Calls folded, evaluated or inlined away may leave functions nothing calls
+        new CallGraph(program).removeUnreachable();
+    }
+
+    public void optimize(IrFunction f) {
+        eliminateTailCalls(f);
+        // A second round catches what the first one exposed (e.g. a phi of two values numbered the same)
+        for (int round = 0; round < 2; round++) {
+            simplifyCfg(f);
+            removeTrivialPhis(f);
+            forwardMemory(f);
+            reduceStrength(f);
+            numberValues(f);
+            removeTrivialPhis(f);
+            removeDeadCode(f);
+            // Loops are clean after the first round; the second folds what unrolling copied
+            if (round == 0) loops.optimize(f);
+        }
+        simplifyCfg(f);
+    }
+
+    // === Tail calls ===
+
+    // A call of the function to itself whose value is returned right away becomes a jump back to
+    // the start, where the arguments are the new parameter values: the recursion runs in constant stack
+    private void eliminateTailCalls(IrFunction f) {
+        if (f.parent == null) return;
+        List<Block> tails = new ArrayList<>();
+        Map<Integer, Param> params = new TreeMap<>(); // Parameter values the code reads, by index
+        for (Block block : f.blocks) {
+            int size = block.instrs.size();
+            if (size >= 2 && block.instrs.get(size - 2) instanceof Instr call && call.op == Opcode.CALL
+                    && call.callee.equals(f.name) && block.terminator().op == Opcode.RETURN
+                    && block.terminator().operands.equals(List.of(call))) {
+                tails.add(block);
+            }
+            for (Instr instr : block.instrs) {
+                // Variables of a function that declares nested ones are kept in memory, for those to reach
+                if (instr.variable != null && (instr.variable.kind == Binding.Kind.PARAM || instr.variable.kind == Binding.Kind.LOCAL)) return;
+                for (Value operand : instr.operands) {
+                    if (operand instanceof Param p) params.put(p.variable.index, p);
+                }
+            }
+            for (Instr phi : block.phis) {
+                for (Value operand : phi.operands) {
+                    if (operand instanceof Param p) params.put(p.variable.index, p);
+                }
+            }
+        }
+        if (tails.isEmpty()) return;
+
+        // A new entry jumps to the old one, which becomes the loop header with a phi per parameter
+        Block header = f.entry();
+        Block entry = f.newBlock();
+        f.blocks.remove(entry);
+        f.blocks.add(0, entry);
+        Instr start = f.newInstr(Opcode.JUMP, GorbType.VOID);
+        start.block = entry;
+        start.targets = new Block[]{header};
+        entry.instrs.add(start);
+        header.preds.add(entry);
+
+        List<Instr> phis = new ArrayList<>();
+        for (Param param : params.values()) {
+            Instr phi = f.newInstr(Opcode.PHI, param.type, param);
+            phi.block = header;
+            phi.name = param.variable.name;
+            phis.add(phi);
+            replace(param, phi);
+        }
+        rewriteOperands(f);
+
+        for (Block block : tails) {
+            Instr call = block.instrs.get(block.instrs.size() - 2);
+            Instr jump = f.newInstr(Opcode.JUMP, GorbType.VOID);
+            jump.block = block;
+            jump.targets = new Block[]{header};
+            block.instrs.subList(block.instrs.size() - 2, block.instrs.size()).clear();
+            block.instrs.add(jump);
+            header.preds.add(block);
+            for (Instr phi : phis) {
+                phi.operands.add(call.operands.get(((Param) phi.operands.get(0)).variable.index));
+            }
+        }
+        header.phis.addAll(0, phis);
+    }
+
+    // === CFG cleanup ===
+
+    private void simplifyCfg(IrFunction f) {
+        for (Block block : f.blocks) {
+            Instr last = block.terminator();
+            if (last.op == Opcode.BRANCH && last.operands.get(0) instanceof Constant c) {
+                Block taken = (Boolean) c.value ? last.targets[0] : last.targets[1];
+                Block dropped = (Boolean) c.value ? last.targets[1] : last.targets[0];
+                if (dropped != taken) dropped.removePred(dropped.preds.indexOf(block));
+                Instr jump = f.newInstr(Opcode.JUMP, GorbType.VOID);
+                jump.block = block;
+                jump.targets = new Block[]{taken};
+                block.instrs.set(block.instrs.size() - 1, jump);
+            }
+        }
+        threadJumps(f);
+        Cfg.removeUnreachable(f);
+
+        // A block that is the only successor of its only predecessor continues it
+        for (Block block : Cfg.reversePostorder(f)) {
+            if (block == f.entry() || block.preds.size() != 1) continue;
+            Block pred = block.preds.get(0);
+            if (pred.terminator().op != Opcode.JUMP || pred == block) continue;
+
+            for (Instr phi : block.phis) replace(phi, phi.operands.get(0));
+            pred.instrs.remove(pred.instrs.size() - 1);
+            for (Instr instr : block.instrs) {
+                instr.block = pred;
+                pred.instrs.add(instr);
+            }
+            for (Block succ : block.succs()) {
+                succ.preds.replaceAll(p -> p == block ? pred : p);
+            }
+            f.blocks.remove(block);
+        }
+        rewriteOperands(f);
+    }
+
+    // A block that does nothing but branch on its phi: a predecessor that gives the phi a constant
+    // jumps straight to the target the branch would take
+    private void threadJumps(IrFunction f) {
+        for (Block block : f.blocks) {
+            Instr last = block.terminator();
+            if (block.phis.size() != 1 || block.instrs.size() != 1 || last.op != Opcode.BRANCH) continue;
+            Instr phi = block.phis.get(0);
+            if (last.operands.get(0) != phi || usedOutsideBranch(f, phi)) continue;
+            if (last.targets[0] == last.targets[1] || last.targets[0] == block || last.targets[1] == block) continue;
+
+            for (int i = block.preds.size() - 1; i >= 0; i--) {
+                Block pred = block.preds.get(i);
+                Instr jump = pred.terminator();
+                if (jump.op != Opcode.JUMP || !(phi.operands.get(i) instanceof Constant c)) continue;
+                Block target = (Boolean) c.value ? last.targets[0] : last.targets[1];
+                // The branch block defines nothing the target's phis read but its own phi
+                int from = target.preds.indexOf(block);
+                for (Instr targetPhi : target.phis) targetPhi.operands.add(targetPhi.operands.get(from));
+                target.preds.add(pred);
+                jump.targets = new Block[]{target};
+                block.removePred(i);
+            }
+        }
+    }
+
+    private static boolean usedOutsideBranch(IrFunction f, Instr phi) {
+        for (Block block : f.blocks) {
+            for (Instr other : block.phis) {
+                if (other.operands.contains(phi)) return true;
+            }
+            for (Instr instr : block.instrs) {
+                if (instr != phi.block.terminator() && instr.operands.contains(phi)) return true;
+            }
+        }
+        return false;
+    }
+
+    // === Copy propagation ===
+
+    private void removeTrivialPhis(IrFunction f) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Block block : f.blocks) {
+                for (Iterator<Instr> it = block.phis.iterator(); it.hasNext(); ) {
+                    Instr phi = it.next();
+                    Value same = null;
+                    boolean trivial = true;
+                    for (Value operand : phi.operands) {
+                        operand = resolve(operand);
+                        if (operand == phi || operand == same) continue;
+                        if (same != null) {
+                            trivial = false;
+                            break;
+                        }
+                        same = operand;
+                    }
+                    if (!trivial) continue;
+                    // Only itself as operand: a loop nothing enters, so the value is never read
+                    replace(phi, same != null ? same : f.constant(phi.type, defaultValue(phi.type)));
+                    it.remove();
+                    changed = true;
+                }
+            }
+            rewriteOperands(f);
+        }
+    }
+
+    static Object defaultValue(GorbType type) {
+        return switch (type) {
+            case FLOAT -> 0.0;
+            case BOOL -> false;
+            case STRING -> "";
+            default -> 0;
+        };
+    }
+
+    // === Memory forwarding ===
+
+    private void forwardMemory(IrFunction f) {
+        // Known contents at the end of each block. A block with one predecessor starts from that one's
+        // (which the reverse postorder visits first); a join point starts empty
+        Map<Block, Map<IrVariable, Value>> known = new HashMap<>();
+        for (Block block : Cfg.reversePostorder(f)) {
+            Map<IrVariable, Value> contents = block.preds.size() == 1 && known.containsKey(block.preds.get(0))
+                    ? new HashMap<>(known.get(block.preds.get(0))) : new HashMap<>();
+            Map<IrVariable, Instr> unread = new HashMap<>(); // Stores nothing has read yet, in this block
+
+            for (Iterator<Instr> it = block.instrs.iterator(); it.hasNext(); ) {
+                Instr instr = it.next();
+                resolveOperands(instr);
+                switch (instr.op) {
+                    case LOAD -> {
+                        Value value = contents.get(instr.variable);
+                        if (value != null) {
+                            replace(instr, value);
+                            it.remove();
+                        } else {
+                            contents.put(instr.variable, instr);
+                            unread.remove(instr.variable);
+                        }
+                    }
+                    case STORE -> {
+                        Value value = instr.operands.get(0);
+                        if (contents.get(instr.variable) == value) {
+                            it.remove(); // Already there
+                            continue;
+                        }
+                        Instr overwritten = unread.put(instr.variable, instr);
+                        if (overwritten != null) block.instrs.set(block.instrs.indexOf(overwritten), null);
+                        contents.put(instr.variable, value);
+                    }
+                    // A function may read and write any variable kept in memory
+                    case CALL -> {
+                        contents.clear();
+                        unread.clear();
+                    }
+                    default -> { }
+                }
+            }
+            block.instrs.removeIf(instr -> instr == null);
+            known.put(block, contents);
+        }
+        rewriteOperands(f);
+    }
+
+    // === Strength reduction ===
+
+    // Largest exponent of an int ^ turned into multiplications. Products of ints are exact, and so is
+    // the float ^ both backends compute for every result an int can hold.
+    // A float x ^ 2 is x * x, rounded once like pow; longer float chains would round more than once
+    private static final int MAX_INT_EXPONENT = 16;
+    private static final int MAX_FLOAT_EXPONENT = 2;
+
+    private void reduceStrength(IrFunction f) {
+        for (Block block : f.blocks) {
+            for (int i = 0; i < block.instrs.size(); i++) {
+                Instr instr = block.instrs.get(i);
+                int exponent = smallExponent(instr);
+                if (exponent < 0) continue;
+
+                List<Instr> products = new ArrayList<>();
+                Value result = power(f, instr.operands.get(0), exponent, products);
+                for (Instr product : products) product.block = block;
+                block.instrs.remove(i);
+                block.instrs.addAll(i, products);
+                i += products.size() - 1;
+                replace(instr, result);
+            }
+        }
+        rewriteOperands(f);
+    }
+
+    // Exponent of a ^ that is worth multiplying out, or -1
+    private static int smallExponent(Instr instr) {
+        if (instr.op != Opcode.BINARY || instr.binary != BinaryOp.POW) return -1;
+        if (!(instr.operands.get(1) instanceof Constant c)) return -1;
+        // Both operands have the type of the result (the semantic pass widens int operands of a float ^)
+        double exponent = ((Number) c.value).doubleValue();
+        int max = instr.type == GorbType.INT ? MAX_INT_EXPONENT : MAX_FLOAT_EXPONENT;
+        return exponent >= 0 && exponent <= max && exponent == Math.rint(exponent) ? (int) exponent : -1;
+    }
+
+    // base ^ exponent by square-and-multiply; the multiplications are added to products in order
+    private static Value power(IrFunction f, Value base, int exponent, List<Instr> products) {
+        if (exponent == 0) return f.constant(base.type, base.type == GorbType.INT ? (Object) 1 : (Object) 1.0);
+        Value result = null;
+        Value square = base;
+        for (int e = exponent; ; e >>= 1) {
+            if ((e & 1) != 0) result = result == null ? square : multiply(f, result, square, products);
+            if (e == 1) return result;
+            square = multiply(f, square, square, products);
+        }
+    }
+
+    private static Instr multiply(IrFunction f, Value left, Value right, List<Instr> products) {
+        Instr product = f.newInstr(Opcode.BINARY, left.type, left, right);
+        product.binary = BinaryOp.MUL;
+        products.add(product);
+        return product;
+    }
+
+    // === Global value numbering ===
+
+    private static final Block LEAVE = new Block(-1); // Marks the end of a subtree in the walk below
+
+    private record Key(Opcode op, BinaryOp binary, GorbType type, List<Value> operands, Block block) { }
+
+    private void numberValues(IrFunction f) {
+        List<Block> rpo = Cfg.reversePostorder(f);
+        Map<Block, Block> idom = Cfg.dominators(rpo);
+        Map<Block, List<Block>> children = new HashMap<>();
+        for (Block block : rpo) {
+            if (block != rpo.get(0)) children.computeIfAbsent(idom.get(block), key -> new ArrayList<>()).add(block);
+        }
+
+        // Walks the dominator tree; the table holds the values computed in the dominators of the block
+        Map<Key, Value> available = new HashMap<>();
+        Deque<Block> pending = new ArrayDeque<>();
+        Deque<List<Key>> added = new ArrayDeque<>(); // Keys of each block on the path, removed when it is left
+        pending.push(rpo.get(0));
+        while (!pending.isEmpty()) {
+            Block block = pending.pop();
+            if (block == LEAVE) {
+                for (Key key : added.pop()) available.remove(key);
+                continue;
+            }
+            List<Key> keys = new ArrayList<>();
+            for (Iterator<Instr> it = block.phis.iterator(); it.hasNext(); ) {
+                Instr phi = it.next();
+                resolveOperands(phi);
+                if (number(phi, new Key(Opcode.PHI, null, phi.type, List.copyOf(phi.operands), block), available, keys)) it.remove();
+            }
+            for (Iterator<Instr> it = block.instrs.iterator(); it.hasNext(); ) {
+                Instr instr = it.next();
+                resolveOperands(instr);
+                Constant constant = fold(f, instr);
+                if (constant != null) {
+                    replace(instr, constant);
+                    it.remove();
+                    continue;
+                }
+                Key key = switch (instr.op) {
+                    case BINARY -> new Key(Opcode.BINARY, instr.binary, instr.type, operandsOf(instr), null);
+                    case WIDEN -> new Key(Opcode.WIDEN, null, instr.type, List.copyOf(instr.operands), null);
+                    default -> null;
+                };
+                if (key != null && number(instr, key, available, keys)) it.remove();
+            }
+            added.push(keys);
+            pending.push(LEAVE);
+            for (Block child : children.getOrDefault(block, List.of())) pending.push(child);
+        }
+        rewriteOperands(f);
+    }
+
+    // Value of an operator or conversion on constants, or null
+    private static Constant fold(IrFunction f, Instr instr) {
+        if (instr.op == Opcode.WIDEN && instr.operands.get(0) instanceof Constant c) {
+            double value = (Integer) c.value;
+            return ConstantFolder.isPrintable(value) ? f.constant(GorbType.FLOAT, value) : null;
+        }
+        if (instr.op != Opcode.BINARY) return null;
+        if (!(instr.operands.get(0) instanceof Constant left) || !(instr.operands.get(1) instanceof Constant right)) return null;
+        Object value = ConstantFolder.evaluate(instr.binary, instr.type, left.value, right.value);
+        return value != null ? f.constant(instr.type, value) : null;
+    }
+
+    // Returns true if an equal value is available, which then replaces instr
+    private boolean number(Instr instr, Key key, Map<Key, Value> available, List<Key> keys) {
+        Value existing = available.get(key);
+        if (existing != null) {
+            replace(instr, existing);
+            return true;
+        }
+        available.put(key, instr);
+        keys.add(key);
+        return false;
+    }
+
+    // Operands of a commutative operator in a fixed order, so a + b and b + a get the same key
+    private static List<Value> operandsOf(Instr instr) {
+        Value left = instr.operands.get(0);
+        Value right = instr.operands.get(1);
+        boolean commutative = switch (instr.binary) {
+            case ADD -> instr.type != GorbType.STRING;
+            case MUL, EQ, NEQ -> true;
+            default -> false;
+        };
+        return commutative && right.id < left.id ? List.of(right, left) : List.of(left, right);
+    }
+
+    // === Dead code elimination ===
+
+    private void removeDeadCode(IrFunction f) {
+        Set<Instr> live = new HashSet<>();
+        Deque<Instr> work = new ArrayDeque<>();
+        for (Block block : f.blocks) {
+            for (Instr instr : block.instrs) {
+                if (instr.hasSideEffects() && live.add(instr)) work.push(instr);
+            }
+        }
+        while (!work.isEmpty()) {
+            for (Value operand : work.pop().operands) {
+                if (operand instanceof Instr instr && live.add(instr)) work.push(instr);
+            }
+        }
+        for (Block block : f.blocks) {
+            block.phis.retainAll(live);
+            block.instrs.retainAll(live);
+        }
+    }
+
+    // === Replacement ===
+
+    private void replace(Value value, Value with) {
+        replaced.put(value, with);
+    }
+
+    private Value resolve(Value value) {
+        Value with = replaced.get(value);
+        if (with == null) return value;
+        Value last = resolve(with);
+        if (last != with) replaced.put(value, last);
+        return last;
+    }
+
+    private void resolveOperands(Instr instr) {
+        instr.operands.replaceAll(this::resolve);
+    }
+
+    private void rewriteOperands(IrFunction f) {
+        if (replaced.isEmpty()) return;
+        for (Block block : f.blocks) {
+            for (Instr phi : block.phis) resolveOperands(phi);
+            for (Instr instr : block.instrs) resolveOperands(instr);
+        }
+        replaced.clear();
+    }
+}
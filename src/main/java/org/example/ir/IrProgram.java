@@ -0,0 +1,23 @@
+package org.example.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class IrProgram {
+    public final IrFunction main;
+    public final List<IrFunction> functions = new ArrayList<>(); // Every function, nested ones included
+    public final List<IrVariable> globals = new ArrayList<>();   // Only globals that some function uses; the rest are SSA values of main
+
+    IrProgram(IrFunction main) {
+        this.main = main;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (!globals.isEmpty()) sb.append("globals ").append(globals).append("\n\n");
+        sb.append(main);
+        for (IrFunction f : functions) sb.append('\n').append(f);
+        return sb.toString();
+    }
+}
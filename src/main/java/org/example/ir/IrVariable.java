@@ -0,0 +1,27 @@
+package org.example.ir;
+
+import org.example.ast.Binding;
+import org.example.ast.GorbType;
+
+/**
+ * A variable of the generated code: a global of the program, a parameter or local of a function,
+ * a variable of an enclosing function (reached by name) or a register Lowering keeps a value in.
+ */
+public final class IrVariable {
+    public final String name;
+    public final GorbType type;
+    public final Binding.Kind kind; // Registers are LOCAL
+    public final int index;         // Position in the program's globals or the function's params / locals; -1 for OUTER
+
+    IrVariable(String name, GorbType type, Binding.Kind kind, int index) {
+        this.name = name;
+        this.type = type;
+        this.kind = kind;
+        this.index = index;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
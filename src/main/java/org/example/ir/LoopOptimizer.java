@@ -0,0 +1,249 @@
+package org.example.ir;
+
+import org.example.ast.GorbType;
+import org.example.optimizer.ConstantFolder;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loop passes, innermost loops first:
+ * - invariant code motion: a computation whose operands do not change in the loop and that cannot
+ *   stop the program moves to the block before the loop, and so does a LOAD of a variable the
+ *   loop does not write
+ * - counted loops: a header phi that starts at a constant and steps by a constant, compared with a
+ *   constant in the loop condition, gives a trip count known here. A small loop run that many
+ *   times is unrolled: its blocks are copied once per trip and the condition goes away, for the
+ *   cleanup in IrOptimizer to fold
+ */
+final class LoopOptimizer {
+    private static final int MAX_TRIPS = 8;
+    private static final int MAX_UNROLLED = 64; // Instructions of all the copies together
+
+    private static final class Loop {
+        final Block header;
+        final Set<Block> blocks = new HashSet<>();
+        final List<Block> latches = new ArrayList<>(); // Blocks jumping back to the header
+        boolean nested;                                // Has a loop inside
+
+        Loop(Block header) {
+            this.header = header;
+        }
+    }
+
+    void optimize(IrFunction f) {
+        // Unrolling replaces blocks the outer loops are made of, so they are found again
+        boolean unrolled = true;
+        while (unrolled) {
+            unrolled = false;
+            for (Loop loop : loops(f)) {
+                Block preheader = preheader(loop);
+                if (preheader == null) continue;
+                hoist(f, loop, preheader);
+                if (unroll(f, loop, preheader)) {
+                    unrolled = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    // Loops of the function, inner ones before the loops around them
+    private static List<Loop> loops(IrFunction f) {
+        List<Block> rpo = Cfg.reversePostorder(f);
+        Map<Block, Block> idom = Cfg.dominators(rpo);
+        Map<Block, Loop> loops = new LinkedHashMap<>();
+        for (Block block : rpo) {
+            for (Block header : block.succs()) {
+                if (!Cfg.dominates(header, block, idom)) continue;
+                Loop loop = loops.computeIfAbsent(header, Loop::new);
+                loop.latches.add(block);
+                loop.blocks.add(header);
+                List<Block> work = new ArrayList<>();
+                if (loop.blocks.add(block)) work.add(block);
+                while (!work.isEmpty()) {
+                    for (Block pred : work.remove(work.size() - 1).preds) {
+                        if (loop.blocks.add(pred)) work.add(pred);
+                    }
+                }
+            }
+        }
+        List<Loop> result = new ArrayList<>(loops.values());
+        for (Loop loop : result) {
+            for (Loop other : result) {
+                if (other != loop && loop.blocks.contains(other.header)) loop.nested = true;
+            }
+        }
+        result.sort((a, b) -> Integer.compare(a.blocks.size(), b.blocks.size()));
+        return result;
+    }
+
+    // The only block entering the loop from outside, if it just jumps to the header
+    private static Block preheader(Loop loop) {
+        Block preheader = null;
+        for (Block pred : loop.header.preds) {
+            if (loop.blocks.contains(pred)) continue;
+            if (preheader != null) return null;
+            preheader = pred;
+        }
+        return preheader != null && preheader.terminator().op == Opcode.JUMP ? preheader : null;
+    }
+
+    // === Invariant code motion ===
+
+    private void hoist(IrFunction f, Loop loop, Block preheader) {
+        boolean calls = false;
+        Set<IrVariable> stored = new HashSet<>();
+        for (Block block : loop.blocks) {
+            for (Instr instr : block.instrs) {
+                if (instr.op == Opcode.CALL) calls = true;
+                if (instr.op == Opcode.STORE) stored.add(instr.variable);
+            }
+        }
+
+        // Dominators come first, so the operands of an instruction are hoisted before it
+        List<Instr> hoisted = new ArrayList<>();
+        for (Block block : Cfg.reversePostorder(f)) {
+            if (!loop.blocks.contains(block)) continue;
+            for (int i = 0; i < block.instrs.size(); i++) {
+                Instr instr = block.instrs.get(i);
+                boolean movable = switch (instr.op) {
+                    case BINARY -> !instr.mayFail();
+                    case WIDEN -> true;
+                    // A call may store to any global
+                    case LOAD -> !calls && !stored.contains(instr.variable);
+                    default -> false;
+                };
+                if (!movable || !instr.operands.stream().allMatch(v -> invariant(v, loop))) continue;
+                block.instrs.remove(i--);
+                instr.block = preheader;
+                hoisted.add(instr);
+            }
+        }
+        preheader.instrs.addAll(preheader.instrs.size() - 1, hoisted);
+    }
+
+    private static boolean invariant(Value value, Loop loop) {
+        return !(value instanceof Instr instr) || !loop.blocks.contains(instr.block);
+    }
+
+    // === Unrolling ===
+
+    private boolean unroll(IrFunction f, Loop loop, Block preheader) {
+        Block header = loop.header;
+        if (loop.nested || loop.latches.size() != 1) return false;
+        Block latch = loop.latches.get(0);
+        if (latch.terminator().op != Opcode.JUMP) return false;
+
+        Instr branch = header.terminator();
+        if (branch.op != Opcode.BRANCH || !loop.blocks.contains(branch.targets[0])) return false;
+        Block exit = branch.targets[1];
+        if (loop.blocks.contains(exit) || exit.preds.size() != 1) return false;
+        // The only way out is the condition (a return leaves the function, so it may stay)
+        for (Block block : loop.blocks) {
+            for (Block succ : block.succs()) {
+                if (!loop.blocks.contains(succ) && block != header) return false;
+            }
+        }
+
+        int trips = trips(loop, preheader, latch, branch);
+        if (trips < 0) return false;
+        int headerCost = cost(header);
+        int bodyCost = 0;
+        for (Block block : loop.blocks) bodyCost += cost(block);
+        if (trips * bodyCost + headerCost > MAX_UNROLLED) return false;
+
+        int entering = header.preds.indexOf(preheader);
+        int back = header.preds.indexOf(latch);
+        List<Block> blocks = new ArrayList<>();
+        blocks.add(header);
+        for (Block block : f.blocks) {
+            if (block != header && loop.blocks.contains(block)) blocks.add(block);
+        }
+
+        // One copy of the loop per trip, then the header alone for the last check
+        Block from = preheader;
+        Block last = null;
+        Map<Value, Value> values = null;
+        for (int trip = 0; trip <= trips; trip++) {
+            Map<Value, Value> previous = values;
+            values = new IdentityHashMap<>();
+            for (Instr phi : header.phis) {
+                Value operand = trip == 0 ? phi.operands.get(entering) : phi.operands.get(back);
+                values.put(phi, previous == null ? operand : previous.getOrDefault(operand, operand));
+            }
+            Map<Block, Block> copies = Cfg.copyBlocks(trip < trips ? blocks : List.of(header), f, values);
+
+            Block copy = copies.get(header);
+            last = copy;
+            copy.preds.clear();
+            copy.preds.add(from);
+            from.terminator().targets = new Block[]{copy};
+
+            Instr jump = f.newInstr(Opcode.JUMP, GorbType.VOID);
+            jump.block = copy;
+            jump.targets = new Block[]{trip < trips ? copies.get(branch.targets[0]) : exit};
+            copy.instrs.set(copy.instrs.size() - 1, jump);
+            from = copies.get(latch);
+        }
+
+        // The exit is reached from the last header; the values of the loop it reads are that copy's
+        exit.preds.set(0, last);
+        f.blocks.removeAll(loop.blocks);
+        Map<Value, Value> outside = values;
+        for (Block block : f.blocks) {
+            for (Instr phi : block.phis) phi.operands.replaceAll(v -> outside.getOrDefault(v, v));
+            for (Instr instr : block.instrs) instr.operands.replaceAll(v -> outside.getOrDefault(v, v));
+        }
+        return true;
+    }
+
+    // Times the body of the loop runs, when the condition compares a phi stepped by a constant with
+    // a constant; -1 if that is not the case or the loop runs more than MAX_TRIPS times
+    private static int trips(Loop loop, Block preheader, Block latch, Instr branch) {
+        if (!(branch.operands.get(0) instanceof Instr condition) || condition.op != Opcode.BINARY
+                || condition.block != loop.header) return -1;
+        Instr phi = null;
+        for (Value operand : condition.operands) {
+            if (operand instanceof Instr instr && instr.op == Opcode.PHI && instr.block == loop.header) phi = instr;
+            else if (!(operand instanceof Constant)) return -1;
+        }
+        if (phi == null || !(phi.operands.get(loop.header.preds.indexOf(preheader)) instanceof Constant start)) return -1;
+        if (!(phi.operands.get(loop.header.preds.indexOf(latch)) instanceof Instr step) || step.op != Opcode.BINARY
+                || step.mayFail() || !step.operands.contains(phi)) return -1;
+        for (Value operand : step.operands) {
+            if (operand != phi && !(operand instanceof Constant)) return -1;
+        }
+
+        // Runs the condition and the step on the constants, as the program would
+        Object value = start.value;
+        for (int trips = 0; trips <= MAX_TRIPS; trips++) {
+            Object taken = ConstantFolder.evaluate(condition.binary, condition.type,
+                    valueOf(condition.operands.get(0), phi, value), valueOf(condition.operands.get(1), phi, value));
+            if (!(taken instanceof Boolean b)) return -1;
+            if (!b) return trips;
+            value = ConstantFolder.evaluate(step.binary, step.type,
+                    valueOf(step.operands.get(0), phi, value), valueOf(step.operands.get(1), phi, value));
+            if (value == null) return -1;
+        }
+        return -1;
+    }
+
+    private static Object valueOf(Value operand, Instr phi, Object value) {
+        return operand == phi ? value : ((Constant) operand).value;
+    }
+
+    // Instructions a copy of the block adds; jumps between the copies are mostly merged away
+    private static int cost(Block block) {
+        int cost = block.phis.size();
+        for (Instr instr : block.instrs) {
+            if (instr.op != Opcode.JUMP) cost++;
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,268 @@
+package org.example.ir;
+
+import org.example.ast.GorbType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Takes a function out of SSA form for the stack machines. Afterwards:
+ * - each phi has a register, written by COPY instructions at the end of its predecessors;
+ * - a value used once, later in its own block, is marked inline when computing it at the use instead
+ *   changes nothing observable: the backends emit it inside the expression that uses it;
+ * - every other value something uses has storage: its parameter, or a register (a new local);
+ * - the blocks are in emission order.
+ * Both generators call it; a function is lowered once.
+ */
+public final class Lowering {
+    // Levels of a copy's operand tree searched for reads of phi registers when ordering copies
+    private static final int COPY_READ_DEPTH = 4;
+
+    private Lowering() { }
+
+    public static void lower(IrProgram program) {
+        lower(program.main);
+        for (IrFunction f : program.functions) lower(f);
+    }
+
+    public static void lower(IrFunction f) {
+        if (f.lowered) return;
+        Cfg.removeUnreachable(f);
+        splitCriticalEdges(f);
+        removePhis(f);
+
+        Map<Instr, Integer> uses = new HashMap<>();
+        for (Block block : f.blocks) {
+            for (Instr instr : block.instrs) {
+                for (Value operand : instr.operands) {
+                    if (operand instanceof Instr used) uses.merge(used, 1, Integer::sum);
+                }
+            }
+        }
+        for (Block block : f.blocks) stackify(block, uses);
+        for (Block block : f.blocks) {
+            for (Instr instr : block.instrs) {
+                if (!instr.inline && instr.storage == null && uses.containsKey(instr)) instr.storage = register(f, instr);
+            }
+        }
+
+        List<Block> order = Cfg.reversePostorder(f);
+        f.blocks.clear();
+        f.blocks.addAll(order);
+        f.lowered = true;
+    }
+
+    private static IrVariable register(IrFunction f, Instr value) {
+        return f.addLocal((value.name != null ? value.name : "t") + "$" + f.locals.size(), value.type);
+    }
+
+    // === Out of SSA ===
+
+    // Copies for a phi go at the end of a predecessor; one that also leads elsewhere gets a block of its own
+    private static void splitCriticalEdges(IrFunction f) {
+        for (Block block : new ArrayList<>(f.blocks)) {
+            if (block.phis.isEmpty()) continue;
+            for (int i = 0; i < block.preds.size(); i++) {
+                Block pred = block.preds.get(i);
+                if (pred.succs().size() < 2) continue;
+                Block edge = f.newBlock();
+                Instr jump = f.newInstr(Opcode.JUMP, GorbType.VOID);
+                jump.block = edge;
+                jump.targets = new Block[]{block};
+                edge.instrs.add(jump);
+                edge.preds.add(pred);
+
+                Block[] targets = pred.terminator().targets;
+                for (int t = 0; t < targets.length; t++) {
+                    if (targets[t] == block) {
+                        targets[t] = edge;
+                        break;
+                    }
+                }
+                block.preds.set(i, edge);
+            }
+        }
+    }
+
+    private static void removePhis(IrFunction f) {
+        // A parameter read only by a phi (a tail call turned into a loop) holds that phi itself, when it is
+        // the phi's operand on the edge from the entry: the register then already has the value on entry.
+        // On any other edge its value would have been overwritten by the copies into the phi before
+        Map<IrVariable, Integer> paramUses = new HashMap<>();
+        for (Block block : f.blocks) {
+            for (Instr phi : block.phis) countParams(phi, paramUses);
+            for (Instr instr : block.instrs) countParams(instr, paramUses);
+        }
+        Block entry = f.entry();
+        Set<IrVariable> claimed = new HashSet<>();
+        for (Block block : f.blocks) {
+            for (Instr phi : block.phis) {
+                for (int i = 0; i < block.preds.size() && entry.preds.isEmpty(); i++) {
+                    if (phi.operands.get(i) instanceof Param p && paramUses.get(p.variable) == 1
+                            && fromEntry(block.preds.get(i), entry) && claimed.add(p.variable)) {
+                        phi.storage = p.variable;
+                        break;
+                    }
+                }
+                if (phi.storage == null) phi.storage = register(f, phi);
+            }
+        }
+
+        for (Block block : f.blocks) {
+            if (block.phis.isEmpty()) continue;
+            for (int i = 0; i < block.preds.size(); i++) {
+                Block pred = block.preds.get(i);
+                List<Instr> copies = new ArrayList<>();
+                for (Instr phi : block.phis) {
+                    Value source = phi.operands.get(i);
+                    if (source == phi || source.storage == phi.storage) continue;
+                    Instr copy = f.newInstr(Opcode.COPY, phi.type, source);
+                    copy.variable = phi.storage;
+                    copy.block = pred;
+                    copies.add(copy);
+                }
+                pred.instrs.addAll(pred.instrs.size() - 1, sequentialize(f, pred, copies));
+            }
+            for (Instr phi : block.phis) phi.operands.clear();
+        }
+    }
+
+    private static void countParams(Instr instr, Map<IrVariable, Integer> uses) {
+        for (Value operand : instr.operands) {
+            if (operand instanceof Param p) uses.merge(p.variable, 1, Integer::sum);
+        }
+    }
+
+    // The entry itself, or the block splitCriticalEdges put on an edge leaving it
+    private static boolean fromEntry(Block pred, Block entry) {
+        return pred == entry || (pred.preds.size() == 1 && pred.preds.get(0) == entry && pred.instrs.size() == 1);
+    }
+
+    // The copies into the phis of a block happen at once: a register is written only after every copy
+    // that reads it. Copies whose operands read it only to compute the value (a + 1 of a loop counter)
+    // also go first when possible, so the computation can move into the copy.
+    // A cycle (phis that swap values) saves one register in a temporary.
+    private static List<Instr> sequentialize(IrFunction f, Block block, List<Instr> copies) {
+        List<Instr> ordered = new ArrayList<>(copies.size());
+        List<Instr> pending = new ArrayList<>(copies);
+        while (!pending.isEmpty()) {
+            Instr next = firstUnread(pending, block, true);
+            if (next == null) next = firstUnread(pending, block, false);
+            if (next == null) {
+                IrVariable blocked = pending.get(0).variable;
+                Value saved = null;
+                for (Instr copy : pending) {
+                    if (copy.operands.get(0).storage == blocked) saved = copy.operands.get(0);
+                }
+                Instr temp = f.newInstr(Opcode.COPY, saved.type, saved);
+                temp.block = block;
+                temp.variable = f.addLocal("t$" + f.locals.size(), saved.type);
+                temp.storage = temp.variable;
+                ordered.add(temp);
+                for (Instr copy : pending) {
+                    if (copy.operands.get(0) == saved) copy.operands.set(0, temp);
+                }
+                continue;
+            }
+            pending.remove(next);
+            ordered.add(next);
+        }
+        return ordered;
+    }
+
+    private static Instr firstUnread(List<Instr> pending, Block block, boolean deep) {
+        for (Instr copy : pending) {
+            boolean read = false;
+            for (Instr other : pending) {
+                if (other != copy && reads(other.operands.get(0), copy.variable, block, deep ? COPY_READ_DEPTH : 0)) {
+                    read = true;
+                    break;
+                }
+            }
+            if (!read) return copy;
+        }
+        return null;
+    }
+
+    private static boolean reads(Value value, IrVariable variable, Block block, int depth) {
+        if (value.storage == variable) return true;
+        if (depth == 0 || !(value instanceof Instr instr) || instr.block != block || !canInline(instr)) return false;
+        for (Value operand : instr.operands) {
+            if (reads(operand, variable, block, depth - 1)) return true;
+        }
+        return false;
+    }
+
+    // === Expression trees ===
+
+    // Walks the block backwards. For each instruction left in place, its operands are moved right
+    // before it, last operand first, when nothing in between conflicts; an operand's own operands follow.
+    // Every tree then ends up contiguous and in evaluation order (as in WebAssembly register stackifying).
+    private static void stackify(Block block, Map<Instr, Integer> uses) {
+        List<Instr> order = new ArrayList<>(block.instrs);
+        for (int i = order.size() - 1; i >= 0; i--) {
+            i = stackify(order, i, block, uses);
+        }
+        block.instrs.clear();
+        block.instrs.addAll(order);
+    }
+
+    // Returns where the tree of order[at] starts
+    private static int stackify(List<Instr> order, int at, Block block, Map<Instr, Integer> uses) {
+        Instr user = order.get(at);
+        int start = at;
+        for (int k = user.operands.size() - 1; k >= 0; k--) {
+            if (!(user.operands.get(k) instanceof Instr operand) || operand.block != block
+                    || !canInline(operand) || uses.get(operand) != 1) continue;
+            int from = order.indexOf(operand);
+            if (from < 0 || from >= start || !canMove(order, from, start)) continue;
+            order.remove(from);
+            order.add(start - 1, operand);
+            start--;
+            operand.inline = true;
+            start = stackify(order, start, block, uses);
+        }
+        return start;
+    }
+
+    private static boolean canInline(Instr instr) {
+        return switch (instr.op) {
+            case BINARY, WIDEN, LOAD, CALL, INPUT -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean canMove(List<Instr> order, int from, int to) {
+        Instr moved = order.get(from);
+        for (int i = from + 1; i < to; i++) {
+            if (conflicts(moved, order.get(i))) return false;
+        }
+        return true;
+    }
+
+    // Whether moved can be computed after other rather than before
+    private static boolean conflicts(Instr moved, Instr other) {
+        // other overwrites the register of a phi that moved reads
+        if (other.op == Opcode.COPY) {
+            for (Value operand : moved.operands) {
+                if (operand.storage == other.variable) return true;
+            }
+        }
+        if ((moved.readsMemory() && other.writesMemory()) || (moved.writesMemory() && other.readsMemory())) {
+            if (moved.op == Opcode.CALL || other.op == Opcode.CALL || moved.variable == other.variable) return true;
+        }
+        // Output, input, calls and failures happen in program order
+        return observable(moved) && observable(other);
+    }
+
+    private static boolean observable(Instr instr) {
+        return switch (instr.op) {
+            case CALL, INPUT, PRINT -> true;
+            default -> instr.mayFail();
+        };
+    }
+}
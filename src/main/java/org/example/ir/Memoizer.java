@@ -0,0 +1,240 @@
+package org.example.ir;
+
+import org.example.ast.BinaryOp;
+import org.example.ast.Binding;
+import org.example.ast.GorbType;
+import org.example.diagnostics.DiagnosticsListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Gives chosen pure functions a table of recent results, so a call with the arguments of an entry
+ * returns its value without running the body. The table is kept in globals, most recently used
+ * entry first: a hit moves its entry to the front, and a miss runs the body and puts the result
+ * there, dropping the last entry. A few entries are enough to make a doubly recursive function
+ * like fib linear, since each call asks again for what the call before it just computed.
+ * Run IrOptimizer afterwards.
+ */
+public class Memoizer {
+    private final Set<String> functions;
+    private final int capacity;
+
+    private DiagnosticsListener listener;
+
+    // Globals of one entry of a table
+    private record Entry(IrVariable used, List<IrVariable> args, IrVariable result) { }
+
+    public Memoizer(Set<String> functions) {
+        this(functions, 4);
+    }
+
+    public Memoizer(Set<String> functions, int capacity) {
+        this.functions = functions;
+        this.capacity = capacity;
+    }
+
+    public void setListener(DiagnosticsListener listener) {
+        this.listener = listener;
+    }
+
+    // Returns true if some function got a table
+    public boolean memoize(IrProgram program) {
+        Map<String, IrFunction> byName = new HashMap<>();
+        for (IrFunction f : program.functions) byName.put(f.name, f);
+        Map<String, String> impurities = Purity.impurities(program);
+
+        boolean changed = false;
+        for (String name : new TreeSet<>(functions)) {
+            IrFunction f = byName.get(name);
+            String reason = f == null ? "not a function of the program" : rejection(f, impurities);
+            if (listener != null) listener.memoization(name, reason == null, reason != null ? reason : capacity + " entries");
+            if (reason != null) continue;
+            memoize(program, f);
+            changed = true;
+        }
+        return changed;
+    }
+
+    // Why f gets no table, or null
+    private static String rejection(IrFunction f, Map<String, String> impurities) {
+        if (impurities.containsKey(f.name)) return "not pure: " + impurities.get(f.name);
+        if (f.returnType == GorbType.VOID) return "returns nothing";
+        for (IrVariable param : f.params) {
+            // CIL compares strings by reference
+            if (param.type == GorbType.STRING) return "string parameter " + param;
+            // == takes 0.0 and -0.0 for the same key, but 1.0 / x tells them apart
+            if (param.type == GorbType.FLOAT) return "float parameter " + param;
+        }
+        if (!f.entry().preds.isEmpty()) return "entry block is a loop header";
+        for (Block block : f.blocks) {
+            for (Instr instr : block.instrs) {
+                // The arguments are compared and stored from the parameters, so those stay as passed
+                if (instr.variable != null) return "keeps " + instr.variable + " in memory";
+                if (instr.op == Opcode.RETURN && instr.operands.isEmpty()) return "may end without a value";
+            }
+        }
+        return null;
+    }
+
+    private void memoize(IrProgram program, IrFunction f) {
+        List<Entry> table = new ArrayList<>();
+        for (int i = 0; i < capacity; i++) {
+            List<IrVariable> args = new ArrayList<>();
+            for (IrVariable param : f.params) args.add(global(program, f.name + "$" + param.name + i, param.type));
+            table.add(new Entry(global(program, f.name + "$used" + i, GorbType.BOOL), args, global(program, f.name + "$result" + i, f.returnType)));
+        }
+        List<Value> args = params(f);
+        Block body = f.entry();
+        List<Block> returns = new ArrayList<>();
+        for (Block block : f.blocks) {
+            if (block.terminator().op == Opcode.RETURN) returns.add(block);
+        }
+
+        // Moving entries back: shift[i] moves entry i - 1 to i, down to shift[0], which puts the
+        // arguments and the result in front. The result comes along in a phi
+        List<Block> shift = new ArrayList<>();
+        List<Instr> results = new ArrayList<>();
+        for (int i = 0; i < capacity; i++) {
+            Block block = f.newBlock();
+            Instr result = f.newInstr(Opcode.PHI, f.returnType);
+            result.block = block;
+            block.phis.add(result);
+            shift.add(block);
+            results.add(result);
+        }
+        for (int i = capacity - 1; i > 0; i--) {
+            Block block = shift.get(i);
+            Entry from = table.get(i - 1);
+            Entry to = table.get(i);
+            store(f, block, to.used, load(f, block, from.used));
+            for (int j = 0; j < args.size(); j++) store(f, block, to.args.get(j), load(f, block, from.args.get(j)));
+            store(f, block, to.result, load(f, block, from.result));
+            enter(f, block, shift.get(i - 1), results.get(i));
+        }
+        Block front = shift.get(0);
+        store(f, front, table.get(0).used, f.constant(GorbType.BOOL, true));
+        for (int j = 0; j < args.size(); j++) store(f, front, table.get(0).args.get(j), args.get(j));
+        store(f, front, table.get(0).result, results.get(0));
+        Instr ret = f.newInstr(Opcode.RETURN, GorbType.VOID, results.get(0));
+        ret.block = front;
+        front.instrs.add(ret);
+
+        // A miss: each return of the body puts its value in front, dropping the last entry
+        for (Block block : returns) {
+            Value value = block.terminator().operands.get(0);
+            block.instrs.remove(block.instrs.size() - 1);
+            enter(f, block, shift.get(capacity - 1), value);
+        }
+
+        // The lookup compares the arguments with each entry in turn. Used entries come first,
+        // so the first unused one ends it
+        List<Block> checks = new ArrayList<>();
+        for (int i = 0; i < capacity; i++) checks.add(f.newBlock());
+        for (int i = 0; i < capacity; i++) {
+            Entry entry = table.get(i);
+            Block miss = i + 1 < capacity ? checks.get(i + 1) : body;
+            Block block = checks.get(i);
+            Block compare = f.newBlock();
+            branch(f, block, load(f, block, entry.used), compare, body);
+            for (int j = 0; j < args.size(); j++) {
+                Block next = f.newBlock();
+                Instr equal = f.newInstr(Opcode.BINARY, GorbType.BOOL, load(f, compare, entry.args.get(j)), args.get(j));
+                equal.binary = BinaryOp.EQ;
+                equal.block = compare;
+                compare.instrs.add(equal);
+                branch(f, compare, equal, next, miss);
+                compare = next;
+            }
+            Instr result = load(f, compare, entry.result);
+            if (i > 0) {
+                enter(f, compare, shift.get(i), result);
+                continue;
+            }
+            Instr hit = f.newInstr(Opcode.RETURN, GorbType.VOID, result); // Already in front
+            hit.block = compare;
+            compare.instrs.add(hit);
+        }
+        f.blocks.removeAll(checks);
+        f.blocks.addAll(0, checks);
+
+        // The tables start empty; main runs before any function
+        List<Instr> init = new ArrayList<>();
+        for (Entry entry : table) {
+            init.add(initialize(program.main, entry.used));
+            for (IrVariable arg : entry.args) init.add(initialize(program.main, arg));
+            init.add(initialize(program.main, entry.result));
+        }
+        program.main.entry().instrs.addAll(0, init);
+    }
+
+    // The value of each parameter: the one the body reads, so value numbering sees a single value
+    private static List<Value> params(IrFunction f) {
+        Value[] params = new Value[f.params.size()];
+        for (Block block : f.blocks) {
+            for (Instr phi : block.phis) findParams(phi, params);
+            for (Instr instr : block.instrs) findParams(instr, params);
+        }
+        for (int i = 0; i < params.length; i++) {
+            if (params[i] == null) params[i] = f.param(f.params.get(i));
+        }
+        return List.of(params);
+    }
+
+    private static void findParams(Instr instr, Value[] params) {
+        for (Value operand : instr.operands) {
+            if (operand instanceof Param p) params[p.variable.index] = p;
+        }
+    }
+
+    private static IrVariable global(IrProgram program, String name, GorbType type) {
+        IrVariable global = new IrVariable(name, type, Binding.Kind.GLOBAL, program.globals.size());
+        program.globals.add(global);
+        return global;
+    }
+
+    private static Instr initialize(IrFunction main, IrVariable variable) {
+        Instr store = main.newInstr(Opcode.STORE, GorbType.VOID, main.constant(variable.type, IrOptimizer.defaultValue(variable.type)));
+        store.variable = variable;
+        store.block = main.entry();
+        return store;
+    }
+
+    private static Instr load(IrFunction f, Block block, IrVariable variable) {
+        Instr load = f.newInstr(Opcode.LOAD, variable.type);
+        load.variable = variable;
+        load.block = block;
+        block.instrs.add(load);
+        return load;
+    }
+
+    private static void store(IrFunction f, Block block, IrVariable variable, Value value) {
+        Instr store = f.newInstr(Opcode.STORE, GorbType.VOID, value);
+        store.variable = variable;
+        store.block = block;
+        block.instrs.add(store);
+    }
+
+    // Jumps from block to one of the shift blocks, with the result for its phi
+    private static void enter(IrFunction f, Block block, Block shift, Value result) {
+        Instr jump = f.newInstr(Opcode.JUMP, GorbType.VOID);
+        jump.block = block;
+        jump.targets = new Block[]{shift};
+        block.instrs.add(jump);
+        shift.preds.add(block);
+        shift.phis.get(0).operands.add(result);
+    }
+
+    private static void branch(IrFunction f, Block block, Value condition, Block then, Block otherwise) {
+        Instr branch = f.newInstr(Opcode.BRANCH, GorbType.VOID, condition);
+        branch.block = block;
+        branch.targets = new Block[]{then, otherwise};
+        block.instrs.add(branch);
+        then.preds.add(block);
+        otherwise.preds.add(block);
+    }
+}
@@ -0,0 +1,23 @@
+package org.example.ir;
+
+/**
+ * Instructions of the IR. A block ends with exactly one of JUMP, BRANCH or RETURN.
+ */
+public enum Opcode {
+    BINARY, // operands[0] op operands[1]; string + is concatenation
+    WIDEN,  // int -> float
+    CALL,   // callee(operands...)
+    LOAD,   // value of a variable kept in memory
+    STORE,  // variable := operands[0], for a variable kept in memory
+    INPUT,  // line read from the console, converted to the type of the instruction
+    PRINT,
+    PHI,    // operands in the order of the block's predecessors
+    COPY,   // variable := operands[0]; introduced by Lowering for phis
+    JUMP,
+    BRANCH, // targets[0] if operands[0] is true, else targets[1]
+    RETURN; // operands[0], if any
+
+    public boolean isTerminator() {
+        return this == JUMP || this == BRANCH || this == RETURN;
+    }
+}
@@ -0,0 +1,19 @@
+package org.example.ir;
+
+/**
+ * Value of a parameter on entry to its function. It stays in the parameter itself.
+ */
+public final class Param extends Value {
+    public final IrVariable variable;
+
+    Param(int id, IrVariable variable) {
+        super(id, variable.type);
+        this.variable = variable;
+        this.storage = variable;
+    }
+
+    @Override
+    public String toString() {
+        return variable.name;
+    }
+}
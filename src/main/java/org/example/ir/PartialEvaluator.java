@@ -0,0 +1,142 @@
+package org.example.ir;
+
+import org.example.optimizer.ConstantFolder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs calls of pure functions on constant arguments at compile time, and puts the value in
+ * place of the call. The callee's IR is interpreted with the rules of ConstantFolder: a call that
+ * takes more than fuel instructions, recurses deeper than maxDepth, or computes something those
+ * rules leave to run time (e.g. a division by zero, an int out of range) stays a call.
+ * Run IrOptimizer afterwards, as the values may make more arguments constant.
+ */
+public class PartialEvaluator {
+    private final int fuel;     // Instructions one call may take, its calls included
+    private final int maxDepth; // Calls nested in one call
+
+    private Map<String, IrFunction> pure;
+    private int left;           // Fuel left for the call being run
+
+    public PartialEvaluator() {
+        this(10_000, 100);
+    }
+
+    public PartialEvaluator(int fuel, int maxDepth) {
+        this.fuel = fuel;
+        this.maxDepth = maxDepth;
+    }
+
+    // Returns true if some call was replaced
+    public boolean evaluate(IrProgram program) {
+        Map<String, String> impurities = Purity.impurities(program);
+        pure = new HashMap<>();
+        for (IrFunction f : program.functions) {
+            if (!impurities.containsKey(f.name)) pure.put(f.name, f);
+        }
+
+        boolean changed = evaluate(program.main);
+        for (IrFunction f : program.functions) changed |= evaluate(f);
+        return changed;
+    }
+
+    private boolean evaluate(IrFunction f) {
+        boolean changed = false;
+        for (Block block : Cfg.reversePostorder(f)) {
+            for (int i = 0; i < block.instrs.size(); i++) {
+                Instr call = block.instrs.get(i);
+                if (call.op != Opcode.CALL || !pure.containsKey(call.callee)) continue;
+                List<Object> args = new ArrayList<>();
+                for (Value operand : call.operands) {
+                    if (operand instanceof Constant c) args.add(c.value);
+                }
+                if (args.size() < call.operands.size()) continue;
+
+                left = fuel;
+                Object value = run(pure.get(call.callee), args, 0);
+                if (value == null) continue;
+                // Later calls in the function see the value as an argument right away
+                replaceUses(f, call, f.constant(call.type, value));
+                block.instrs.remove(i--);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // Value f returns for args, or null if it is left to run time
+    private Object run(IrFunction f, List<Object> args, int depth) {
+        if (depth > maxDepth) return null;
+        Map<Value, Object> values = new IdentityHashMap<>();
+        Block previous = null;
+        Block block = f.entry();
+        while (true) {
+            // Phis take their operands at once, along the edge just taken
+            if (previous != null && !block.phis.isEmpty()) {
+                int edge = block.preds.indexOf(previous);
+                List<Object> entering = new ArrayList<>();
+                for (Instr phi : block.phis) entering.add(valueOf(phi.operands.get(edge), values, args));
+                for (int i = 0; i < block.phis.size(); i++) values.put(block.phis.get(i), entering.get(i));
+            }
+            for (Instr instr : block.instrs) {
+                if (--left < 0) return null;
+                switch (instr.op) {
+                    case BINARY -> {
+                        Object value = ConstantFolder.evaluate(instr.binary, instr.type,
+                                valueOf(instr.operands.get(0), values, args), valueOf(instr.operands.get(1), values, args));
+                        if (value == null) return null;
+                        values.put(instr, value);
+                    }
+                    case WIDEN -> {
+                        double value = (Integer) valueOf(instr.operands.get(0), values, args);
+                        if (!ConstantFolder.isPrintable(value)) return null;
+                        values.put(instr, value);
+                    }
+                    case CALL -> {
+                        IrFunction callee = pure.get(instr.callee);
+                        if (callee == null) return null;
+                        List<Object> callArgs = new ArrayList<>();
+                        for (Value operand : instr.operands) callArgs.add(valueOf(operand, values, args));
+                        Object value = run(callee, callArgs, depth + 1);
+                        if (value == null) return null;
+                        values.put(instr, value);
+                    }
+                    case JUMP -> {
+                        previous = block;
+                        block = instr.targets[0];
+                    }
+                    case BRANCH -> {
+                        previous = block;
+                        block = (Boolean) valueOf(instr.operands.get(0), values, args) ? instr.targets[0] : instr.targets[1];
+                    }
+                    case RETURN -> {
+                        return instr.operands.isEmpty() ? null : valueOf(instr.operands.get(0), values, args);
+                    }
+                    // Variables kept in memory belong to nested functions, which are not run here
+                    default -> {
+                        return null;
+                    }
+                }
+            }
+        }
+    }
+
+    private static Object valueOf(Value value, Map<Value, Object> values, List<Object> args) {
+        return switch (value) {
+            case Constant c -> c.value;
+            case Param p -> args.get(p.variable.index);
+            default -> values.get(value);
+        };
+    }
+
+    private static void replaceUses(IrFunction f, Value value, Value with) {
+        for (Block block : f.blocks) {
+            for (Instr phi : block.phis) phi.operands.replaceAll(v -> v == value ? with : v);
+            for (Instr instr : block.instrs) instr.operands.replaceAll(v -> v == value ? with : v);
+        }
+    }
+}
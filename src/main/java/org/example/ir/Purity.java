@@ -0,0 +1,60 @@
+package org.example.ir;
+
+import org.example.ast.Binding;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Finds the pure functions of a program: a call computes its value and nothing else. A pure
+ * function reads no input, prints nothing, does not touch globals or variables of enclosing
+ * functions, and calls only pure functions.
+ */
+final class Purity {
+    private Purity() { }
+
+    // Why each function that is not pure is not; pure functions are absent
+    static Map<String, String> impurities(IrProgram program) {
+        Map<String, String> reasons = new HashMap<>();
+        for (IrFunction f : program.functions) {
+            for (Block block : f.blocks) {
+                for (Instr instr : block.instrs) {
+                    String effect = effect(instr);
+                    if (effect != null) reasons.putIfAbsent(f.name, effect);
+                }
+            }
+        }
+
+        // A function calling an impure one is impure too, until nothing changes (recursion stays pure)
+        CallGraph calls = new CallGraph(program);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (IrFunction f : program.functions) {
+                if (reasons.containsKey(f.name)) continue;
+                for (IrFunction callee : calls.callees(f)) {
+                    if (!reasons.containsKey(callee.name)) continue;
+                    reasons.put(f.name, "calls " + callee.name);
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        return reasons;
+    }
+
+    private static String effect(Instr instr) {
+        return switch (instr.op) {
+            case INPUT -> "reads input";
+            case PRINT -> "prints";
+            case LOAD -> shared(instr.variable) ? "reads " + instr.variable : null;
+            case STORE -> shared(instr.variable) ? "writes " + instr.variable : null;
+            default -> null;
+        };
+    }
+
+    // Parameters and locals kept in memory belong to the call
+    private static boolean shared(IrVariable variable) {
+        return variable.kind == Binding.Kind.GLOBAL || variable.kind == Binding.Kind.OUTER;
+    }
+}
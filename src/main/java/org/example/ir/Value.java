@@ -0,0 +1,20 @@
+package org.example.ir;
+
+import org.example.ast.GorbType;
+
+/**
+ * An SSA value: a constant, a parameter on entry to its function, or the result of an instruction.
+ * Values compare by identity; equal computations are merged by IrOptimizer.
+ */
+public abstract class Value {
+    public final GorbType type;
+    final int id; // Numbered per function in creation order (stable operand order and dumps)
+
+    // Variable the value is kept in after Lowering; null for constants and values computed at their use
+    public IrVariable storage;
+
+    Value(int id, GorbType type) {
+        this.id = id;
+        this.type = type;
+    }
+}
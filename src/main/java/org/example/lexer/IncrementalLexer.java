@@ -0,0 +1,141 @@
+package org.example.lexer;
+
+import org.example.tokens.TokenBuffer;
+import org.example.tokens.TokenType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the tokens of a source that is edited in place. An edit rescans only from the token
+ * boundary before it, until the scanner is back on an old token boundary past the edit.
+ */
+public class IncrementalLexer {
+    private String source;
+    private TokenBuffer tokens; // null after a lexer error: the next edit rescans everything
+
+    // Lexemes of all scans share one text list, so untouched rows keep their text ids
+    private final List<String> texts = new ArrayList<>();
+    private final Map<String, Integer> textIds = new HashMap<>();
+
+    /**
+     * Rows of the token buffer replaced by the last edit: old rows [first, oldEnd) are now
+     * rows [first, newEnd). Rows after them moved by lineShift lines.
+     */
+    public static class Damage {
+        public final int first;
+        public final int oldEnd;
+        public final int newEnd;
+        public final int lineShift;
+
+        Damage(int first, int oldEnd, int newEnd, int lineShift) {
+            this.first = first;
+            this.oldEnd = oldEnd;
+            this.newEnd = newEnd;
+            this.lineShift = lineShift;
+        }
+    }
+
+    public IncrementalLexer(String source) {
+        this.source = source;
+        this.tokens = scanAll();
+    }
+
+    public String source() {
+        return source;
+    }
+
+    public TokenBuffer tokens() {
+        return tokens;
+    }
+
+    /**
+     * Replaces removed chars at offset with inserted. On a lexer error the text is still edited,
+     * and the next edit rescans the whole source.
+     */
+    public Damage edit(int offset, int removed, String inserted) {
+        String next = source.substring(0, offset) + inserted + source.substring(offset + removed);
+        TokenBuffer old = tokens;
+        source = next;
+        tokens = null;
+
+        if (old == null) {
+            TokenBuffer all = scanAll();
+            tokens = all;
+            return new Damage(0, 0, all.size(), 0);
+        }
+
+        // The scan of a token reads one char past its end (e.g. "ab" + "c" is a longer identifier),
+        // so the first damaged token is the first one ending at or after the edit.
+        // Scanning restarts at the end of the token before it, outside any token.
+        int n = old.size();
+        int first = firstEndingAt(old, offset);
+        int restart = first > 0 ? old.end(first - 1) : 0;
+        int line = first > 0 ? old.line(first - 1) : 1;
+
+        int shift = inserted.length() - removed;
+        int editEnd = offset + inserted.length();
+        Lexer lexer = new Lexer(next, null, restart, next.length(), line);
+        TokenBuffer fresh = new TokenBuffer(texts);
+
+        // A token starting past the edit where an old token started: the rest of the text is the same
+        // and the scanner is in the start state at both, so all following tokens are the old ones
+        int oldEnd = n;
+        int lineShift = 0;
+        int j = first;
+        while (lexer.scan()) {
+            int start = lexer.scannedStart();
+            if (start >= editEnd) {
+                int oldStart = start - shift;
+                while (j < n - 1 && old.start(j) < oldStart) j++;
+                if (j < n - 1 && old.start(j) == oldStart) {
+                    oldEnd = j;
+                    lineShift = lexer.scannedLine() - old.line(j);
+                    break;
+                }
+            }
+            fresh.add(lexer.scannedType(), start, lexer.scannedEnd(), lexer.scannedLine(), textId(lexer.scannedText()));
+        }
+        if (oldEnd == n) {
+            fresh.add(TokenType.EOF, next.length(), next.length(), lexer.line(), textId(""));
+        }
+
+        old.replace(first, oldEnd, fresh, shift, lineShift);
+        tokens = old;
+        return new Damage(first, oldEnd, first + fresh.size(), lineShift);
+    }
+
+    private TokenBuffer scanAll() {
+        Lexer lexer = new Lexer(source);
+        TokenBuffer all = new TokenBuffer(texts);
+        while (lexer.scan()) {
+            all.add(lexer.scannedType(), lexer.scannedStart(), lexer.scannedEnd(), lexer.scannedLine(), textId(lexer.scannedText()));
+        }
+        all.add(TokenType.EOF, source.length(), source.length(), lexer.line(), textId(""));
+        return all;
+    }
+
+    private int textId(String text) {
+        Integer id = textIds.get(text);
+        if (id == null) {
+            id = texts.size();
+            texts.add(text);
+            textIds.put(text, id);
+        }
+        return id;
+    }
+
+    // Index of the first row whose end is at or after offset (the EOF row always is)
+    private static int firstEndingAt(TokenBuffer tokens, int offset) {
+        int lo = 0;
+        int hi = tokens.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tokens.end(mid) < offset) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
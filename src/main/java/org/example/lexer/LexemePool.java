@@ -0,0 +1,126 @@
+package org.example.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Interns lexemes by their slice of the source text, so every distinct identifier or literal
+ * is turned into a String only once. Tokens refer to lexemes by id.
+ */
+class LexemePool {
+    // Source text the lexemes are slices of, as in Lexer: exactly one is set
+    private final String input;
+    private final ByteBuffer bytes;
+    private final List<String> texts = new ArrayList<>();
+
+    // Per id: where the lexeme first occurred, and its hash (fixed lexemes have no slice)
+    private int[] firstStart = new int[64];
+    private int[] firstEnd = new int[64];
+    private int[] hashes = new int[64];
+
+    // Open addressing table of id + 1 (0 = empty slot)
+    private int[] slots = new int[256];
+    private int used = 0;
+
+    LexemePool(String input, ByteBuffer bytes, List<String> fixed) {
+        this.input = input;
+        this.bytes = bytes;
+        for (String text : fixed) add(text, -1, -1, 0);
+    }
+
+    int intern(int start, int end) {
+        int hash = hashRegion(start, end);
+        int length = end - start;
+        int mask = slots.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int id = slots[i] - 1;
+            if (id < 0) {
+                id = add(slice(start, end), start, end, hash);
+                slots[i] = id + 1;
+                if (++used * 2 > slots.length) rehash();
+                return id;
+            }
+            if (hashes[id] == hash && firstEnd[id] - firstStart[id] == length
+                    && regionEquals(firstStart[id], start, length)) {
+                return id;
+            }
+        }
+    }
+
+    String text(int id) {
+        return texts.get(id);
+    }
+
+    // Source slice of the first occurrence (-1 for fixed lexemes)
+    int start(int id) {
+        return firstStart[id];
+    }
+
+    int end(int id) {
+        return firstEnd[id];
+    }
+
+    int size() {
+        return texts.size();
+    }
+
+    List<String> texts() {
+        return texts;
+    }
+
+    // === Source access (char or byte mode) ===
+
+    private String slice(int start, int end) {
+        if (bytes == null) return input.substring(start, end);
+        byte[] dst = new byte[end - start];
+        bytes.get(start, dst);
+        return new String(dst, StandardCharsets.UTF_8);
+    }
+
+    private boolean regionEquals(int first, int second, int len) {
+        if (bytes == null) return input.regionMatches(first, input, second, len);
+        for (int i = 0; i < len; i++) {
+            if (bytes.get(first + i) != bytes.get(second + i)) return false;
+        }
+        return true;
+    }
+
+    private int hashRegion(int start, int end) {
+        int h = 0;
+        if (bytes == null) {
+            for (int i = start; i < end; i++) h = 31 * h + input.charAt(i);
+        } else {
+            for (int i = start; i < end; i++) h = 31 * h + bytes.get(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private int add(String text, int start, int end, int hash) {
+        int id = texts.size();
+        if (id == hashes.length) {
+            firstStart = Arrays.copyOf(firstStart, id * 2);
+            firstEnd = Arrays.copyOf(firstEnd, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        texts.add(text);
+        firstStart[id] = start;
+        firstEnd[id] = end;
+        hashes[id] = hash;
+        return id;
+    }
+
+    private void rehash() {
+        int[] old = slots;
+        slots = new int[old.length * 2];
+        int mask = slots.length - 1;
+        for (int slot : old) {
+            if (slot == 0) continue;
+            int i = hashes[slot - 1] & mask;
+            while (slots[i] != 0) i = (i + 1) & mask;
+            slots[i] = slot;
+        }
+    }
+}
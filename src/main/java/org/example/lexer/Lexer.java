@@ -1,17 +1,51 @@
 package org.example.lexer;
 
+import org.example.diagnostics.DiagnosticsListener;
 import org.example.tokens.Token;
+import org.example.tokens.TokenBuffer;
+import org.example.tokens.TokenSource;
 import org.example.tokens.TokenType;
 
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
-public class Lexer {
+public class Lexer implements TokenSource {
+    // Exactly one of input / bytes is set
     private final String input;
+    private final ByteBuffer bytes; // UTF-8 source (e.g. a memory-mapped file)
+    private final int length;
     private int pos = 0;
     private int line = 1;
+    private Token eofToken;
+
+    // Every distinct lexeme is materialized once; tokens refer to it by id
+    private final LexemePool pool;
+
+    // Vector run skipping in byte mode, when the incubator module is present (see VectorRuns); null otherwise
+    private final VectorRuns vector;
+
+    // The last token found by scan()
+    private TokenType tokType;
+    private int tokStart;
+    private int tokEnd;
+    private int tokLine;
+    private int tokText; // Lexeme id in the pool
+
+    // Start of a token left unfinished at the end of input (e.g. a string crossing a chunk end), -1 if none
+    private int dangling = -1;
+
+    // Parallel lexing: chunks are at least this many chars / bytes
+    private static final int MIN_CHUNK = 1 << 20;
+
+    // Set when the whole program was scanned into a buffer whose rows were not reported yet
+    private TokenBuffer buffer;
+
+    // Tables and rows are only built when a listener is set
+    private DiagnosticsListener listener;
 
     // Output Tables
-    public final List<String> tableOfSymb = new ArrayList<>();
     private final Map<String, Integer> tableOfId = new LinkedHashMap<>();
     private final Map<String, String> tableOfConst = new LinkedHashMap<>();
 
@@ -52,89 +86,142 @@ public class Lexer {
     private static final int S_NOT_EQ = 27; // !=
     private static final int S_NOT_FIN = 28; // * (!)
     // Single Char Ops (+ * ^ ( ) { } , : ;)
-    private static final int S_OP = 99;
+    private static final int S_OP = 29;
 
     // ERROR STATE
-    private static final int S_ERR = 100;
-
-    // States that require putCharBack (Star states)
-    private static final Set<Integer> starStates = Set.of(
-            S_ID_FIN, S_INT_FIN, S_FLOAT_FIN,
-            S_MINUS_FIN, S_EQ_FIN, S_DIV_FIN,
-            S_GT_FIN, S_LT_FIN, S_NOT_FIN
-    );
+    private static final int S_ERR = 30;
+
+    private static final int STATE_COUNT = 31;
+
+    // No transition (only whitespace / newline in the start state)
+    private static final int S_NONE = -1;
+
+    // Char classes (column index of the transition matrix)
+    private static final int C_LETTER = 0;
+    private static final int C_DIGIT = 1;
+    private static final int C_DOT = 2;
+    private static final int C_WS = 3;
+    private static final int C_NL = 4;
+    private static final int C_QUOTE = 5;
+    private static final int C_MINUS = 6;
+    private static final int C_GT = 7;
+    private static final int C_LT = 8;
+    private static final int C_EQ = 9;
+    private static final int C_SLASH = 10;
+    private static final int C_EXCL = 11;
+    private static final int C_OP = 12;
+    private static final int C_OTHER = 13;
+
+    private static final int CLASS_COUNT = 14;
+
+    // What happens when the DFA enters a state
+    private static final byte K_ACCUM = 0;   // consume char, keep accumulating
+    private static final byte K_STAR = 1;    // finalize, put char back
+    private static final byte K_FINAL = 2;   // consume char, finalize
+    private static final byte K_COMMENT = 3; // consume char, skip to end of line
+
+    // Flat transition matrix: STF[state * CLASS_COUNT + cls] -> next state
+    private static final int[] STF = new int[STATE_COUNT * CLASS_COUNT];
+    private static final byte[] KIND = new byte[STATE_COUNT];
+    // Char class lookup for ASCII, everything else goes through classOfWide()
+    private static final byte[] ASCII_CLASS = new byte[128];
+
+    static {
+        initTransitions();
+        initKinds();
+        initCharClasses();
+    }
 
-    private enum CharClass {
-        LETTER, DIGIT, DOT, WS, NL, QUOTE,
-        MINUS, GT, LT, EQ, SLASH, EXCL, OP, OTHER
+    public Lexer(String input) {
+        this(input, null, 0, input.length(), 1);
     }
 
-    private final Map<Integer, Map<CharClass, Integer>> stf = new HashMap<>();
+    /**
+     * Byte mode: scans UTF-8 bytes directly, offsets are byte offsets.
+     * Only identifier, number and string slices are decoded into Strings.
+     */
+    public Lexer(ByteBuffer utf8) {
+        this(null, utf8, 0, utf8.limit(), 1);
+    }
 
-    public Lexer(String input) {
+    // Scans only [from, to) of a shared source; used for the chunks of a parallel scan
+    // and by IncrementalLexer to rescan from a token boundary
+    Lexer(String input, ByteBuffer bytes, int from, int to, int line) {
         this.input = input;
-        initTransitions();
+        this.bytes = bytes;
+        this.length = to;
+        this.pos = from;
+        this.line = line;
+        this.pool = new LexemePool(input, bytes, FIXED_TEXTS);
+        this.vector = VECTOR && bytes != null ? new VectorRuns(bytes, to) : null;
+    }
+
+    // Must be set before scanning starts
+    public void setListener(DiagnosticsListener listener) {
+        this.listener = listener;
     }
 
-    private void addTrans(int state, CharClass cls, int next) {
-        stf.computeIfAbsent(state, k -> new HashMap<>()).put(cls, next);
+    private static void addTrans(int state, int cls, int next) {
+        STF[state * CLASS_COUNT + cls] = next;
     }
 
-    private void initTransitions() {
+    private static void initTransitions() {
+        Arrays.fill(STF, S_NONE);
+
         // 0: Start
-        addTrans(S_START, CharClass.LETTER, S_ID);
-        addTrans(S_START, CharClass.DIGIT, S_INT);
-        addTrans(S_START, CharClass.QUOTE, S_STR_START);
-        addTrans(S_START, CharClass.MINUS, S_MINUS);
-        addTrans(S_START, CharClass.EQ, S_EQ);
-        addTrans(S_START, CharClass.SLASH, S_DIV);
-        addTrans(S_START, CharClass.GT, S_GT);
-        addTrans(S_START, CharClass.LT, S_LT);
-        addTrans(S_START, CharClass.EXCL, S_NOT);
-        addTrans(S_START, CharClass.OP, S_OP);
+        addTrans(S_START, C_LETTER, S_ID);
+        addTrans(S_START, C_DIGIT, S_INT);
+        addTrans(S_START, C_QUOTE, S_STR_START);
+        addTrans(S_START, C_MINUS, S_MINUS);
+        addTrans(S_START, C_EQ, S_EQ);
+        addTrans(S_START, C_SLASH, S_DIV);
+        addTrans(S_START, C_GT, S_GT);
+        addTrans(S_START, C_LT, S_LT);
+        addTrans(S_START, C_EXCL, S_NOT);
+        addTrans(S_START, C_OP, S_OP);
         // Error handling for Start (Unexpected chars like @, #, etc.)
-        addTrans(S_START, CharClass.OTHER, S_ERR);
+        addTrans(S_START, C_OTHER, S_ERR);
 
         // 1: ID
-        addTrans(S_ID, CharClass.LETTER, S_ID);
-        addTrans(S_ID, CharClass.DIGIT, S_ID);
-        addTrans(S_ID, CharClass.OTHER, S_ID_FIN); // *
+        addTrans(S_ID, C_LETTER, S_ID);
+        addTrans(S_ID, C_DIGIT, S_ID);
+        addTrans(S_ID, C_OTHER, S_ID_FIN); // *
 
         // Numbers
-        addTrans(S_INT, CharClass.DIGIT, S_INT);
-        addTrans(S_INT, CharClass.DOT, S_DOT);
-        addTrans(S_INT, CharClass.OTHER, S_INT_FIN); // *
+        addTrans(S_INT, C_DIGIT, S_INT);
+        addTrans(S_INT, C_DOT, S_DOT);
+        addTrans(S_INT, C_OTHER, S_INT_FIN); // *
 
         // Dot logic: Digit -> Float, Other -> ERROR (e.g. "12.a")
-        addTrans(S_DOT, CharClass.DIGIT, S_FLOAT);
-        addTrans(S_DOT, CharClass.OTHER, S_ERR);
+        addTrans(S_DOT, C_DIGIT, S_FLOAT);
+        addTrans(S_DOT, C_OTHER, S_ERR);
 
-        addTrans(S_FLOAT, CharClass.DIGIT, S_FLOAT);
-        addTrans(S_FLOAT, CharClass.OTHER, S_FLOAT_FIN); // *
+        addTrans(S_FLOAT, C_DIGIT, S_FLOAT);
+        addTrans(S_FLOAT, C_OTHER, S_FLOAT_FIN); // *
 
         // Operators
-        addTrans(S_MINUS, CharClass.GT, S_ARROW);     // ->
-        addTrans(S_MINUS, CharClass.OTHER, S_MINUS_FIN); // * -
-        addTrans(S_EQ, CharClass.EQ, S_EQ_EQ);        // ==
-        addTrans(S_EQ, CharClass.OTHER, S_EQ_FIN);    // * =
-        addTrans(S_DIV, CharClass.SLASH, S_COMMENT);  // //
-        addTrans(S_DIV, CharClass.OTHER, S_DIV_FIN);  // * /
+        addTrans(S_MINUS, C_GT, S_ARROW);     // ->
+        addTrans(S_MINUS, C_OTHER, S_MINUS_FIN); // * -
+        addTrans(S_EQ, C_EQ, S_EQ_EQ);        // ==
+        addTrans(S_EQ, C_OTHER, S_EQ_FIN);    // * =
+        addTrans(S_DIV, C_SLASH, S_COMMENT);  // //
+        addTrans(S_DIV, C_OTHER, S_DIV_FIN);  // * /
 
         // Comparisons
-        addTrans(S_GT, CharClass.EQ, S_GT_EQ);        // >=
-        addTrans(S_GT, CharClass.OTHER, S_GT_FIN);    // * >
-        addTrans(S_LT, CharClass.EQ, S_LT_EQ);        // <=
-        addTrans(S_LT, CharClass.OTHER, S_LT_FIN);    // * <
-        addTrans(S_NOT, CharClass.EQ, S_NOT_EQ);      // !=
-        addTrans(S_NOT, CharClass.OTHER, S_NOT_FIN);  // * !
-
-        // Strings (Correct Logic)
+        addTrans(S_GT, C_EQ, S_GT_EQ);        // >=
+        addTrans(S_GT, C_OTHER, S_GT_FIN);    // * >
+        addTrans(S_LT, C_EQ, S_LT_EQ);        // <=
+        addTrans(S_LT, C_OTHER, S_LT_FIN);    // * <
+        addTrans(S_NOT, C_EQ, S_NOT_EQ);      // !=
+        addTrans(S_NOT, C_OTHER, S_NOT_FIN);  // * !
+
+        // Strings
         // 1. Empty string case: "" -> Fin
-        addTrans(S_STR_START, CharClass.QUOTE, S_STR_FIN);
+        addTrans(S_STR_START, C_QUOTE, S_STR_FIN);
 
         // 2. Body logic
-        for (CharClass c : CharClass.values()) {
-            if (c != CharClass.QUOTE) {
+        for (int c = 0; c < CLASS_COUNT; c++) {
+            if (c != C_QUOTE) {
                 // From Start to Body (non-empty string start)
                 addTrans(S_STR_START, c, S_STR_BODY);
                 // Within Body (continue string)
@@ -142,182 +229,562 @@ public class Lexer {
             }
         }
         // 3. Closing quote
-        addTrans(S_STR_BODY, CharClass.QUOTE, S_STR_FIN);
-    }
-
-    private CharClass classOfChar(char c) {
-        if (Character.isLetter(c) || c == '_') return CharClass.LETTER;
-        if (Character.isDigit(c)) return CharClass.DIGIT;
-        if (c == '.') return CharClass.DOT;
-        if (c == ' ' || c == '\t') return CharClass.WS;
-        if (c == '\n') return CharClass.NL;
-        if (c == '"') return CharClass.QUOTE;
-        if (c == '-') return CharClass.MINUS;
-        if (c == '>') return CharClass.GT;
-        if (c == '<') return CharClass.LT;
-        if (c == '=') return CharClass.EQ;
-        if (c == '/') return CharClass.SLASH;
-        if (c == '!') return CharClass.EXCL;
+        addTrans(S_STR_BODY, C_QUOTE, S_STR_FIN);
+
+        // Compile the OTHER fallback into the matrix, so the hot loop does a single lookup.
+        // Whitespace/newline in the start state stays without a transition (skipped, not an error).
+        for (int s = 0; s < STATE_COUNT; s++) {
+            int other = STF[s * CLASS_COUNT + C_OTHER];
+            if (other == S_NONE) continue;
+            for (int c = 0; c < CLASS_COUNT; c++) {
+                if (s == S_START && (c == C_WS || c == C_NL)) continue;
+                if (STF[s * CLASS_COUNT + c] == S_NONE) STF[s * CLASS_COUNT + c] = other;
+            }
+        }
+    }
+
+    private static void initKinds() {
+        // States that require putCharBack (Star states)
+        for (int s : new int[]{S_ID_FIN, S_INT_FIN, S_FLOAT_FIN, S_MINUS_FIN, S_EQ_FIN,
+                S_DIV_FIN, S_GT_FIN, S_LT_FIN, S_NOT_FIN}) {
+            KIND[s] = K_STAR;
+        }
+        // Single / double char operators and closing quote consume the char and finalize
+        for (int s : new int[]{S_EQ_EQ, S_ARROW, S_GT_EQ, S_LT_EQ, S_NOT_EQ, S_OP, S_STR_FIN}) {
+            KIND[s] = K_FINAL;
+        }
+        KIND[S_COMMENT] = K_COMMENT;
+    }
+
+    private static void initCharClasses() {
+        Arrays.fill(ASCII_CLASS, (byte) C_OTHER);
+        for (char c = 'a'; c <= 'z'; c++) ASCII_CLASS[c] = C_LETTER;
+        for (char c = 'A'; c <= 'Z'; c++) ASCII_CLASS[c] = C_LETTER;
+        ASCII_CLASS['_'] = C_LETTER;
+        for (char c = '0'; c <= '9'; c++) ASCII_CLASS[c] = C_DIGIT;
+        ASCII_CLASS['.'] = C_DOT;
+        ASCII_CLASS[' '] = C_WS;
+        ASCII_CLASS['\t'] = C_WS;
+        ASCII_CLASS['\n'] = C_NL;
+        ASCII_CLASS['"'] = C_QUOTE;
+        ASCII_CLASS['-'] = C_MINUS;
+        ASCII_CLASS['>'] = C_GT;
+        ASCII_CLASS['<'] = C_LT;
+        ASCII_CLASS['='] = C_EQ;
+        ASCII_CLASS['/'] = C_SLASH;
+        ASCII_CLASS['!'] = C_EXCL;
         // Added semicolon ';' to operators
-        if ("+*^(){},:;".indexOf(c) != -1) return CharClass.OP;
-        return CharClass.OTHER;
+        for (char c : "+*^(){},:;".toCharArray()) ASCII_CLASS[c] = C_OP;
+    }
+
+    private static int classOfChar(int c) {
+        if (c < 128) return ASCII_CLASS[c];
+        // Supplementary code points are surrogate pairs in a String, which never form a token
+        if (c > Character.MAX_VALUE) return C_OTHER;
+        // Non-ASCII letters/digits (e.g. Cyrillic identifiers)
+        if (Character.isLetter(c)) return C_LETTER;
+        if (Character.isDigit(c)) return C_DIGIT;
+        return C_OTHER;
     }
 
     public List<Token> tokenize() {
         List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token != eofToken);
+
+        printTables();
+        return tokens;
+    }
+
+    /**
+     * Scans the whole program into a compact token buffer (no Token objects, no per-token Strings).
+     */
+    public TokenBuffer tokenizeToBuffer() {
+        TokenBuffer tokens = new TokenBuffer(pool.texts());
+        while (scan()) {
+            tokens.add(tokType, tokStart, tokEnd, tokLine, tokText);
+        }
+        tokens.add(TokenType.EOF, pos, pos, line, EOF_ID);
+        if (listener != null) buffer = tokens;
+        return tokens;
+    }
+
+    /**
+     * Same result as tokenizeToBuffer(), but large sources are split at line breaks and the chunks
+     * are scanned on the common ForkJoinPool.
+     */
+    public TokenBuffer tokenizeParallel() {
+        if (!scansInParallel()) return tokenizeToBuffer();
+        return tokenizeParallel(Math.min(ForkJoinPool.getCommonPoolParallelism() * 4, length / MIN_CHUNK));
+    }
+
+    // Whether tokenizeParallel() would split the source: there are workers and at least two chunks
+    public boolean scansInParallel() {
+        return pos == 0 && ForkJoinPool.getCommonPoolParallelism() >= 2 && length / MIN_CHUNK >= 2;
+    }
+
+    TokenBuffer tokenizeParallel(int chunks) {
+        if (chunks < 2 || pos != 0) return tokenizeToBuffer();
+
+        // Every chunk but the last ends right after a '\n'.
+        // A '\n' byte never occurs inside a multi-byte UTF-8 sequence, or between CR and LF.
+        List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+        int from = 0;
+        for (int i = 1; i <= chunks && from < length; i++) {
+            int to = i == chunks ? length : lineStartAfter((int) ((long) length * i / chunks));
+            if (to <= from) continue;
+            final int chunkFrom = from;
+            final int chunkTo = to;
+            tasks.add(ForkJoinPool.commonPool().submit(() -> scanChunk(chunkFrom, chunkTo, 1)));
+            from = to;
+        }
+
+        // Each chunk was scanned as if it started outside any token, on line 1.
+        // Walk them in order; a chunk whose guess was wrong (its start is inside a string literal
+        // that crosses the previous chunk end) or that failed is scanned again from the real position.
+        // Lexemes are interned into this lexer's pool in source order, so ids are deterministic.
+        List<Chunk> scanned = new ArrayList<>();
+        int line = 1;
+        int resume = -1;
+        for (ForkJoinTask<Chunk> task : tasks) {
+            Chunk chunk = task.join();
+            if (resume >= 0 || chunk.error != null) {
+                chunk = scanChunk(resume >= 0 ? resume : chunk.from, chunk.to, line);
+                if (chunk.error != null) throw chunk.error;
+            }
+            chunk.lineShift = line - chunk.firstLine;
+            chunk.globalIds = new int[chunk.pool.size()];
+            for (int id = 0; id < chunk.globalIds.length; id++) {
+                // Keywords and operators have the same id in every pool
+                chunk.globalIds[id] = id < FIXED_TEXTS.size() ? id : pool.intern(chunk.pool.start(id), chunk.pool.end(id));
+            }
+            scanned.add(chunk);
+            line = chunk.lastLine + chunk.lineShift;
+            resume = chunk.dangling;
+        }
+
+        // Copy the rows in parallel, each chunk into its own range. All rows are reserved before the
+        // first copy starts, since a reserve() that grows the arrays would drop rows copied into the old ones
+        int total = 0;
+        for (Chunk chunk : scanned) total += chunk.tokens.size();
+        TokenBuffer tokens = new TokenBuffer(pool.texts());
+        int at = tokens.reserve(total);
+        List<ForkJoinTask<?>> copies = new ArrayList<>();
+        for (Chunk chunk : scanned) {
+            int chunkAt = at;
+            copies.add(ForkJoinPool.commonPool().submit(
+                    () -> tokens.copyRows(chunkAt, chunk.tokens, chunk.lineShift, chunk.globalIds)));
+            at += chunk.tokens.size();
+        }
+        for (ForkJoinTask<?> copy : copies) copy.join();
+
+        pos = length;
+        this.line = line;
+        tokens.add(TokenType.EOF, pos, pos, line, EOF_ID);
+        if (listener != null) {
+            fillTables(tokens);
+            buffer = tokens;
+        }
+        return tokens;
+    }
+
+    // One chunk of a parallel scan, with lines and lexeme ids local to it
+    private static class Chunk {
+        final int from;
+        final int to;
+        final int firstLine;
+        TokenBuffer tokens;
+        LexemePool pool;
+        int lastLine;
+        int dangling = -1;
+        RuntimeException error;
+
+        // Set when the chunk is stitched
+        int lineShift;
+        int[] globalIds;
+
+        Chunk(int from, int to, int firstLine) {
+            this.from = from;
+            this.to = to;
+            this.firstLine = firstLine;
+        }
+    }
+
+    private Chunk scanChunk(int from, int to, int firstLine) {
+        Chunk chunk = new Chunk(from, to, firstLine);
+        Lexer lexer = new Lexer(input, bytes == null ? null : bytes.duplicate(), from, to, firstLine);
+        chunk.pool = lexer.pool;
+        chunk.tokens = new TokenBuffer(lexer.pool.texts());
+        try {
+            while (lexer.scan()) {
+                chunk.tokens.add(lexer.tokType, lexer.tokStart, lexer.tokEnd, lexer.tokLine, lexer.tokText);
+            }
+        } catch (RuntimeException e) {
+            chunk.error = e;
+        }
+        chunk.lastLine = lexer.line;
+        chunk.dangling = lexer.dangling;
+        return chunk;
+    }
+
+    // Builds the ID and const tables of a merged scan in source order, as processing() would have
+    private void fillTables(TokenBuffer tokens) {
+        boolean[] seenId = new boolean[pool.size()];
+        for (int i = 0; i < tokens.size() - 1; i++) {
+            TokenType type = tokens.type(i);
+            if (type == TokenType.IDENTIFIER) {
+                int text = tokens.textId(i);
+                if (!seenId[text]) {
+                    seenId[text] = true;
+                    tableOfId.put(tokens.text(i), tableOfId.size() + 1);
+                }
+            } else if (type == TokenType.INT) {
+                addToConstTable(tokens.text(i), "int");
+            } else if (type == TokenType.FLOAT) {
+                addToConstTable(tokens.text(i), "float");
+            } else if (type == TokenType.STRING) {
+                addToConstTable(tokens.text(i), "string");
+            }
+        }
+    }
+
+    // Offset just past the first '\n' at or after i (or the end of input)
+    private int lineStartAfter(int i) {
+        while (i < length) {
+            int c = bytes == null ? input.charAt(i) : bytes.get(i);
+            i++;
+            if (c == '\n') break;
+        }
+        return i;
+    }
+
+    /**
+     * Scans and returns the next token. After the end of input it keeps returning the same EOF token.
+     */
+    @Override
+    public Token nextToken() {
+        if (eofToken != null) return eofToken;
+        if (!scan()) {
+            eofToken = new Token(TokenType.EOF, "",line);
+            return eofToken;
+        }
+
+        String lexeme = pool.text(tokText);
+        if (listener != null) listener.token(tokLine, lexeme, tokType, tableIndex(tokType, lexeme));
+        return new Token(tokType, lexeme, tokLine);
+    }
+
+    // Scans the next token into tok* fields; false at the end of input
+    boolean scan() {
+        final String src = input;
+        final ByteBuffer buf = bytes;
+        final int length = this.length;
         int state = S_START;
-        StringBuilder lexeme = new StringBuilder();
+        int start = pos; // Offset where the current lexeme begins
 
-        while (pos < input.length()) {
-            char c = input.charAt(pos);
+        while (pos < length) {
+            int c;
+            int width = 1;
+            if (buf == null) {
+                c = src.charAt(pos);
+            } else {
+                c = buf.get(pos) & 0xFF;
+                if (c >= 0x80 || c == '\r') {
+                    c = decodeUnit(buf, pos);
+                    width = unitWidth;
+                }
+            }
 
             // 1. Comment Handling
             if (state == S_COMMENT) {
                 if (c == '\n') {
                     state = S_START;
                     line++;
-                    lexeme.setLength(0); // Clear buffer
+                    pos += width;
+                } else {
+                    // The body has no line breaks: jump straight to the end of the line
+                    pos = lineEnd(pos);
                 }
-                pos++;
                 continue;
             }
 
-            CharClass cls = classOfChar(c);
-            Integer nextState = null;
-
-            if (stf.containsKey(state)) nextState = stf.get(state).get(cls);
-
-            // =FIX HERE
-            // Check if it is a whitespace/newline in the start state.
-            // If yes, disable fallback to OTHER (to avoid going to S_ERR).
-            boolean isSpaceInStart = (state == S_START && (cls == CharClass.WS || cls == CharClass.NL));
-
-            if (!isSpaceInStart && nextState == null && stf.containsKey(state) && stf.get(state).containsKey(CharClass.OTHER)) {
-                nextState = stf.get(state).get(CharClass.OTHER);
-            }
+            int cls = classOfChar(c);
+            int nextState = STF[state * CLASS_COUNT + cls];
 
             // 2. Error / Skip handling
-            if (nextState == null) {
+            if (nextState == S_NONE) {
                 // If we are in Start and see Whitespace or NewLine, skip and update line count
-                if (state == S_START && (cls == CharClass.WS || cls == CharClass.NL)) {
-                    if (cls == CharClass.NL) line++;
-                    pos++;
+                if (state == S_START && (cls == C_WS || cls == C_NL)) {
+                    if (cls == C_NL) line++;
+                    pos += width;
+                    if (cls == C_WS) pos = skipRun(pos, R_BLANK);
                     continue;
                 }
                 // Fallback panic
-                throw new RuntimeException("Lexer Error line " + line + ": Unexpected char '" + c + "'");
+                throw new RuntimeException("Lexer Error line " + line + ": Unexpected char '" + Character.toString(c) + "'");
             }
 
             // EXPLICIT ERROR STATE CHECK
             if (nextState == S_ERR) {
-                throw new RuntimeException("Lexer Error line " + line + ": Invalid syntax or unexpected char '" + c + "'");
+                throw new RuntimeException("Lexer Error line " + line + ": Invalid syntax or unexpected char '" + Character.toString(c) + "'");
             }
 
-            // 3. Transition Logic
-            if (starStates.contains(nextState)) {
-                // Star state: Finalize, Put Char Back (do not inc pos)
-                processing(nextState, lexeme.toString(), tokens);
-                lexeme.setLength(0);
-                state = S_START;
-            } else {
-                // Direct Transitions (consume char)
-
-                // Special case: Single Char Operators or Double Operators
-                if (nextState == S_EQ_EQ || nextState == S_ARROW ||
-                        nextState == S_GT_EQ || nextState == S_LT_EQ ||
-                        nextState == S_NOT_EQ || nextState == S_OP) {
+            if (state == S_START) start = pos;
 
-                    lexeme.append(c);
-                    processing(nextState, lexeme.toString(), tokens);
-                    lexeme.setLength(0);
-                    state = S_START;
-                }
-                // String Final (consume closing quote)
-                else if (nextState == S_STR_FIN) {
-                    lexeme.append(c);
-                    processing(nextState, lexeme.toString(), tokens);
-                    lexeme.setLength(0);
-                    state = S_START;
-                }
-                // Comment Start (clear buffer of slashes)
-                else if (nextState == S_COMMENT) {
-                    lexeme.setLength(0);
+            // 3. Transition Logic
+            switch (KIND[nextState]) {
+                case K_STAR:
+                    // Star state: Finalize, Put Char Back (do not inc pos)
+                    processing(nextState, start, pos);
+                    return true;
+                case K_FINAL:
+                    // Single/double char operators and closing quote: consume char, then finalize
+                    pos += width;
+                    processing(nextState, start, pos);
+                    return true;
+                case K_COMMENT:
+                    pos += width;
                     state = S_COMMENT;
-                }
-                // Normal Accumulation
-                else {
-                    if (nextState != S_START) {
-                        lexeme.append(c);
-                    }
+                    break;
+                default:
+                    // Normal Accumulation
+                    pos += width;
                     state = nextState;
-                }
-                pos++;
+                    // Identifier and number states loop on themselves: take the whole ASCII run at once
+                    if (state == S_ID) pos = skipRun(pos, R_ID_PART);
+                    else if (state == S_INT || state == S_FLOAT) pos = skipRun(pos, R_DIGIT);
             }
         }
 
         // EOF Handling
-        if (lexeme.length() > 0) {
-            if (state == S_ID || state == S_INT || state == S_FLOAT) {
-                int finState = (state == S_ID) ? S_ID_FIN : (state == S_INT) ? S_INT_FIN : S_FLOAT_FIN;
-                processing(finState, lexeme.toString(), tokens);
-            }
+        if (state == S_ID || state == S_INT || state == S_FLOAT) {
+            int finState = (state == S_ID) ? S_ID_FIN : (state == S_INT) ? S_INT_FIN : S_FLOAT_FIN;
+            processing(finState, start, length);
+            return true;
         }
-        tokens.add(new Token(TokenType.EOF, "",line));
-
-        printTables();
-        return tokens;
+        if (state != S_START && state != S_COMMENT) dangling = start;
+        return false;
     }
 
-    private void processing(int state, String lexeme, List<Token> tokens) {
-        if (lexeme.isEmpty()) return;
+    // The token found by the last scan()
+    TokenType scannedType() { return tokType; }
+
+    int scannedStart() { return tokStart; }
+
+    int scannedEnd() { return tokEnd; }
+
+    int scannedLine() { return tokLine; }
 
+    String scannedText() { return pool.text(tokText); }
+
+    // Current line of the scanner (the EOF line once scan() returned false)
+    int line() { return line; }
+
+    private void processing(int state, int start, int end) {
         TokenType type;
-        String idx = "";
+        int text;
 
         switch (state) {
             case S_ID_FIN:
-                type = getKeyword(lexeme);
-                if (type == TokenType.IDENTIFIER) {
-                    if (!tableOfId.containsKey(lexeme)) {
-                        tableOfId.put(lexeme, tableOfId.size() + 1);
-                    }
-                    idx = String.valueOf(tableOfId.get(lexeme));
+                type = keywordAt(start, end);
+                if (type != TokenType.IDENTIFIER) {
+                    // Keywords reuse the shared literal, no slice needed
+                    text = KEYWORD_ID[type.ordinal()];
+                } else {
+                    int known = pool.size();
+                    text = pool.intern(start, end);
+                    if (text == known && listener != null) tableOfId.put(pool.text(text), tableOfId.size() + 1);
                 }
                 break;
             case S_INT_FIN:
                 type = TokenType.INT;
-                addToConstTable(lexeme, "int");
-                idx = String.valueOf(tableOfConst.size());
+                text = internConst(start, end, "int");
                 break;
             case S_FLOAT_FIN:
                 type = TokenType.FLOAT;
-                addToConstTable(lexeme, "float");
-                idx = String.valueOf(tableOfConst.size());
+                text = internConst(start, end, "float");
                 break;
             case S_STR_FIN:
                 type = TokenType.STRING;
-                addToConstTable(lexeme, "string");
-                idx = String.valueOf(tableOfConst.size());
+                text = internConst(start, end, "string");
+                break;
+            case S_OP:
+                char c = asciiAt(start);
+                type = getOpType(c);
+                text = OP_ID[c];
                 break;
-            // Operators
-            case S_EQ_FIN: type = TokenType.ASSIGN; break;
-            case S_EQ_EQ: type = TokenType.EQ; break;
-            case S_ARROW: type = TokenType.ARROW; break;
-            case S_MINUS_FIN: type = TokenType.MINUS; break;
-            case S_DIV_FIN: type = TokenType.SLASH; break;
-            case S_GT_FIN: type = TokenType.GT; break;
-            case S_GT_EQ: type = TokenType.GE; break;
-            case S_LT_FIN: type = TokenType.LT; break;
-            case S_LT_EQ: type = TokenType.LE; break;
-            case S_NOT_EQ: type = TokenType.NEQ; break;
-            case S_NOT_FIN: type = TokenType.NOT; break;
-            case S_OP: type = getOpType(lexeme); break;
-            default: type = TokenType.EOF;
-        }
-
-        tokens.add(new Token(type, lexeme,line));
-        String record = String.format("%-5d | %-15s | %-15s | %-5s", line, lexeme, type, idx);
-        tableOfSymb.add(record);
+            default:
+                // Operators have a fixed lexeme per final state
+                text = STATE_ID[state];
+                switch (state) {
+                    case S_EQ_FIN: type = TokenType.ASSIGN; break;
+                    case S_EQ_EQ: type = TokenType.EQ; break;
+                    case S_ARROW: type = TokenType.ARROW; break;
+                    case S_MINUS_FIN: type = TokenType.MINUS; break;
+                    case S_DIV_FIN: type = TokenType.SLASH; break;
+                    case S_GT_FIN: type = TokenType.GT; break;
+                    case S_GT_EQ: type = TokenType.GE; break;
+                    case S_LT_FIN: type = TokenType.LT; break;
+                    case S_LT_EQ: type = TokenType.LE; break;
+                    case S_NOT_EQ: type = TokenType.NEQ; break;
+                    case S_NOT_FIN: type = TokenType.NOT; break;
+                    default: type = TokenType.EOF;
+                }
+        }
+
+        tokType = type;
+        tokStart = start;
+        tokEnd = end;
+        tokLine = line;
+        tokText = text;
+    }
+
+    private int internConst(int start, int end, String type) {
+        int text = pool.intern(start, end);
+        if (listener != null) addToConstTable(pool.text(text), type);
+        return text;
+    }
+
+    // Index column of the parsing table (0 = none)
+    private int tableIndex(TokenType type, String lexeme) {
+        if (type == TokenType.IDENTIFIER) return tableOfId.get(lexeme);
+        if (type == TokenType.INT || type == TokenType.FLOAT || type == TokenType.STRING) {
+            return tableOfConst.size();
+        }
+        return 0;
+    }
+
+    // === Source access (char or byte mode) ===
+
+    // Only called at offsets known to hold an ASCII char
+    private char asciiAt(int i) {
+        return bytes == null ? input.charAt(i) : (char) (bytes.get(i) & 0xFF);
+    }
+
+    private boolean regionEquals(int start, String ascii) {
+        if (bytes == null) return input.startsWith(ascii, start);
+        for (int i = 0; i < ascii.length(); i++) {
+            if (bytes.get(start + i) != ascii.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // === Run skipping ===
+    // Fast paths for runs of one char class, so the DFA only runs at token boundaries.
+    // Runs stop at the first non-ASCII char, which goes back through the DFA.
+    // With jdk.incubator.vector in the boot layer, byte mode compares a vector of bytes at a time
+    // (VectorRuns) once a run outlasts SHORT_RUN; most identifiers and numbers end before that.
+
+    static final boolean VECTOR = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    // Runs, indexing RUNS
+    static final int R_BLANK = 0;
+    static final int R_ID_PART = 1;
+    static final int R_DIGIT = 2;
+
+    private static final boolean[][] RUNS = new boolean[3][128];
+    private static final int SHORT_RUN = 32;
+
+    static {
+        RUNS[R_BLANK][' '] = true;
+        RUNS[R_BLANK]['\t'] = true;
+        for (int c = 0; c < 128; c++) {
+            RUNS[R_DIGIT][c] = ASCII_CLASS[c] == C_DIGIT;
+            RUNS[R_ID_PART][c] = ASCII_CLASS[c] == C_LETTER || ASCII_CLASS[c] == C_DIGIT;
+        }
+    }
+
+    // First offset at or after i whose char is not in the run
+    private int skipRun(int i, int run) {
+        final boolean[] set = RUNS[run];
+        final int length = this.length;
+        if (bytes == null) {
+            final String src = input;
+            while (i < length) {
+                char c = src.charAt(i);
+                if (c >= 128 || !set[c]) break;
+                i++;
+            }
+            return i;
+        }
+        i = skipBytes(set, i, vector == null ? length : Math.min(length, i + SHORT_RUN));
+        if (vector != null && i < length && inRun(set, bytes.get(i))) {
+            i = skipBytes(set, vector.skipRun(i, run), length);
+        }
+        return i;
+    }
+
+    private int skipBytes(boolean[] set, int i, int end) {
+        final ByteBuffer buf = bytes;
+        while (i < end && inRun(set, buf.get(i))) i++;
+        return i;
+    }
+
+    private static boolean inRun(boolean[] set, byte b) {
+        return b >= 0 && set[b];
+    }
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    // Offset of the next line break at or after i (or the end of input).
+    // Char mode uses String.indexOf, which the JIT vectorizes; byte mode tests a vector, or without
+    // the module 8 bytes per step, for '\n' or '\r' (a CR also ends a line there).
+    // UTF-8 continuation bytes never match.
+    private int lineEnd(int i) {
+        if (bytes == null) {
+            int nl = input.indexOf('\n', i);
+            return nl < 0 || nl > length ? length : nl;
+        }
+        if (vector != null) i = vector.lineEnd(i);
+        final ByteBuffer buf = bytes;
+        while (i + 8 <= length) {
+            long word = buf.getLong(i);
+            if (hasZeroByte(word ^ ('\n' * ONES)) || hasZeroByte(word ^ ('\r' * ONES))) break;
+            i += 8;
+        }
+        while (i < length) {
+            byte b = buf.get(i);
+            if (b == '\n' || b == '\r') break;
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean hasZeroByte(long word) {
+        return ((word - ONES) & ~word & HIGHS) != 0;
+    }
+
+    // Width in bytes of the unit returned by the last decodeUnit() call
+    private int unitWidth;
+
+    // Decodes a non-ASCII UTF-8 sequence (or a CR / CRLF line break, read as a single newline) at pos.
+    // Malformed input decodes as U+FFFD, which the DFA rejects outside strings and comments.
+    private int decodeUnit(ByteBuffer buf, int pos) {
+        int b0 = buf.get(pos) & 0xFF;
+        unitWidth = 1;
+        if (b0 == '\r') {
+            // Same line breaks as BufferedReader.readLine: CRLF or a lone CR
+            if (pos + 1 < length && buf.get(pos + 1) == '\n') unitWidth = 2;
+            return '\n';
+        }
+        int n;
+        int cp;
+        if ((b0 & 0xE0) == 0xC0) { n = 2; cp = b0 & 0x1F; }
+        else if ((b0 & 0xF0) == 0xE0) { n = 3; cp = b0 & 0x0F; }
+        else if ((b0 & 0xF8) == 0xF0) { n = 4; cp = b0 & 0x07; }
+        else return 0xFFFD;
+        if (pos + n > length) return 0xFFFD;
+        for (int i = 1; i < n; i++) {
+            int b = buf.get(pos + i) & 0xFF;
+            if ((b & 0xC0) != 0x80) return 0xFFFD;
+            cp = (cp << 6) | (b & 0x3F);
+        }
+        unitWidth = n;
+        return cp;
     }
 
     private void addToConstTable(String lexeme, String type) {
@@ -326,55 +793,158 @@ public class Lexer {
         }
     }
 
-    private TokenType getKeyword(String text) {
-        switch (text) {
-            case "var": return TokenType.VAR;
-            case "const": return TokenType.CONST;
-            case "fun": return TokenType.FUN;
-            case "return": return TokenType.RETURN;
-            case "if": return TokenType.IF;
-            case "else": return TokenType.ELSE;
-            case "while": return TokenType.WHILE;
-            case "print": return TokenType.PRINT;
-            case "input": return TokenType.INPUT;
-            case "int": return TokenType.INT_TYPE;
-            case "float": return TokenType.FLOAT_TYPE;
-            case "bool": return TokenType.BOOL_TYPE;
-            case "string": return TokenType.STRING_TYPE;
-            case "true": return TokenType.TRUE;
-            case "false": return TokenType.FALSE;
-            default: return TokenType.IDENTIFIER;
-        }
-    }
-
-    private TokenType getOpType(String text) {
-        switch (text) {
-            case "+": return TokenType.PLUS;
-            case "*": return TokenType.STAR;
-            case "^": return TokenType.CARET;
-            case "(": return TokenType.LPAREN;
-            case ")": return TokenType.RPAREN;
-            case "{": return TokenType.LBRACE;
-            case "}": return TokenType.RBRACE;
-            case ":": return TokenType.COLON;
-            case ",": return TokenType.COMMA;
-            case "!": return TokenType.NOT;
+    // Fixed lexemes of operator final states, and of single char operators
+    private static final String[] STATE_TEXT = new String[STATE_COUNT];
+    private static final String[] OP_TEXT = new String[128];
+
+    // Fixed lexemes are preloaded into every pool; these arrays hold their ids
+    private static final List<String> FIXED_TEXTS = new ArrayList<>();
+    private static final int[] KEYWORD_ID = new int[TokenType.values().length];
+    private static final int[] STATE_ID = new int[STATE_COUNT];
+    private static final int[] OP_ID = new int[128];
+    private static final int EOF_ID;
+
+    static {
+        STATE_TEXT[S_ARROW] = "->";
+        STATE_TEXT[S_MINUS_FIN] = "-";
+        STATE_TEXT[S_EQ_FIN] = "=";
+        STATE_TEXT[S_EQ_EQ] = "==";
+        STATE_TEXT[S_DIV_FIN] = "/";
+        STATE_TEXT[S_GT_FIN] = ">";
+        STATE_TEXT[S_GT_EQ] = ">=";
+        STATE_TEXT[S_LT_FIN] = "<";
+        STATE_TEXT[S_LT_EQ] = "<=";
+        STATE_TEXT[S_NOT_EQ] = "!=";
+        STATE_TEXT[S_NOT_FIN] = "!";
+        for (char c : "+*^(){},:;".toCharArray()) OP_TEXT[c] = String.valueOf(c);
+    }
+
+    // Keyword text by TokenType ordinal
+    private static final String[] KEYWORD_TEXT = new String[TokenType.values().length];
+
+    static {
+        KEYWORD_TEXT[TokenType.VAR.ordinal()] = "var";
+        KEYWORD_TEXT[TokenType.CONST.ordinal()] = "const";
+        KEYWORD_TEXT[TokenType.FUN.ordinal()] = "fun";
+        KEYWORD_TEXT[TokenType.RETURN.ordinal()] = "return";
+        KEYWORD_TEXT[TokenType.IF.ordinal()] = "if";
+        KEYWORD_TEXT[TokenType.ELSE.ordinal()] = "else";
+        KEYWORD_TEXT[TokenType.WHILE.ordinal()] = "while";
+        KEYWORD_TEXT[TokenType.PRINT.ordinal()] = "print";
+        KEYWORD_TEXT[TokenType.INPUT.ordinal()] = "input";
+        KEYWORD_TEXT[TokenType.INT_TYPE.ordinal()] = "int";
+        KEYWORD_TEXT[TokenType.FLOAT_TYPE.ordinal()] = "float";
+        KEYWORD_TEXT[TokenType.BOOL_TYPE.ordinal()] = "bool";
+        KEYWORD_TEXT[TokenType.STRING_TYPE.ordinal()] = "string";
+        KEYWORD_TEXT[TokenType.TRUE.ordinal()] = "true";
+        KEYWORD_TEXT[TokenType.FALSE.ordinal()] = "false";
+    }
+
+    static {
+        for (int t = 0; t < KEYWORD_TEXT.length; t++) {
+            if (KEYWORD_TEXT[t] != null) KEYWORD_ID[t] = fixed(KEYWORD_TEXT[t]);
+        }
+        for (int s = 0; s < STATE_COUNT; s++) {
+            if (STATE_TEXT[s] != null) STATE_ID[s] = fixed(STATE_TEXT[s]);
+        }
+        for (int c = 0; c < OP_TEXT.length; c++) {
+            if (OP_TEXT[c] != null) OP_ID[c] = fixed(OP_TEXT[c]);
+        }
+        EOF_ID = fixed("");
+    }
+
+    private static int fixed(String text) {
+        FIXED_TEXTS.add(text);
+        return FIXED_TEXTS.size() - 1;
+    }
+
+    // Matches the source slice [start, end) against the keywords by length and first char,
+    // without building a String for it
+    private TokenType keywordAt(int start, int end) {
+        char c = asciiAt(start);
+        switch (end - start) {
+            case 2:
+                if (c == 'i') return match(start, TokenType.IF);
+                break;
+            case 3:
+                if (c == 'v') return match(start, TokenType.VAR);
+                if (c == 'f') return match(start, TokenType.FUN);
+                if (c == 'i') return match(start, TokenType.INT_TYPE);
+                break;
+            case 4:
+                if (c == 'e') return match(start, TokenType.ELSE);
+                if (c == 'b') return match(start, TokenType.BOOL_TYPE);
+                if (c == 't') return match(start, TokenType.TRUE);
+                break;
+            case 5:
+                if (c == 'c') return match(start, TokenType.CONST);
+                if (c == 'w') return match(start, TokenType.WHILE);
+                if (c == 'p') return match(start, TokenType.PRINT);
+                if (c == 'i') return match(start, TokenType.INPUT);
+                if (c == 'f') {
+                    TokenType t = match(start, TokenType.FLOAT_TYPE);
+                    return t != TokenType.IDENTIFIER ? t : match(start, TokenType.FALSE);
+                }
+                break;
+            case 6:
+                if (c == 'r') return match(start, TokenType.RETURN);
+                if (c == 's') return match(start, TokenType.STRING_TYPE);
+                break;
+        }
+        return TokenType.IDENTIFIER;
+    }
+
+    private TokenType match(int start, TokenType keyword) {
+        return regionEquals(start, KEYWORD_TEXT[keyword.ordinal()]) ? keyword : TokenType.IDENTIFIER;
+    }
+
+    private TokenType getOpType(char c) {
+        switch (c) {
+            case '+': return TokenType.PLUS;
+            case '*': return TokenType.STAR;
+            case '^': return TokenType.CARET;
+            case '(': return TokenType.LPAREN;
+            case ')': return TokenType.RPAREN;
+            case '{': return TokenType.LBRACE;
+            case '}': return TokenType.RBRACE;
+            case ':': return TokenType.COLON;
+            case ',': return TokenType.COMMA;
+            case '!': return TokenType.NOT;
             default: return TokenType.EOF;
         }
     }
 
+    /**
+     * Reports the ID and const tables (and the rows of a token buffer) to the listener, if any.
+     */
     public void printTables() {
-        System.out.println("\n 3.2.2 Parsing Table ");
-        System.out.println(String.format("%-5s | %-15s | %-15s | %-5s", "Line", "Lexeme", "Token", "Index"));
-        System.out.println("-------------------------------------------------------");
-        for (String row : tableOfSymb) {
-            System.out.println(row);
+        if (listener == null) return;
+        if (buffer != null) {
+            reportBufferRows();
+            buffer = null;
         }
+        listener.symbolTables(tableOfId, tableOfConst);
+    }
 
-        System.out.println("\n 3.2.3 ID Table ");
-        tableOfId.forEach((k, v) -> System.out.println(k + " -> " + v));
-
-        System.out.println("\n 3.2.4 Const Table ");
-        tableOfConst.forEach((k, v) -> System.out.println(k + " -> " + v));
+    // Rows of a buffered scan are produced only here
+    private void reportBufferRows() {
+        boolean[] seenConst = new boolean[pool.size()];
+        int constCount = 0;
+        for (int i = 0; i < buffer.size() - 1; i++) {
+            TokenType type = buffer.type(i);
+            String lexeme = buffer.text(i);
+            int idx = 0;
+            if (type == TokenType.IDENTIFIER) {
+                idx = tableOfId.get(lexeme);
+            } else if (type == TokenType.INT || type == TokenType.FLOAT || type == TokenType.STRING) {
+                int text = buffer.textId(i);
+                if (!seenConst[text]) {
+                    seenConst[text] = true;
+                    constCount++;
+                }
+                idx = constCount;
+            }
+            listener.token(buffer.line(i), lexeme, type, idx);
+        }
     }
-}
\ No newline at end of file
+}
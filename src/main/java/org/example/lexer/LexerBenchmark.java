@@ -0,0 +1,44 @@
+package org.example.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Times tokenizeToBuffer() on generated comment-, identifier- and blank-heavy sources, as a String
+ * and as a direct buffer (like a mapped file). Run it with and without the vector module to compare
+ * the run skipping paths:
+ *   java -cp target/classes org.example.lexer.LexerBenchmark
+ *   java --add-modules jdk.incubator.vector -cp target/classes org.example.lexer.LexerBenchmark
+ */
+public class LexerBenchmark {
+    private static final int SIZE = 20_000_000; // Chars per source
+    private static final int RUNS = 20;         // The best one is reported
+
+    public static void main(String[] args) {
+        System.out.println("Vector run skipping: " + (Lexer.VECTOR ? "on" : "off"));
+        bench("comments", "// a fairly long comment line describing what the next statement does\nvar x: int = 1\n");
+        bench("identifiers", "var someLongIdentifierName_42: int = anotherQuiteLongIdentifier + 1234567 * yetAnotherName\n");
+        bench("blanks", "                                        x = y\n\t\t\t\t\t\t\t\t    print(x)\n");
+    }
+
+    private static void bench(String name, String line) {
+        String source = line.repeat(SIZE / line.length());
+        byte[] utf8 = source.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(utf8.length).put(utf8).flip();
+
+        long bestString = Long.MAX_VALUE;
+        long bestBytes = Long.MAX_VALUE;
+        int tokens = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long t0 = System.nanoTime();
+            tokens = new Lexer(source).tokenizeToBuffer().size();
+            long t1 = System.nanoTime();
+            new Lexer(direct).tokenizeToBuffer();
+            long t2 = System.nanoTime();
+            bestString = Math.min(bestString, t1 - t0);
+            bestBytes = Math.min(bestBytes, t2 - t1);
+        }
+        System.out.printf("%-12s %,d tokens  String %d ms  bytes %d ms%n",
+                name, tokens, bestString / 1_000_000, bestBytes / 1_000_000);
+    }
+}
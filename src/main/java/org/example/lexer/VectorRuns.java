@@ -0,0 +1,74 @@
+package org.example.lexer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static jdk.incubator.vector.VectorOperators.GE;
+import static jdk.incubator.vector.VectorOperators.LE;
+
+// Byte mode run skipping for Lexer: compares a whole vector of bytes per step and returns where
+// the run (or the line) stops, or the last offset a full vector fits before; Lexer finishes the tail.
+final class VectorRuns {
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+
+    private final MemorySegment bytes;
+    private final int length;
+
+    VectorRuns(ByteBuffer bytes, int length) {
+        this.bytes = MemorySegment.ofBuffer(bytes.duplicate().clear());
+        this.length = length;
+    }
+
+    // A byte is out of the run when it is not in the run's ASCII set (bytes of UTF-8 sequences never are)
+    int skipRun(int i, int run) {
+        final int lanes = BYTES.length();
+        final int limit = length - lanes;
+        final MemorySegment src = bytes;
+        switch (run) {
+            case Lexer.R_BLANK:
+                while (i <= limit) {
+                    ByteVector v = ByteVector.fromMemorySegment(BYTES, src, i, ByteOrder.nativeOrder());
+                    long out = v.eq((byte) ' ').or(v.eq((byte) '\t')).not().toLong();
+                    if (out != 0) return i + Long.numberOfTrailingZeros(out);
+                    i += lanes;
+                }
+                return i;
+            case Lexer.R_DIGIT:
+                while (i <= limit) {
+                    ByteVector v = ByteVector.fromMemorySegment(BYTES, src, i, ByteOrder.nativeOrder());
+                    long out = v.compare(GE, (byte) '0').and(v.compare(LE, (byte) '9')).not().toLong();
+                    if (out != 0) return i + Long.numberOfTrailingZeros(out);
+                    i += lanes;
+                }
+                return i;
+            default:
+                while (i <= limit) {
+                    ByteVector v = ByteVector.fromMemorySegment(BYTES, src, i, ByteOrder.nativeOrder());
+                    ByteVector lower = v.or((byte) 0x20);
+                    long out = lower.compare(GE, (byte) 'a').and(lower.compare(LE, (byte) 'z'))
+                            .or(v.compare(GE, (byte) '0').and(v.compare(LE, (byte) '9')))
+                            .or(v.eq((byte) '_')).not().toLong();
+                    if (out != 0) return i + Long.numberOfTrailingZeros(out);
+                    i += lanes;
+                }
+                return i;
+        }
+    }
+
+    // '\n' or '\r'
+    int lineEnd(int i) {
+        final int lanes = BYTES.length();
+        final int limit = length - lanes;
+        while (i <= limit) {
+            ByteVector v = ByteVector.fromMemorySegment(BYTES, bytes, i, ByteOrder.nativeOrder());
+            long end = v.eq((byte) '\n').or(v.eq((byte) '\r')).toLong();
+            if (end != 0) return i + Long.numberOfTrailingZeros(end);
+            i += lanes;
+        }
+        return i;
+    }
+}
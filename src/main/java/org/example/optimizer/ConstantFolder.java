@@ -0,0 +1,351 @@
+package org.example.optimizer;
+
+import org.example.ast.*;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AST pass between SemanticAnalyzer and code generation. Folds operators on literals, replaces
+ * uses of constants with their values and drops if/while branches whose condition is constant.
+ * Reads the semantic annotations (types, widenToFloat, bindings) and keeps them on the nodes it builds.
+ */
+public class ConstantFolder {
+    // Literal value of each folded constant, by the binding of its declaration
+    private final Map<Binding, Expr> constants = new IdentityHashMap<>();
+
+    public List<Stmt> optimize(List<Stmt> statements) {
+        // Top-level code first, as in the semantic pass: function bodies may use constants declared after them
+        Stmt[] folded = new Stmt[statements.size()];
+        for (int i = 0; i < folded.length; i++) {
+            if (!(statements.get(i) instanceof FunDecl)) folded[i] = foldStmt(statements.get(i));
+        }
+        for (int i = 0; i < folded.length; i++) {
+            if (statements.get(i) instanceof FunDecl f) folded[i] = foldStmt(f);
+        }
+
+        List<Stmt> result = new ArrayList<>(folded.length);
+        for (Stmt stmt : folded) {
+            if (stmt != null) result.add(stmt);
+        }
+        return result;
+    }
+
+    // === Statements ===
+    // null means the statement is removed
+
+    private Stmt foldStmt(Stmt stmt) {
+        return switch (stmt) {
+            case VarDecl v -> {
+                if (v.initializer == null) yield v;
+                Expr init = fold(v.initializer);
+                if (v.isConstant && isLiteral(init)) constants.put(v.binding, init);
+                if (init == v.initializer) yield v;
+                VarDecl copy = new VarDecl(v.name, v.type, init, v.isConstant, v.line);
+                copy.binding = v.binding;
+                yield copy;
+            }
+            case AssignStmt a -> {
+                Expr value = fold(a.value);
+                if (value == a.value) yield a;
+                AssignStmt copy = new AssignStmt(a.name, value, a.line);
+                copy.binding = a.binding;
+                yield copy;
+            }
+            case PrintStmt p -> {
+                Expr expr = fold(p.expr);
+                yield expr == p.expr ? p : new PrintStmt(expr, p.line);
+            }
+            case ReturnStmt r -> {
+                Expr expr = fold(r.expr);
+                yield expr == r.expr ? r : new ReturnStmt(expr, r.line);
+            }
+            case ExprStmt e -> {
+                Expr expr = fold(e.expr);
+                // A value without side effects is only computed to be dropped
+                if (isLiteral(expr) || expr instanceof Variable) yield null;
+                yield expr == e.expr ? e : new ExprStmt(expr, e.line);
+            }
+            case InputStmt inp -> inp;
+            case BlockStmt block -> {
+                List<Stmt> body = foldAll(block.statements);
+                yield body == block.statements ? block : new BlockStmt(body, block.line);
+            }
+            case IfStmt i -> {
+                Expr condition = fold(i.condition);
+                if (condition instanceof BoolLiteral b && !declaresFunction(b.value ? i.elseBranch : i.thenBranch)) {
+                    Stmt taken = b.value ? i.thenBranch : i.elseBranch;
+                    yield taken == null ? null : foldStmt(taken);
+                }
+                Stmt thenBranch = orEmpty(foldStmt(i.thenBranch), i.line);
+                Stmt elseBranch = i.elseBranch == null ? null : orEmpty(foldStmt(i.elseBranch), i.line);
+                if (condition == i.condition && thenBranch == i.thenBranch && elseBranch == i.elseBranch) yield i;
+                yield new IfStmt(condition, thenBranch, elseBranch, i.line);
+            }
+            case WhileStmt w -> {
+                Expr condition = fold(w.condition);
+                if (condition instanceof BoolLiteral b && !b.value && !declaresFunction(w.body)) yield null;
+                Stmt body = orEmpty(foldStmt(w.body), w.line);
+                if (condition == w.condition && body == w.body) yield w;
+                yield new WhileStmt(condition, body, w.line);
+            }
+            case FunDecl f -> {
+                BlockStmt body = (BlockStmt) foldStmt(f.body);
+                yield body == f.body ? f : new FunDecl(f.name, f.returnType, f.params, body, f.line);
+            }
+        };
+    }
+
+    // Returns the same list when nothing changed
+    private List<Stmt> foldAll(List<Stmt> statements) {
+        List<Stmt> result = null;
+        for (int i = 0; i < statements.size(); i++) {
+            Stmt stmt = statements.get(i);
+            Stmt folded = foldStmt(stmt);
+            if (folded != stmt && result == null) result = new ArrayList<>(statements.subList(0, i));
+            if (result != null && folded != null) result.add(folded);
+        }
+        return result != null ? result : statements;
+    }
+
+    private static Stmt orEmpty(Stmt stmt, int line) {
+        return stmt != null ? stmt : new BlockStmt(new ArrayList<>(), line);
+    }
+
+    // A function declared in a dead branch is still callable from elsewhere, so the branch is kept
+    private static boolean declaresFunction(Stmt stmt) {
+        return switch (stmt) {
+            case null -> false;
+            case FunDecl f -> true;
+            case BlockStmt block -> block.statements.stream().anyMatch(ConstantFolder::declaresFunction);
+            case IfStmt i -> declaresFunction(i.thenBranch) || declaresFunction(i.elseBranch);
+            case WhileStmt w -> declaresFunction(w.body);
+            default -> false;
+        };
+    }
+
+    // === Expressions ===
+
+    private Expr fold(Expr expr) {
+        return switch (expr) {
+            // An int literal read as float is emitted as a float literal, without the conversion
+            case IntLiteral i when i.widenToFloat -> annotate(new FloatLiteral(i.value, i.line), GorbType.FLOAT, false);
+            case Variable v -> {
+                Expr value = constants.get(v.binding);
+                yield value != null ? fold(copy(value, v.line, v.widenToFloat)) : v;
+            }
+            case BinaryExpr b -> foldBinary(b);
+            case CallExpr c -> {
+                List<Expr> args = null;
+                for (int i = 0; i < c.args.size(); i++) {
+                    Expr arg = fold(c.args.get(i));
+                    if (arg != c.args.get(i) && args == null) args = new ArrayList<>(c.args.subList(0, i));
+                    if (args != null) args.add(arg);
+                }
+                if (args == null) yield c;
+                yield annotate(new CallExpr(c.name, args, c.line), c.type, c.widenToFloat);
+            }
+            default -> expr;
+        };
+    }
+
+    private Expr foldBinary(BinaryExpr b) {
+        Expr left = fold(b.left);
+        Expr right = fold(b.right);
+
+        if (isLiteral(left) && isLiteral(right)) {
+            Expr value = evaluate(b, left, right);
+            if (value != null) return value;
+        }
+
+        // x * 1, 1 * x, x / 1; and x + 0, 0 + x, x - 0 for ints (for floats, -0.0 + 0 is 0.0)
+        // The semantic pass already widened an int x to the type of the result
+        if (b.op == BinaryOp.MUL && isOne(left)) return widened(right, right.widenToFloat || b.widenToFloat);
+        if ((b.op == BinaryOp.MUL || b.op == BinaryOp.DIV) && isOne(right)) return widened(left, left.widenToFloat || b.widenToFloat);
+        if (b.type == GorbType.INT) {
+            if (b.op == BinaryOp.ADD && isZero(left)) return widened(right, b.widenToFloat);
+            if ((b.op == BinaryOp.ADD || b.op == BinaryOp.SUB) && isZero(right)) return widened(left, b.widenToFloat);
+        }
+
+        if (left == b.left && right == b.right) return b;
+        return annotate(new BinaryExpr(left, b.op, right, b.line), b.type, b.widenToFloat);
+    }
+
+    // Value of an operator on two literals, or null when it is left to run time
+    private static Expr evaluate(BinaryExpr b, Expr left, Expr right) {
+        Object value = evaluate(b.op, b.type, literalValue(left), literalValue(right));
+        return switch (value) {
+            case null -> null;
+            case Integer i when b.widenToFloat -> floatLiteral(i, b.line);
+            case Integer i -> annotate(new IntLiteral(i, b.line), GorbType.INT, false);
+            case Double d -> floatLiteral(d, b.line);
+            case Boolean bool -> annotate(new BoolLiteral(bool, b.line), GorbType.BOOL, false);
+            default -> annotate(new StringLiteral((String) value, b.line), GorbType.STRING, false);
+        };
+    }
+
+    /**
+     * Value of an operator with result type type on two constants (Integer, Double, Boolean or
+     * String; an Integer operand of a float operator is read as float), or null when it is left
+     * to run time. Shared with the IR optimizer.
+     */
+    public static Object evaluate(BinaryOp op, GorbType type, Object left, Object right) {
+        switch (type) {
+            case STRING -> {
+                // Ints print the same on every backend; floats and bools do not (e.g. "3.0" / "3", "1" / "True")
+                String l = concatText(left);
+                String r = concatText(right);
+                return l == null || r == null ? null : l + r;
+            }
+            case BOOL -> {
+                return compare(op, left, right);
+            }
+            case INT -> {
+                long l = (Integer) left;
+                long r = (Integer) right;
+                double value = switch (op) {
+                    case ADD -> l + r;
+                    case SUB -> l - r;
+                    case MUL -> l * r;
+                    // Computed in float and truncated, as both backends do
+                    case POW -> (long) Math.pow(l, r);
+                    default -> Double.NaN;
+                };
+                // Python ints do not overflow and CIL int32 wraps: results out of range stay at run time
+                if (Double.isNaN(value) || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) return null;
+                return (int) value;
+            }
+            case FLOAT -> {
+                double l = ((Number) left).doubleValue();
+                double r = ((Number) right).doubleValue();
+                double value = switch (op) {
+                    case ADD -> l + r;
+                    case SUB -> l - r;
+                    case MUL -> l * r;
+                    case DIV -> r == 0 ? Double.NaN : l / r;
+                    case POW -> Math.pow(l, r);
+                    default -> Double.NaN;
+                };
+                return isPrintable(value) ? value : null;
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+
+    private static Boolean compare(BinaryOp op, Object left, Object right) {
+        if (left instanceof Boolean l && right instanceof Boolean r) {
+            if (op == BinaryOp.EQ) return l.booleanValue() == r.booleanValue();
+            if (op == BinaryOp.NEQ) return l.booleanValue() != r.booleanValue();
+            return null;
+        }
+        if (left instanceof String l && right instanceof String r) {
+            if (op == BinaryOp.EQ) return l.equals(r);
+            if (op == BinaryOp.NEQ) return !l.equals(r);
+            return null;
+        }
+        if (!(left instanceof Number ln) || !(right instanceof Number rn)) return null; // e.g. 1 == true
+        double l = ln.doubleValue();
+        double r = rn.doubleValue();
+        return switch (op) {
+            case EQ -> l == r;
+            case NEQ -> l != r;
+            case LT -> l < r;
+            case LE -> l <= r;
+            case GT -> l > r;
+            case GE -> l >= r;
+            default -> null;
+        };
+    }
+
+    private static String concatText(Object value) {
+        return value instanceof String || value instanceof Integer ? String.valueOf(value) : null;
+    }
+
+    // A float literal must be finite and print without an exponent, which the backends do not read
+    public static boolean isPrintable(double value) {
+        return Double.isFinite(value) && String.valueOf(value).indexOf('E') < 0;
+    }
+
+    private static Expr floatLiteral(double value, int line) {
+        if (!isPrintable(value)) return null;
+        return annotate(new FloatLiteral(value, line), GorbType.FLOAT, false);
+    }
+
+    // === Helpers ===
+
+    // An int literal read as float is a float operand
+    private static Object literalValue(Expr e) {
+        return switch (e) {
+            case IntLiteral i -> i.widenToFloat ? (Object) (double) i.value : (Object) i.value;
+            case FloatLiteral f -> f.value;
+            case BoolLiteral b -> b.value;
+            case StringLiteral str -> str.value;
+            default -> null;
+        };
+    }
+
+    private static boolean isLiteral(Expr e) {
+        return e instanceof IntLiteral || e instanceof FloatLiteral || e instanceof BoolLiteral || e instanceof StringLiteral;
+    }
+
+    private static boolean isNumber(Expr e) {
+        return e instanceof IntLiteral || e instanceof FloatLiteral;
+    }
+
+    private static double number(Expr e) {
+        return e instanceof IntLiteral i ? i.value : ((FloatLiteral) e).value;
+    }
+
+    private static boolean isOne(Expr e) {
+        return isNumber(e) && number(e) == 1;
+    }
+
+    private static boolean isZero(Expr e) {
+        return e instanceof IntLiteral i && i.value == 0;
+    }
+
+    private static <T extends Expr> T annotate(T expr, GorbType type, boolean widenToFloat) {
+        expr.type = type;
+        expr.widenToFloat = widenToFloat;
+        return expr;
+    }
+
+    private static Expr widened(Expr e, boolean widenToFloat) {
+        return copy(e, lineOf(e), widenToFloat);
+    }
+
+    // Shallow copy with another line and widening flag; nodes of the input AST are never modified
+    private static Expr copy(Expr e, int line, boolean widenToFloat) {
+        if (e.widenToFloat == widenToFloat && line == lineOf(e)) return e;
+        Expr copy = switch (e) {
+            case IntLiteral i -> new IntLiteral(i.value, line);
+            case FloatLiteral f -> new FloatLiteral(f.value, line);
+            case BoolLiteral b -> new BoolLiteral(b.value, line);
+            case StringLiteral s -> new StringLiteral(s.value, line);
+            case Variable v -> {
+                Variable copyVar = new Variable(v.name, line);
+                copyVar.binding = v.binding;
+                yield copyVar;
+            }
+            case BinaryExpr b -> new BinaryExpr(b.left, b.op, b.right, line);
+            case CallExpr c -> new CallExpr(c.name, c.args, line);
+        };
+        return annotate(copy, e.type, widenToFloat);
+    }
+
+    private static int lineOf(Expr e) {
+        return switch (e) {
+            case IntLiteral i -> i.line;
+            case FloatLiteral f -> f.line;
+            case BoolLiteral b -> b.line;
+            case StringLiteral s -> s.line;
+            case Variable v -> v.line;
+            case BinaryExpr b -> b.line;
+            case CallExpr c -> c.line;
+        };
+    }
+}
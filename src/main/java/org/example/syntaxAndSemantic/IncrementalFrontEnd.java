@@ -0,0 +1,194 @@
+package org.example.syntaxAndSemantic;
+
+import org.example.ast.*;
+import org.example.lexer.IncrementalLexer;
+import org.example.tokens.TokenBuffer;
+import org.example.tokens.TokenType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lexer -> Parser -> SemanticAnalyzer for a source that is edited in place (editor / watch mode).
+ * An edit rescans only the damaged tokens and re-parses only the top-level statements (a whole
+ * FunDecl for an edit in a function body) around them; the other statements are reused.
+ */
+public class IncrementalFrontEnd {
+    private final IncrementalLexer lexer;
+
+    // Top-level statements, and the token index each one starts at.
+    // statements is null after a syntax error: the next edit re-parses the whole program.
+    private List<Stmt> statements;
+    private int[] starts = new int[16];
+    private int count = 0;
+
+    private SemanticAnalyzer semantic;
+
+    public IncrementalFrontEnd(String source) {
+        this.lexer = new IncrementalLexer(source);
+        parseAll();
+        analyze();
+    }
+
+    public String source() {
+        return lexer.source();
+    }
+
+    public List<Stmt> statements() {
+        return statements;
+    }
+
+    public SemanticAnalyzer semantic() {
+        return semantic;
+    }
+
+    /**
+     * Replaces removed chars at offset with inserted and brings the AST and the semantic check up to date.
+     * Lexer, syntax and semantic errors are thrown as usual; the edit is kept either way.
+     */
+    public List<Stmt> edit(int offset, int removed, String inserted) {
+        IncrementalLexer.Damage damage;
+        try {
+            damage = lexer.edit(offset, removed, inserted);
+        } catch (RuntimeException e) {
+            statements = null;
+            throw e;
+        }
+
+        if (statements == null || damage.first == 0) {
+            parseAll();
+        } else {
+            reparse(damage);
+        }
+        analyze();
+        return statements;
+    }
+
+    private void parseAll() {
+        statements = null;
+        List<Stmt> parsed = new ArrayList<>();
+        count = 0;
+        TokenBuffer tokens = lexer.tokens();
+        tokens.seek(0);
+        Parser parser = new Parser(tokens);
+        while (tokens.type() != TokenType.EOF) {
+            addStart(tokens.position());
+            parsed.add(parser.parseStatement());
+        }
+        statements = parsed;
+    }
+
+    private void reparse(IncrementalLexer.Damage damage) {
+        int shift = (damage.newEnd - damage.first) - (damage.oldEnd - damage.first);
+
+        // The parser looks one token ahead, so the statement holding the token before the damage
+        // may also end differently (e.g. "x = a" followed by an inserted "+ b")
+        int from = statementAt(damage.first - 1);
+        TokenBuffer tokens = lexer.tokens();
+        tokens.seek(from < count ? starts[from] : 0);
+        Parser parser = new Parser(tokens);
+
+        List<Stmt> previous = statements;
+        List<Stmt> parsed = new ArrayList<>();
+        int[] oldStarts = Arrays.copyOf(starts, count);
+        int oldCount = count;
+        count = from;
+        statements = null;
+
+        // Parse until a statement boundary past the damage is an old statement boundary
+        int reuse = oldCount;
+        int q = from + 1;
+        while (tokens.type() != TokenType.EOF) {
+            int p = tokens.position();
+            if (p >= damage.newEnd) {
+                int oldP = p - shift;
+                while (q < oldCount && oldStarts[q] < oldP) q++;
+                if (q < oldCount && oldStarts[q] == oldP) {
+                    reuse = q;
+                    break;
+                }
+            }
+            addStart(p);
+            parsed.add(parser.parseStatement());
+        }
+
+        List<Stmt> result = new ArrayList<>(from + parsed.size() + oldCount - reuse);
+        result.addAll(previous.subList(0, from));
+        result.addAll(parsed);
+        for (int i = reuse; i < oldCount; i++) {
+            addStart(oldStarts[i] + shift);
+            Stmt stmt = previous.get(i);
+            result.add(damage.lineShift == 0 ? stmt : shiftLines(stmt, damage.lineShift));
+        }
+        statements = result;
+    }
+
+    private void analyze() {
+        semantic = new SemanticAnalyzer();
+        semantic.analyze(statements);
+    }
+
+    // Index of the statement holding token i (the last one starting at or before it)
+    private int statementAt(int i) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] <= i) lo = mid + 1;
+            else hi = mid;
+        }
+        return Math.max(lo - 1, 0);
+    }
+
+    private void addStart(int token) {
+        if (count == starts.length) starts = Arrays.copyOf(starts, count * 2);
+        starts[count++] = token;
+    }
+
+    // === Line shifting ===
+    // AST structure is immutable (analyze() rewrites only the type annotations), so reused statements
+    // below an edit that added or removed lines are copied
+
+    private Stmt shiftLines(Stmt stmt, int by) {
+        if (stmt == null) return null;
+        return switch (stmt) {
+            case VarDecl s -> new VarDecl(s.name, s.type, shiftLines(s.initializer, by), s.isConstant, s.line + by);
+            case AssignStmt s -> new AssignStmt(s.name, shiftLines(s.value, by), s.line + by);
+            case FunDecl s -> {
+                List<VarDecl> params = new ArrayList<>();
+                for (VarDecl param : s.params) params.add((VarDecl) shiftLines(param, by));
+                yield new FunDecl(s.name, s.returnType, params, (BlockStmt) shiftLines(s.body, by), s.line + by);
+            }
+            case BlockStmt s -> {
+                List<Stmt> body = new ArrayList<>();
+                for (Stmt inner : s.statements) body.add(shiftLines(inner, by));
+                yield new BlockStmt(body, s.line + by);
+            }
+            case IfStmt s -> new IfStmt(shiftLines(s.condition, by), shiftLines(s.thenBranch, by),
+                    shiftLines(s.elseBranch, by), s.line + by);
+            case WhileStmt s -> new WhileStmt(shiftLines(s.condition, by), shiftLines(s.body, by), s.line + by);
+            case PrintStmt s -> new PrintStmt(shiftLines(s.expr, by), s.line + by);
+            case InputStmt s -> new InputStmt(s.variableName, s.line + by);
+            case ReturnStmt s -> new ReturnStmt(shiftLines(s.expr, by), s.line + by);
+            case ExprStmt s -> new ExprStmt(shiftLines(s.expr, by), s.line + by);
+        };
+    }
+
+    private Expr shiftLines(Expr expr, int by) {
+        if (expr == null) return null;
+        return switch (expr) {
+            case BinaryExpr e -> new BinaryExpr(shiftLines(e.left, by), e.op, shiftLines(e.right, by), e.line + by);
+            case CallExpr e -> {
+                List<Expr> args = new ArrayList<>();
+                for (Expr arg : e.args) args.add(shiftLines(arg, by));
+                yield new CallExpr(e.name, args, e.line + by);
+            }
+            case Variable e -> new Variable(e.name, e.line + by);
+            case IntLiteral e -> new IntLiteral(e.value, e.line + by);
+            case FloatLiteral e -> new FloatLiteral(e.value, e.line + by);
+            case BoolLiteral e -> new BoolLiteral(e.value, e.line + by);
+            case StringLiteral e -> new StringLiteral(e.value, e.line + by);
+        };
+    }
+}
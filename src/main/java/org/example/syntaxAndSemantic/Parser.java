@@ -2,39 +2,60 @@ package org.example.syntaxAndSemantic;
 
 import org.example.ast.*;
 import org.example.tokens.Token;
+import org.example.tokens.TokenCursor;
+import org.example.tokens.TokenStream;
 import org.example.tokens.TokenType;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Parser {
-    private final List<Token> tokens;
-    private int current = 0;
+    // Either a lazy TokenStream or a TokenBuffer; the parser only reads the current token
+    private final TokenCursor tokens;
 
+    // Adapter for an already tokenized program
     public Parser(List<Token> tokens) {
+        this(TokenStream.of(tokens));
+    }
+
+    public Parser(TokenCursor tokens) {
         this.tokens = tokens;
     }
 
     // Helpers
 
-    private Token peek() { return tokens.get(current); }
-
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().type == type;
+        return tokens.type() == type;
     }
 
-    private Token consume(TokenType type, String message) {
-        if (check(type)) return advance();
-        throw new RuntimeException(message + " at line " + peek().line);
+    // Consumes the expected token and returns its line
+    private int consume(TokenType type, String message) {
+        expect(type, message);
+        return advance();
     }
 
-    private Token advance() {
-        if (!isAtEnd()) current++;
-        return tokens.get(current - 1);
+    // Consumes the current token and returns its line
+    private int advance() {
+        int line = tokens.line();
+        tokens.advance();
+        return line;
     }
 
-    private boolean isAtEnd() { return peek().type == TokenType.EOF; }
+    // Consumes the expected token and returns its text
+    private String consumeText(TokenType type, String message) {
+        expect(type, message);
+        String text = tokens.text();
+        tokens.advance();
+        return text;
+    }
+
+    private void expect(TokenType type, String message) {
+        if (!check(type)) throw new RuntimeException(message + " at line " + tokens.line());
+    }
+
+    private boolean isAtEnd() { return tokens.type() == TokenType.EOF; }
 
     //Parsing Logic
 
@@ -46,6 +67,11 @@ public class Parser {
         return statements;
     }
 
+    // Parses one top-level statement from the current token
+    public Stmt parseStatement() {
+        return statement();
+    }
+
     private Stmt statement() {
         if (check(TokenType.CONST)) return constDecl();
         if (check(TokenType.VAR)) return varDecl();
@@ -62,55 +88,56 @@ public class Parser {
     // --- Declarations ---
 
     private Stmt constDecl() {
-        Token keyword = consume(TokenType.CONST, "Expected 'const'");
-        String name = consume(TokenType.IDENTIFIER, "Expected const name").text;
-        String type = null;
+        int line = consume(TokenType.CONST, "Expected 'const'");
+        String name = consumeText(TokenType.IDENTIFIER, "Expected const name");
+        GorbType type = null;
         if (check(TokenType.COLON)) {
             consume(TokenType.COLON, "Expected ':'");
             type = parseType();
         }
         consume(TokenType.ASSIGN, "Expected '='");
         Expr value = expression();
-        // Pass keyword.line
-        return new VarDecl(name, type, value, true, keyword.line);
+        // Pass keyword line
+        return new VarDecl(name, type, value, true, line);
     }
 
     private Stmt varDecl() {
-        Token keyword = consume(TokenType.VAR, "Expected 'var'");
-        String name = consume(TokenType.IDENTIFIER, "Expected variable name").text;
+        int line = consume(TokenType.VAR, "Expected 'var'");
+        String name = consumeText(TokenType.IDENTIFIER, "Expected variable name");
         consume(TokenType.COLON, "Expected ':'");
-        String type = parseType();
+        GorbType type = parseType();
         consume(TokenType.ASSIGN, "Expected '='");
         Expr value = expression();
-        return new VarDecl(name, type, value, false, keyword.line);
+        return new VarDecl(name, type, value, false, line);
     }
 
     private Stmt funDecl() {
-        Token keyword = consume(TokenType.FUN, "Expected 'fun'");
-        String name = consume(TokenType.IDENTIFIER, "Expected function name").text;
+        int line = consume(TokenType.FUN, "Expected 'fun'");
+        String name = consumeText(TokenType.IDENTIFIER, "Expected function name");
         consume(TokenType.LPAREN, "Expected '('");
         List<VarDecl> params = new ArrayList<>();
         if (!check(TokenType.RPAREN)) {
             do {
                 if (params.size() > 0) consume(TokenType.COMMA, "Expected ','");
-                Token paramNameToken = consume(TokenType.IDENTIFIER, "Expected param name");
+                int paramLine = tokens.line();
+                String paramName = consumeText(TokenType.IDENTIFIER, "Expected param name");
                 consume(TokenType.COLON, "Expected ':'");
-                String paramType = parseType();
+                GorbType paramType = parseType();
                 // Parameters are also VarDecls
-                params.add(new VarDecl(paramNameToken.text, paramType, null, false, paramNameToken.line));
+                params.add(new VarDecl(paramName, paramType, null, false, paramLine));
             } while (check(TokenType.COMMA));
         }
         consume(TokenType.RPAREN, "Expected ')'");
         consume(TokenType.ARROW, "Expected '->'");
-        String returnType = parseType();
+        GorbType returnType = parseType();
         Stmt body = block(); // block() returns BlockStmt
-        return new FunDecl(name, returnType, params, (BlockStmt) body, keyword.line);
+        return new FunDecl(name, returnType, params, (BlockStmt) body, line);
     }
 
     // --- Statements ---
 
     private Stmt ifStmt() {
-        Token keyword = consume(TokenType.IF, "Expected 'if'");
+        int line = consume(TokenType.IF, "Expected 'if'");
         consume(TokenType.LPAREN, "Expected '('");
         Expr condition = expression();
         consume(TokenType.RPAREN, "Expected ')'");
@@ -120,188 +147,275 @@ public class Parser {
             consume(TokenType.ELSE, "Expected 'else'");
             elseBranch = check(TokenType.IF) ? ifStmt() : block();
         }
-        return new IfStmt(condition, thenBranch, elseBranch, keyword.line);
+        return new IfStmt(condition, thenBranch, elseBranch, line);
     }
 
     private Stmt whileStmt() {
-        Token keyword = consume(TokenType.WHILE, "Expected 'while'");
+        int line = consume(TokenType.WHILE, "Expected 'while'");
         consume(TokenType.LPAREN, "Expected '('");
         Expr condition = expression();
         consume(TokenType.RPAREN, "Expected ')'");
         Stmt body = block();
-        return new WhileStmt(condition, body, keyword.line);
+        return new WhileStmt(condition, body, line);
     }
 
     private Stmt block() {
-        Token brace = consume(TokenType.LBRACE, "Expected '{'");
+        int line = consume(TokenType.LBRACE, "Expected '{'");
         List<Stmt> statements = new ArrayList<>();
         while (!check(TokenType.RBRACE) && !isAtEnd()) {
             statements.add(statement());
         }
         consume(TokenType.RBRACE, "Expected '}'");
-        return new BlockStmt(statements, brace.line);
+        return new BlockStmt(statements, line);
     }
 
     private Stmt printStmt() {
-        Token keyword = consume(TokenType.PRINT, "Expected 'print'");
+        int line = consume(TokenType.PRINT, "Expected 'print'");
         consume(TokenType.LPAREN, "Expected '('");
         Expr expr = expression();
         consume(TokenType.RPAREN, "Expected ')'");
-        return new PrintStmt(expr, keyword.line);
+        return new PrintStmt(expr, line);
     }
 
     private Stmt inputStmt() {
-        Token keyword = consume(TokenType.INPUT, "Expected 'input'");
+        int line = consume(TokenType.INPUT, "Expected 'input'");
         consume(TokenType.LPAREN, "Expected '('");
-        String name = consume(TokenType.IDENTIFIER, "Expected var name").text;
+        String name = consumeText(TokenType.IDENTIFIER, "Expected var name");
         consume(TokenType.RPAREN, "Expected ')'");
-        return new InputStmt(name, keyword.line);
+        return new InputStmt(name, line);
     }
 
     private Stmt returnStmt() {
-        Token keyword = consume(TokenType.RETURN, "Expected 'return'");
+        int line = consume(TokenType.RETURN, "Expected 'return'");
         Expr value = expression();
-        return new ReturnStmt(value, keyword.line);
+        return new ReturnStmt(value, line);
     }
 
     private Stmt assignOrExprStmt() {
         // Capture line before parsing expression just in case
-        int line = peek().line;
+        int line = tokens.line();
         Expr expr = expression();
 
         if (check(TokenType.ASSIGN)) {
-            Token equals = consume(TokenType.ASSIGN, "Expected '='");
+            int equalsLine = consume(TokenType.ASSIGN, "Expected '='");
             if (expr instanceof Variable) {
                 String name = ((Variable) expr).name;
                 Expr value = expression();
-                return new AssignStmt(name, value, equals.line);
+                return new AssignStmt(name, value, equalsLine);
             }
-            throw new RuntimeException("Invalid assignment target at line " + equals.line);
+            throw new RuntimeException("Invalid assignment target at line " + equalsLine);
         }
         return new ExprStmt(expr, line);
     }
 
     //Expressions
+    // Precedence climbing over explicit operand / operator stacks, so no Java frame is used per
+    // operand or per nesting level. Levels from loosest to tightest:
+    //   == !=  |  > >= < <=  |  + -  |  * /  |  ^ (right associative)  |  prefix - and !
+    // All binary levels are left associative except '^'.
+
+    private static final int[] PRECEDENCE = new int[TokenType.values().length];
+    private static final BinaryOp[] OPERATORS = new BinaryOp[TokenType.values().length];
+    private static final int POWER_PRECEDENCE = 5;
+
+    static {
+        binary(TokenType.EQ, BinaryOp.EQ, 1);
+        binary(TokenType.NEQ, BinaryOp.NEQ, 1);
+        binary(TokenType.GT, BinaryOp.GT, 2);
+        binary(TokenType.GE, BinaryOp.GE, 2);
+        binary(TokenType.LT, BinaryOp.LT, 2);
+        binary(TokenType.LE, BinaryOp.LE, 2);
+        binary(TokenType.PLUS, BinaryOp.ADD, 3);
+        binary(TokenType.MINUS, BinaryOp.SUB, 3);
+        binary(TokenType.STAR, BinaryOp.MUL, 4);
+        binary(TokenType.SLASH, BinaryOp.DIV, 4);
+        binary(TokenType.CARET, BinaryOp.POW, POWER_PRECEDENCE);
+    }
 
-    private Expr expression() { return equality(); }
-
-    private Expr equality() {
-        Expr expr = comparison();
-        while (check(TokenType.EQ) || check(TokenType.NEQ)) {
-            Token op = advance();
-            Expr right = comparison();
-            expr = new BinaryExpr(expr, op.text, right, op.line);
-        }
-        return expr;
+    private static void binary(TokenType token, BinaryOp op, int precedence) {
+        PRECEDENCE[token.ordinal()] = precedence;
+        OPERATORS[token.ordinal()] = op;
     }
 
-    private Expr comparison() {
-        Expr expr = term();
-        while (check(TokenType.GT) || check(TokenType.GE) ||
-                check(TokenType.LT) || check(TokenType.LE)) {
-            Token op = advance();
-            Expr right = term();
-            expr = new BinaryExpr(expr, op.text, right, op.line);
+    // Operator stack entries: a binary operator is stored as its precedence (> 0)
+    private static final int OP_PAREN = -1;
+    private static final int OP_CALL = -2;  // Arguments are the operands above opArgBase
+    private static final int OP_NEG = -3;   // Unary minus
+    private static final int OP_NOT = -4;
+
+    private int[] opKinds = new int[32];
+    private int[] opLines = new int[32];
+    private int[] opArgBase = new int[32];
+    private BinaryOp[] opOperators = new BinaryOp[32];
+    private String[] opNames = new String[32]; // Called function name
+    private int opTop = 0;
+
+    private Expr[] operands = new Expr[32];
+    private int operandTop = 0;
+
+    private Expr expression() {
+        // Expressions never nest through Java calls, so the stacks are empty here
+        opTop = 0;
+        operandTop = 0;
+        // After '!' the next operand is a bare primary (see OP_NOT below)
+        boolean primaryOnly = false;
+
+        while (true) {
+            // 1. Operand position: prefixes and '(' open a level, anything else is a primary
+            TokenType type = tokens.type();
+            int line = tokens.line();
+            if (!primaryOnly && (type == TokenType.NOT || type == TokenType.MINUS)) {
+                pushOp(type == TokenType.MINUS ? OP_NEG : OP_NOT, advance(), null, null, 0);
+                continue;
+            }
+            primaryOnly = false;
+            if (type == TokenType.LPAREN) {
+                tokens.advance();
+                pushOp(OP_PAREN, line, null, null, 0);
+                continue;
+            }
+            if (type == TokenType.IDENTIFIER) {
+                String name = tokens.text();
+                tokens.advance();
+                if (check(TokenType.LPAREN)) {
+                    tokens.advance();
+                    if (!check(TokenType.RPAREN)) {
+                        pushOp(OP_CALL, line, null, name, operandTop);
+                        continue;
+                    }
+                    tokens.advance();
+                    pushOperand(new CallExpr(name, new ArrayList<>(), line));
+                } else {
+                    pushOperand(new Variable(name, line));
+                }
+            } else {
+                pushOperand(literal(type, line));
+            }
+
+            // 2. Operator position: an operand is complete
+            while (true) {
+                // Prefix operators bind tighter than any binary operator
+                while (opTop > 0 && opKinds[opTop - 1] == OP_NEG) {
+                    opTop--;
+                    int minusLine = opLines[opTop];
+                    // Synthetic "0" for unary minus gets the line of the minus sign
+                    Expr right = popOperand();
+                    pushOperand(new BinaryExpr(new IntLiteral(0, minusLine), BinaryOp.SUB, right, minusLine));
+                }
+                if (opTop > 0 && opKinds[opTop - 1] == OP_NOT) {
+                    // '!' has no AST node: its operand is dropped and the primary after it is used instead
+                    opTop--;
+                    popOperand();
+                    primaryOnly = true;
+                    break;
+                }
+
+                int precedence = PRECEDENCE[tokens.type().ordinal()];
+                if (precedence > 0) {
+                    reduceBinary(precedence);
+                    BinaryOp op = OPERATORS[tokens.type().ordinal()];
+                    pushOp(precedence, advance(), op, null, 0);
+                    break;
+                }
+
+                // End of the innermost open level
+                reduceBinary(0);
+                if (opTop == 0) return popOperand();
+                if (opKinds[opTop - 1] == OP_PAREN) {
+                    consume(TokenType.RPAREN, "Expected ')'");
+                    opTop--;
+                    continue;
+                }
+                // OP_CALL
+                if (check(TokenType.COMMA)) {
+                    tokens.advance();
+                    break;
+                }
+                consume(TokenType.RPAREN, "Expected ')'");
+                opTop--;
+                int argBase = opArgBase[opTop];
+                List<Expr> args = new ArrayList<>(operandTop - argBase);
+                for (int i = argBase; i < operandTop; i++) args.add(operands[i]);
+                operandTop = argBase;
+                pushOperand(new CallExpr(opNames[opTop], args, opLines[opTop]));
+            }
         }
-        return expr;
     }
 
-    private Expr term() {
-        Expr expr = factor();
-        while (check(TokenType.PLUS) || check(TokenType.MINUS)) {
-            Token op = advance();
-            Expr right = factor();
-            expr = new BinaryExpr(expr, op.text, right, op.line);
+    // Folds the binary operators on top of the stack that bind at least as tight as the next one
+    // ('^' only if strictly tighter, it is right associative); precedence 0 folds the whole level
+    private void reduceBinary(int precedence) {
+        while (opTop > 0) {
+            int top = opKinds[opTop - 1];
+            if (top <= 0 || top < precedence || (top == precedence && precedence == POWER_PRECEDENCE)) return;
+            opTop--;
+            Expr right = popOperand();
+            Expr left = popOperand();
+            pushOperand(new BinaryExpr(left, opOperators[opTop], right, opLines[opTop]));
         }
-        return expr;
     }
 
-    private Expr factor() {
-        Expr expr = power();
-        while (check(TokenType.STAR) || check(TokenType.SLASH)) {
-            Token op = advance();
-            Expr right = power();
-            expr = new BinaryExpr(expr, op.text, right, op.line);
+    private Expr literal(TokenType type, int line) {
+        switch (type) {
+            case FALSE:
+                tokens.advance();
+                return new BoolLiteral(false, line);
+            case TRUE:
+                tokens.advance();
+                return new BoolLiteral(true, line);
+            case INT:
+                return new IntLiteral(Integer.parseInt(consumeText(TokenType.INT, "")), line);
+            case FLOAT:
+                return new FloatLiteral(Double.parseDouble(consumeText(TokenType.FLOAT, "")), line);
+            case STRING:
+                String val = consumeText(TokenType.STRING, "");
+                if (val.startsWith("\"")) val = val.substring(1, val.length() - 1);
+                return new StringLiteral(val, line);
+            default:
+                throw new RuntimeException("Unexpected token at line " + line);
         }
-        return expr;
     }
 
-    private Expr power() {
-        Expr left = unary();
-        if (check(TokenType.CARET)) {
-            Token op = advance();
-            Expr right = power(); // Right associative
-            return new BinaryExpr(left, op.text, right, op.line);
+    private void pushOp(int kind, int line, BinaryOp op, String name, int argBase) {
+        if (opTop == opKinds.length) {
+            int capacity = opTop * 2;
+            opKinds = Arrays.copyOf(opKinds, capacity);
+            opLines = Arrays.copyOf(opLines, capacity);
+            opArgBase = Arrays.copyOf(opArgBase, capacity);
+            opOperators = Arrays.copyOf(opOperators, capacity);
+            opNames = Arrays.copyOf(opNames, capacity);
         }
-        return left;
+        opKinds[opTop] = kind;
+        opLines[opTop] = line;
+        opArgBase[opTop] = argBase;
+        opOperators[opTop] = op;
+        opNames[opTop] = name;
+        opTop++;
     }
 
-    private Expr unary() {
-        if (check(TokenType.NOT) || check(TokenType.MINUS)) {
-            Token op = advance();
-            Expr right = unary();
-            if (op.text.equals("-")) {
-                // Synthetic "0" for unary minus gets the line of the minus sign
-                return new BinaryExpr(new IntLiteral(0, op.line), "-", right, op.line);
-            }
-            // For NOT, handle accordingly or treat as primary
-        }
-        return primary();
+    private void pushOperand(Expr expr) {
+        if (operandTop == operands.length) operands = Arrays.copyOf(operands, operandTop * 2);
+        operands[operandTop++] = expr;
     }
 
-    private Expr primary() {
-        if (check(TokenType.FALSE)) {
-            Token t = advance();
-            return new BoolLiteral(false, t.line);
-        }
-        if (check(TokenType.TRUE)) {
-            Token t = advance();
-            return new BoolLiteral(true, t.line);
-        }
-        if (check(TokenType.INT)) {
-            Token t = advance();
-            return new IntLiteral(Integer.parseInt(t.text), t.line);
-        }
-        if (check(TokenType.FLOAT)) {
-            Token t = advance();
-            return new FloatLiteral(Double.parseDouble(t.text), t.line);
-        }
-        if (check(TokenType.STRING)) {
-            Token t = advance();
-            String val = t.text;
-            if (val.startsWith("\"")) val = val.substring(1, val.length() - 1);
-            return new StringLiteral(val, t.line);
-        }
-        if (check(TokenType.IDENTIFIER)) {
-            Token nameToken = advance();
-            if (check(TokenType.LPAREN)) {
-                consume(TokenType.LPAREN, "Expected '('");
-                List<Expr> args = new ArrayList<>();
-                if (!check(TokenType.RPAREN)) {
-                    do {
-                        if (args.size() > 0) consume(TokenType.COMMA, "Expected ','");
-                        args.add(expression());
-                    } while (check(TokenType.COMMA));
-                }
-                consume(TokenType.RPAREN, "Expected ')'");
-                return new CallExpr(nameToken.text, args, nameToken.line);
-            }
-            return new Variable(nameToken.text, nameToken.line);
-        }
-        if (check(TokenType.LPAREN)) {
-            advance();
-            Expr expr = expression();
-            consume(TokenType.RPAREN, "Expected ')'");
-            return expr;
-        }
-        throw new RuntimeException("Unexpected token at line " + peek().line);
+    private Expr popOperand() {
+        Expr expr = operands[--operandTop];
+        operands[operandTop] = null;
+        return expr;
     }
 
-    private String parseType() {
-        if (check(TokenType.INT_TYPE)) return consume(TokenType.INT_TYPE, "").text;
-        if (check(TokenType.FLOAT_TYPE)) return consume(TokenType.FLOAT_TYPE, "").text;
-        if (check(TokenType.BOOL_TYPE)) return consume(TokenType.BOOL_TYPE, "").text;
-        if (check(TokenType.STRING_TYPE)) return consume(TokenType.STRING_TYPE, "").text;
-        throw new RuntimeException("Expected type at line " + peek().line);
+    private GorbType parseType() {
+        GorbType type = switch (tokens.type()) {
+            case INT_TYPE -> GorbType.INT;
+            case FLOAT_TYPE -> GorbType.FLOAT;
+            case BOOL_TYPE -> GorbType.BOOL;
+            case STRING_TYPE -> GorbType.STRING;
+            default -> null;
+        };
+        if (type != null) {
+            tokens.advance();
+            return type;
+        }
+        throw new RuntimeException("Expected type at line " + tokens.line());
     }
 }
\ No newline at end of file
@@ -2,112 +2,236 @@ package org.example.syntaxAndSemantic;
 
 import org.example.ast.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class SemanticAnalyzer {
-    // Stack for scopes (local variable environments)
-    private final Stack<Map<String, SymbolInfo>> scopes = new Stack<>();
-    // Global function registry
-    private final Map<String, FunSignature> functions = new HashMap<>();
+    // Function bodies are checked in parallel when each task gets at least this many
+    private static final int MIN_BODIES = 32;
+
+    // Visible variables by name; a declaration in an inner scope links to the one it shadows
+    private final Map<String, SymbolInfo> symbols = new HashMap<>();
+    // Globals of the program, read-only while function bodies are checked (empty for the top level)
+    private final Map<String, SymbolInfo> globals;
+    // Names declared in each open scope, innermost last
+    private final ArrayList<List<String>> scopes = new ArrayList<>();
+    // Global function registry, complete before any body is checked
+    private final Map<String, FunSignature> functions;
+
+    // A function body sees every global, so top-level code may call it only once the globals it uses,
+    // directly or through its callees, are declared. Per function: the last declared global its body
+    // uses and the functions it calls. Each function is checked by one thread, which alone writes its keys
+    private final Map<String, GlobalUse> globalUses;
+    private final Map<String, Set<String>> callees;
+    // Calls in top-level code, with the number of globals declared before each
+    private final List<TopLevelCall> topLevelCalls = new ArrayList<>();
 
     // Context for current function analysis
-    private String currentFunctionReturnType = null;
+    private GorbType currentFunctionReturnType = null;
     private String currentFunctionName = "global scope";
 
+    // Frame of the current function: nesting depth and the next free parameter and local slots
+    private int frame = 0;
+    private int globalCount = 0;
+    private int paramCount = 0;
+    private int localCount = 0;
+
     /**
      * Stores function signature details.
      */
     public static class FunSignature {
-        public String returnType;
-        public List<String> paramTypes;
+        public GorbType returnType;
+        public List<GorbType> paramTypes;
 
-        public FunSignature(String returnType, List<String> paramTypes) {
+        public FunSignature(GorbType returnType, List<GorbType> paramTypes) {
             this.returnType = returnType;
             this.paramTypes = paramTypes;
         }
     }
 
+    private record GlobalUse(int slot, String name, String function) { }
+
+    private record TopLevelCall(String function, int declaredGlobals, int line) { }
+
     public SemanticAnalyzer() {
+        this.functions = new HashMap<>();
+        this.globals = Collections.emptyMap();
+        this.globalUses = new ConcurrentHashMap<>();
+        this.callees = new ConcurrentHashMap<>();
         // Initialize global scope
-        scopes.push(new HashMap<>());
+        enterScope();
+    }
+
+    // Checks function bodies of program on another thread, with scopes of its own
+    private SemanticAnalyzer(SemanticAnalyzer program) {
+        this.functions = program.functions;
+        this.globals = program.symbols;
+        this.globalUses = program.globalUses;
+        this.callees = program.callees;
+        enterScope();
     }
 
     public void analyze(List<Stmt> statements) {
+        // 1. Register every function first, so calls may refer to functions declared later (mutual recursion)
+        for (Stmt stmt : statements) {
+            declareFunctions(stmt);
+        }
+
+        // 2. Top-level code in order: it declares the globals that every function body sees
+        List<FunDecl> bodies = new ArrayList<>();
         for (Stmt stmt : statements) {
-            analyzeStmt(stmt);
+            if (stmt instanceof FunDecl f) bodies.add(f);
+            else analyzeStmt(stmt);
         }
+
+        // 3. Function bodies only read the signatures and the globals, so they are checked in parallel,
+        // in ranges of consecutive functions. Each range stops at its first error; the earliest one
+        // in the source is thrown, as a sequential check would.
+        int workers = ForkJoinPool.getCommonPoolParallelism();
+        int tasks = Math.min(workers * 4, bodies.size() / MIN_BODIES);
+        if (workers < 2 || tasks < 2) {
+            for (FunDecl f : bodies) analyzeFunDecl(f);
+        } else {
+            List<ForkJoinTask<RuntimeException>> running = new ArrayList<>();
+            for (int i = 0; i < tasks; i++) {
+                List<FunDecl> range = bodies.subList(bodies.size() * i / tasks, bodies.size() * (i + 1) / tasks);
+                running.add(ForkJoinPool.commonPool().submit(() -> new SemanticAnalyzer(this).analyzeBodies(range)));
+            }
+            RuntimeException first = null;
+            for (ForkJoinTask<RuntimeException> task : running) {
+                RuntimeException error = task.join();
+                if (first == null) first = error;
+            }
+            if (first != null) throw first;
+        }
+
+        // 4. Every call from top-level code comes after the declarations of the globals it reaches
+        checkGlobalOrder();
     }
 
-    private void analyzeStmt(Stmt stmt) {
-        if (stmt instanceof VarDecl) {
-            analyzeVarDecl((VarDecl) stmt);
-        } else if (stmt instanceof AssignStmt) {
-            analyzeAssign((AssignStmt) stmt);
-        } else if (stmt instanceof PrintStmt) {
-            analyzeExpr(((PrintStmt) stmt).expr);
-        } else if (stmt instanceof IfStmt) {
-            analyzeIf((IfStmt) stmt);
-        } else if (stmt instanceof WhileStmt) {
-            analyzeWhile((WhileStmt) stmt);
-        } else if (stmt instanceof BlockStmt) {
-            analyzeBlock((BlockStmt) stmt);
-        } else if (stmt instanceof FunDecl) {
-            analyzeFunDecl((FunDecl) stmt);
-        } else if (stmt instanceof ExprStmt) {
-            analyzeExpr(((ExprStmt) stmt).expr);
-        } else if (stmt instanceof InputStmt) {
-            InputStmt input = (InputStmt) stmt;
-            // Ensure variable exists and is not a constant
-            SymbolInfo info = resolveVariable(input.variableName, input.line);
-            checkNotConst(input.variableName, input.line);
-        } else if (stmt instanceof ReturnStmt) {
-            analyzeReturn((ReturnStmt) stmt);
+    private void checkGlobalOrder() {
+        // What a function uses includes what its callees use, until nothing changes (recursion ends it)
+        Map<String, GlobalUse> reached = new HashMap<>(globalUses);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, Set<String>> calls : callees.entrySet()) {
+                GlobalUse use = reached.get(calls.getKey());
+                for (String callee : calls.getValue()) {
+                    GlobalUse other = reached.get(callee);
+                    if (other != null && (use == null || other.slot > use.slot)) {
+                        use = other;
+                        reached.put(calls.getKey(), use);
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        for (TopLevelCall call : topLevelCalls) {
+            GlobalUse use = reached.get(call.function);
+            if (use == null || use.slot < call.declaredGlobals) continue;
+            String where = use.function.equals(call.function) ? "" : " (in function '" + use.function + "')";
+            throw new RuntimeException("Error at line " + call.line + ": Function '" + call.function +
+                    "' is called before global '" + use.name + "' is declared" + where);
         }
     }
 
-    private void analyzeReturn(ReturnStmt stmt) {
-        if (currentFunctionReturnType == null) {
-            throw new RuntimeException("Error at line " + stmt.line + ": Return statement outside of function");
+    private RuntimeException analyzeBodies(List<FunDecl> bodies) {
+        try {
+            for (FunDecl f : bodies) analyzeFunDecl(f);
+            return null;
+        } catch (RuntimeException e) {
+            return e;
         }
+    }
 
-        String exprType = analyzeExpr(stmt.expr);
+    // Registers the signatures of a statement's functions, including ones nested in blocks and bodies
+    private void declareFunctions(Stmt stmt) {
+        switch (stmt) {
+            case FunDecl f -> {
+                List<GorbType> paramTypes = new ArrayList<>();
+                for (VarDecl param : f.params) {
+                    paramTypes.add(param.type);
+                }
+
+                // Check for function redeclaration
+                if (functions.containsKey(f.name)) {
+                    throw new RuntimeException("Error at line " + f.line + ": Function '" + f.name + "' already declared.");
+                }
 
-        // Check return type compatibility
-        if (!exprType.equals(currentFunctionReturnType)) {
-            // Allow implicit conversion: int -> float
-            if (!(currentFunctionReturnType.equals("float") && exprType.equals("int"))) {
-                throw new RuntimeException("Error at line " + stmt.line + " in function '" + currentFunctionName +
-                        "': Type mismatch in return. Expected " + currentFunctionReturnType + ", got " + exprType);
+                functions.put(f.name, new FunSignature(f.returnType, paramTypes));
+                declareFunctions(f.body);
             }
+            case BlockStmt block -> {
+                for (Stmt s : block.statements) declareFunctions(s);
+            }
+            case IfStmt s -> {
+                declareFunctions(s.thenBranch);
+                if (s.elseBranch != null) declareFunctions(s.elseBranch);
+            }
+            case WhileStmt s -> declareFunctions(s.body);
+            default -> { }
         }
     }
 
-    private void analyzeFunDecl(FunDecl stmt) {
-        List<String> paramTypes = new ArrayList<>();
-        for (VarDecl param : stmt.params) {
-            paramTypes.add(param.type);
+    private void analyzeStmt(Stmt stmt) {
+        switch (stmt) {
+            case VarDecl s -> analyzeVarDecl(s);
+            case AssignStmt s -> analyzeAssign(s);
+            case PrintStmt s -> analyzeExpr(s.expr);
+            case IfStmt s -> analyzeIf(s);
+            case WhileStmt s -> analyzeWhile(s);
+            case BlockStmt s -> analyzeBlock(s);
+            case FunDecl s -> analyzeFunDecl(s);
+            case ExprStmt s -> analyzeExpr(s.expr);
+            case InputStmt input -> {
+                // Ensure variable exists and is not a constant
+                SymbolInfo info = resolveVariable(input.variableName, input.line);
+                checkNotConst(input.variableName, input.line);
+                input.binding = bindingOf(info);
+            }
+            case ReturnStmt s -> analyzeReturn(s);
         }
+    }
 
-        // Check for function redeclaration
-        if (functions.containsKey(stmt.name)) {
-            throw new RuntimeException("Error at line " + stmt.line + ": Function '" + stmt.name + "' already declared.");
+    private void analyzeReturn(ReturnStmt stmt) {
+        if (currentFunctionReturnType == null) {
+            throw new RuntimeException("Error at line " + stmt.line + ": Return statement outside of function");
         }
 
-        functions.put(stmt.name, new FunSignature(stmt.returnType, paramTypes));
+        GorbType exprType = analyzeExpr(stmt.expr);
 
+        // Check return type compatibility (allows implicit conversion int -> float)
+        if (!currentFunctionReturnType.accepts(exprType)) {
+            throw new RuntimeException("Error at line " + stmt.line + " in function '" + currentFunctionName +
+                    "': Type mismatch in return. Expected " + currentFunctionReturnType + ", got " + exprType);
+        }
+        widen(stmt.expr, currentFunctionReturnType);
+    }
+
+    // The signature is registered by declareFunctions before any code is checked
+    private void analyzeFunDecl(FunDecl stmt) {
         enterScope();
 
         // Save previous context
-        String previousReturnType = currentFunctionReturnType;
+        GorbType previousReturnType = currentFunctionReturnType;
         String previousFunctionName = currentFunctionName;
+        int previousParamCount = paramCount;
+        int previousLocalCount = localCount;
 
         // Set new context
         currentFunctionReturnType = stmt.returnType;
         currentFunctionName = stmt.name;
+        frame++;
+        paramCount = 0;
+        localCount = 0;
 
         try {
             // Declare parameters in the local scope
             for (VarDecl param : stmt.params) {
-                declareVariable(param.name, param.type, false, param.line);
+                param.binding = declareVariable(param.name, param.type, false, true, param.line);
             }
             // Analyze function body
             for (Stmt s : stmt.body.statements) {
@@ -117,13 +241,16 @@ public class SemanticAnalyzer {
             // Restore previous context
             currentFunctionReturnType = previousReturnType;
             currentFunctionName = previousFunctionName;
+            frame--;
+            paramCount = previousParamCount;
+            localCount = previousLocalCount;
             exitScope();
         }
     }
 
     private void analyzeVarDecl(VarDecl stmt) {
-        String declaredType = stmt.type;
-        String inferredType = null;
+        GorbType declaredType = stmt.type;
+        GorbType inferredType = null;
 
         if (stmt.initializer != null) {
             inferredType = analyzeExpr(stmt.initializer);
@@ -134,43 +261,40 @@ public class SemanticAnalyzer {
                 throw new RuntimeException("Error at line " + stmt.line + ": Constant '" + stmt.name + "' must have an initializer.");
             declaredType = inferredType; // Constants infer type from initializer
         } else {
-            if (declaredType != null && inferredType != null) {
-                if (!declaredType.equals(inferredType)) {
-                    // Allow implicit int -> float conversion
-                    if (!(declaredType.equals("float") && inferredType.equals("int"))) {
-                        throw new RuntimeException("Error at line " + stmt.line + ": Type mismatch for variable '" + stmt.name +
-                                "': declared " + declaredType + ", got " + inferredType);
-                    }
-                }
+            // Allow implicit int -> float conversion
+            if (declaredType != null && inferredType != null && !declaredType.accepts(inferredType)) {
+                throw new RuntimeException("Error at line " + stmt.line + ": Type mismatch for variable '" + stmt.name +
+                        "': declared " + declaredType + ", got " + inferredType);
             }
+            if (declaredType != null && inferredType != null) widen(stmt.initializer, declaredType);
         }
-        declareVariable(stmt.name, declaredType, stmt.isConstant, stmt.line);
+        stmt.binding = declareVariable(stmt.name, declaredType, stmt.isConstant, false, stmt.line);
     }
 
     private void analyzeAssign(AssignStmt stmt) {
         SymbolInfo info = resolveVariable(stmt.name, stmt.line);
         if (info.isConst)
             throw new RuntimeException("Error at line " + stmt.line + ": Cannot reassign constant '" + stmt.name + "'");
+        stmt.binding = bindingOf(info);
 
-        String exprType = analyzeExpr(stmt.value);
-        if (!info.type.equals(exprType)) {
-            // Allow implicit int -> float conversion
-            if (!(info.type.equals("float") && exprType.equals("int"))) {
-                throw new RuntimeException("Error at line " + stmt.line + ": Type mismatch on assignment to '" + stmt.name +
-                        "': expected " + info.type + ", got " + exprType);
-            }
+        GorbType exprType = analyzeExpr(stmt.value);
+        // Allow implicit int -> float conversion
+        if (!info.type.accepts(exprType)) {
+            throw new RuntimeException("Error at line " + stmt.line + ": Type mismatch on assignment to '" + stmt.name +
+                    "': expected " + info.type + ", got " + exprType);
         }
+        widen(stmt.value, info.type);
     }
 
     private void analyzeIf(IfStmt stmt) {
-        if (!analyzeExpr(stmt.condition).equals("bool"))
+        if (analyzeExpr(stmt.condition) != GorbType.BOOL)
             throw new RuntimeException("Error at line " + stmt.line + ": 'if' condition must be of type bool");
         analyzeStmt(stmt.thenBranch);
         if (stmt.elseBranch != null) analyzeStmt(stmt.elseBranch);
     }
 
     private void analyzeWhile(WhileStmt stmt) {
-        if (!analyzeExpr(stmt.condition).equals("bool"))
+        if (analyzeExpr(stmt.condition) != GorbType.BOOL)
             throw new RuntimeException("Error at line " + stmt.line + ": 'while' condition must be of type bool");
         analyzeStmt(stmt.body);
     }
@@ -186,95 +310,110 @@ public class SemanticAnalyzer {
 
     // === Expression Analysis ===
 
-    private String analyzeExpr(Expr expr) {
-        if (expr instanceof IntLiteral) return "int";
-        if (expr instanceof FloatLiteral) return "float";
-        if (expr instanceof BoolLiteral) return "bool";
-        if (expr instanceof StringLiteral) return "string";
-
-        if (expr instanceof Variable) {
-            Variable v = (Variable) expr;
-            return resolveVariable(v.name, v.line).type;
-        }
-
-        if (expr instanceof BinaryExpr) return analyzeBinaryExpr((BinaryExpr) expr);
-
-        if (expr instanceof CallExpr) return analyzeCall((CallExpr) expr);
+    // Records the type on the node; the consumer of the value decides on widenToFloat afterwards
+    private GorbType analyzeExpr(Expr expr) {
+        GorbType type = switch (expr) {
+            case IntLiteral e -> GorbType.INT;
+            case FloatLiteral e -> GorbType.FLOAT;
+            case BoolLiteral e -> GorbType.BOOL;
+            case StringLiteral e -> GorbType.STRING;
+            case Variable v -> {
+                SymbolInfo info = resolveVariable(v.name, v.line);
+                v.binding = bindingOf(info);
+                yield info.type;
+            }
+            case BinaryExpr e -> analyzeBinaryExpr(e);
+            case CallExpr e -> analyzeCall(e);
+        };
+        expr.type = type;
+        expr.widenToFloat = false;
+        return type;
+    }
 
-        throw new RuntimeException("Error: Unknown expression type: " + expr);
+    // An int value read where a float is expected: assignments, arguments, returns and mixed arithmetic
+    private static void widen(Expr expr, GorbType target) {
+        if (target == GorbType.FLOAT && expr.type == GorbType.INT) expr.widenToFloat = true;
     }
 
-    private String analyzeBinaryExpr(BinaryExpr expr) {
-        String left = analyzeExpr(expr.left);
-        String right = analyzeExpr(expr.right);
+    private GorbType analyzeBinaryExpr(BinaryExpr expr) {
+        GorbType left = analyzeExpr(expr.left);
+        GorbType right = analyzeExpr(expr.right);
+        boolean numeric = left.isNumeric() && right.isNumeric();
 
-        // Division check
-        if (expr.op.equals("/")) {
-            // Basic static check for division by zero literals
-            if (expr.right instanceof IntLiteral && ((IntLiteral) expr.right).value == 0) {
-                throw new RuntimeException("Error at line " + expr.line + ": Division by zero detected (int)");
-            }
-            if (expr.right instanceof FloatLiteral && ((FloatLiteral) expr.right).value == 0.0) {
-                throw new RuntimeException("Error at line " + expr.line + ": Division by zero detected (float)");
-            }
-            if ((left.equals("int") || left.equals("float")) && (right.equals("int") || right.equals("float"))) {
-                return "float"; // Division always results in float
-            }
+        // Mixed int/float operands, and division, compute in float
+        if (numeric && (expr.op == BinaryOp.DIV || left == GorbType.FLOAT || right == GorbType.FLOAT)) {
+            widen(expr.left, GorbType.FLOAT);
+            widen(expr.right, GorbType.FLOAT);
         }
 
-        if (Set.of("+", "-", "*", "^").contains(expr.op)) {
-            // String concatenation
-            if (expr.op.equals("+") && (left.equals("string") || right.equals("string"))) return "string";
-
-            boolean isFloat = left.equals("float") || right.equals("float");
-            if ((left.equals("int") || left.equals("float")) && (right.equals("int") || right.equals("float"))) {
-                return isFloat ? "float" : "int";
+        return switch (expr.op) {
+            case DIV -> {
+                // Basic static check for division by zero literals
+                if (expr.right instanceof IntLiteral lit && lit.value == 0) {
+                    throw new RuntimeException("Error at line " + expr.line + ": Division by zero detected (int)");
+                }
+                if (expr.right instanceof FloatLiteral lit && lit.value == 0.0) {
+                    throw new RuntimeException("Error at line " + expr.line + ": Division by zero detected (float)");
+                }
+                yield numeric ? GorbType.FLOAT : GorbType.UNKNOWN; // Division always results in float
             }
-            throw new RuntimeException("Error at line " + expr.line + ": Operator '" + expr.op + "' not valid for types " + left + " and " + right);
-        }
+            case ADD, SUB, MUL, POW -> {
+                // String concatenation
+                if (expr.op == BinaryOp.ADD && (left == GorbType.STRING || right == GorbType.STRING)) yield GorbType.STRING;
 
-        if (Set.of(">", "<", ">=", "<=").contains(expr.op)) {
-            if ((left.equals("int") || left.equals("float")) && (right.equals("int") || right.equals("float"))) {
-                return "bool";
+                if (numeric) {
+                    yield left == GorbType.FLOAT || right == GorbType.FLOAT ? GorbType.FLOAT : GorbType.INT;
+                }
+                throw new RuntimeException("Error at line " + expr.line + ": Operator '" + expr.op + "' not valid for types " + left + " and " + right);
             }
-            throw new RuntimeException("Error at line " + expr.line + ": Comparison operator '" + expr.op + "' requires numeric types");
-        }
-
-        if (Set.of("==", "!=", "EQ", "NEQ").contains(expr.op)) {
-            return "bool";
-        }
-        return "unknown";
+            case GT, LT, GE, LE -> {
+                if (numeric) yield GorbType.BOOL;
+                throw new RuntimeException("Error at line " + expr.line + ": Comparison operator '" + expr.op + "' requires numeric types");
+            }
+            case EQ, NEQ -> GorbType.BOOL;
+        };
     }
 
-    private String analyzeCall(CallExpr expr) {
+    private GorbType analyzeCall(CallExpr expr) {
         FunSignature func = functions.get(expr.name);
         if (func == null)
             throw new RuntimeException("Error at line " + expr.line + ": Undefined function '" + expr.name + "'");
+        if (frame == 0) topLevelCalls.add(new TopLevelCall(expr.name, globalCount, expr.line));
+        else callees.computeIfAbsent(currentFunctionName, name -> new HashSet<>()).add(expr.name);
 
         if (func.paramTypes.size() != expr.args.size())
             throw new RuntimeException("Error at line " + expr.line + ": Argument count mismatch for function '" + expr.name + "'");
 
         for(int i=0; i<expr.args.size(); i++) {
-            String argType = analyzeExpr(expr.args.get(i));
-            String expected = func.paramTypes.get(i);
-            if (!argType.equals(expected)) {
-                // Allow int -> float
-                if (!(expected.equals("float") && argType.equals("int"))) {
-                    throw new RuntimeException("Error at line " + expr.line + ": Argument " + (i+1) +
-                            " mismatch in function call '" + expr.name + "': expected " + expected + ", got " + argType);
-                }
+            GorbType argType = analyzeExpr(expr.args.get(i));
+            GorbType expected = func.paramTypes.get(i);
+            // Allow int -> float
+            if (!expected.accepts(argType)) {
+                throw new RuntimeException("Error at line " + expr.line + ": Argument " + (i+1) +
+                        " mismatch in function call '" + expr.name + "': expected " + expected + ", got " + argType);
             }
+            widen(expr.args.get(i), expected);
         }
         return func.returnType;
     }
 
     // === Scopes ===
-    private void enterScope() { scopes.push(new HashMap<>()); }
-    private void exitScope() { scopes.pop(); }
+    private void enterScope() { scopes.add(new ArrayList<>()); }
+
+    private void exitScope() {
+        // Make the variables shadowed by this scope's declarations visible again
+        for (String name : scopes.remove(scopes.size() - 1)) {
+            SymbolInfo info = symbols.get(name);
+            if (info.shadowed != null) symbols.put(name, info.shadowed);
+            else symbols.remove(name);
+        }
+    }
+
+    private Binding declareVariable(String name, GorbType type, boolean isConst, boolean isParam, int line) {
+        SymbolInfo existing = lookup(name);
 
-    private void declareVariable(String name, String type, boolean isConst, int line) {
         // 1. Check for duplicate variable declaration in the current scope
-        if (scopes.peek().containsKey(name)) {
+        if (existing != null && existing.depth == scopes.size()) {
             throw new RuntimeException("Error at line " + line + ": Variable '" + name + "' already declared in this scope.");
         }
 
@@ -283,16 +422,40 @@ public class SemanticAnalyzer {
             throw new RuntimeException("Error at line " + line + ": Identifier '" + name + "' is already declared as a function.");
         }
 
-        // Declare variable
-        scopes.peek().put(name, new SymbolInfo(type, isConst));
+        // Declare variable in the next free slot of its frame
+        Binding binding;
+        if (isParam) binding = new Binding(Binding.Kind.PARAM, paramCount++);
+        else if (frame == 0 && scopes.size() == 1) binding = new Binding(Binding.Kind.GLOBAL, globalCount++);
+        else binding = new Binding(Binding.Kind.LOCAL, localCount++);
+
+        symbols.put(name, new SymbolInfo(type, isConst, binding, frame, scopes.size(), existing));
+        scopes.get(scopes.size() - 1).add(name);
+        return binding;
     }
 
     private SymbolInfo resolveVariable(String name, int line) {
-        // Search from inner scope to outer scope
-        for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name)) return scopes.get(i).get(name);
+        SymbolInfo info = lookup(name);
+        if (info == null) throw new RuntimeException("Error at line " + line + ": Undefined variable '" + name + "'");
+        if (frame > 0 && info.binding.kind == Binding.Kind.GLOBAL) {
+            GlobalUse use = globalUses.get(currentFunctionName);
+            if (use == null || info.binding.slot > use.slot) {
+                globalUses.put(currentFunctionName, new GlobalUse(info.binding.slot, name, currentFunctionName));
+            }
+        }
+        return info;
+    }
+
+    private SymbolInfo lookup(String name) {
+        SymbolInfo info = symbols.get(name);
+        return info != null ? info : globals.get(name);
+    }
+
+    // A parameter or local of an enclosing function is not in the current frame
+    private Binding bindingOf(SymbolInfo info) {
+        if (info.frame != frame && info.binding.kind != Binding.Kind.GLOBAL) {
+            return new Binding(Binding.Kind.OUTER, info.binding.slot);
         }
-        throw new RuntimeException("Error at line " + line + ": Undefined variable '" + name + "'");
+        return info.binding;
     }
 
     private void checkNotConst(String name, int line) {
@@ -1,12 +1,22 @@
 package org.example.syntaxAndSemantic;
 
+import org.example.ast.Binding;
+import org.example.ast.GorbType;
 
 public class SymbolInfo {
-    public final String type;      // "int", "float", "bool", "string"
+    public final GorbType type;
     public final boolean isConst;  // true якщо це const
+    public final Binding binding;  // Slot in the frame the variable was declared in
+    final int frame;               // Function nesting depth of that frame (0 for the top level)
+    final int depth;               // Scope nesting depth of the declaration
+    final SymbolInfo shadowed;     // Variable with the same name in an outer scope, visible again on exit
 
-    public SymbolInfo(String type, boolean isConst) {
+    SymbolInfo(GorbType type, boolean isConst, Binding binding, int frame, int depth, SymbolInfo shadowed) {
         this.type = type;
         this.isConst = isConst;
+        this.binding = binding;
+        this.frame = frame;
+        this.depth = depth;
+        this.shadowed = shadowed;
     }
 }
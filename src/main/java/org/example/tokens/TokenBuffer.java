@@ -0,0 +1,139 @@
+package org.example.tokens;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact token storage: one slot per token in parallel primitive arrays instead of Token objects.
+ * Lexemes are not copied per token; each token holds the id of its interned text,
+ * plus its offsets in the source.
+ */
+public class TokenBuffer implements TokenCursor {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final List<String> texts; // Interned lexemes, indexed by text id
+
+    private byte[] types = new byte[256];
+    private int[] starts = new int[256];
+    private int[] ends = new int[256];
+    private int[] lines = new int[256];
+    private int[] textIds = new int[256];
+    private int size = 0;
+
+    private int current = 0;
+
+    public TokenBuffer(List<String> texts) {
+        this.texts = texts;
+    }
+
+    public void add(TokenType type, int start, int end, int line, int textId) {
+        if (size == types.length) grow(size * 2);
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        lines[size] = line;
+        textIds[size] = textId;
+        size++;
+    }
+
+    /**
+     * Appends n unset rows and returns the index of the first one, to be filled by copyRows().
+     * Disjoint reserved ranges may be filled from different threads, as long as no reserve() or add()
+     * runs until they are done: either may replace the arrays.
+     */
+    public int reserve(int n) {
+        if (size + n > types.length) grow(Math.max(types.length * 2, size + n));
+        int at = size;
+        size += n;
+        return at;
+    }
+
+    // Copies all rows of other to index at, shifting lines and mapping text ids through textIdMap
+    public void copyRows(int at, TokenBuffer other, int lineShift, int[] textIdMap) {
+        int n = other.size;
+        System.arraycopy(other.types, 0, types, at, n);
+        System.arraycopy(other.starts, 0, starts, at, n);
+        System.arraycopy(other.ends, 0, ends, at, n);
+        for (int i = 0; i < n; i++) {
+            lines[at + i] = other.lines[i] + lineShift;
+            textIds[at + i] = textIdMap[other.textIds[i]];
+        }
+    }
+
+    /**
+     * Replaces rows [from, to) with all rows of other (same text list), and moves the rows after them
+     * by offsetShift in the source and lineShift in lines.
+     */
+    public void replace(int from, int to, TokenBuffer other, int offsetShift, int lineShift) {
+        int n = other.size;
+        int tail = size - to;
+        int newSize = from + n + tail;
+        if (newSize > types.length) grow(Math.max(types.length * 2, newSize));
+        int at = from + n;
+        System.arraycopy(types, to, types, at, tail);
+        System.arraycopy(starts, to, starts, at, tail);
+        System.arraycopy(ends, to, ends, at, tail);
+        System.arraycopy(lines, to, lines, at, tail);
+        System.arraycopy(textIds, to, textIds, at, tail);
+        for (int i = at; i < newSize; i++) {
+            starts[i] += offsetShift;
+            ends[i] += offsetShift;
+            lines[i] += lineShift;
+        }
+        System.arraycopy(other.types, 0, types, from, n);
+        System.arraycopy(other.starts, 0, starts, from, n);
+        System.arraycopy(other.ends, 0, ends, from, n);
+        System.arraycopy(other.lines, 0, lines, from, n);
+        System.arraycopy(other.textIds, 0, textIds, from, n);
+        size = newSize;
+        if (current >= size) current = size - 1;
+    }
+
+    private void grow(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        textIds = Arrays.copyOf(textIds, capacity);
+    }
+
+    public int size() { return size; }
+
+    public TokenType type(int i) { return TYPES[types[i]]; }
+
+    public int start(int i) { return starts[i]; }
+
+    public int end(int i) { return ends[i]; }
+
+    public int line(int i) { return lines[i]; }
+
+    public int textId(int i) { return textIds[i]; }
+
+    public String text(int i) { return texts.get(textIds[i]); }
+
+    public Token token(int i) {
+        return new Token(type(i), text(i), lines[i]);
+    }
+
+    // === TokenCursor ===
+
+    // Index of the current token
+    public int position() { return current; }
+
+    public void seek(int i) { current = i; }
+
+    @Override
+    public TokenType type() { return type(current); }
+
+    @Override
+    public int line() { return lines[current]; }
+
+    @Override
+    public String text() { return text(current); }
+
+    // Stays on the last token (EOF)
+    @Override
+    public void advance() {
+        if (current < size - 1) current++;
+    }
+}
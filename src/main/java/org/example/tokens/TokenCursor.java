@@ -0,0 +1,15 @@
+package org.example.tokens;
+
+/**
+ * Read position over a sequence of tokens, as seen by the Parser.
+ * Methods without an offset describe the current token.
+ */
+public interface TokenCursor {
+    TokenType type();
+
+    int line();
+
+    String text();
+
+    void advance();
+}
@@ -0,0 +1,8 @@
+package org.example.tokens;
+
+/**
+ * Produces tokens one at a time. After the end of input it keeps returning an EOF token.
+ */
+public interface TokenSource {
+    Token nextToken();
+}
@@ -0,0 +1,76 @@
+package org.example.tokens;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Pull-based token stream with a small lookahead ring buffer.
+ * Tokens are requested from the source only when the parser looks at them,
+ * so memory depends on the lookahead depth, not on the size of the program.
+ */
+public class TokenStream implements TokenCursor {
+    private static final int DEFAULT_LOOKAHEAD = 2;
+
+    private final TokenSource source;
+    private final Token[] ring;
+    private final int mask;
+    private int head = 0;  // Ring index of the current token
+    private int count = 0; // Number of buffered tokens
+
+    public TokenStream(TokenSource source) {
+        this(source, DEFAULT_LOOKAHEAD);
+    }
+
+    public TokenStream(TokenSource source, int lookahead) {
+        if (lookahead < 1) throw new IllegalArgumentException("Lookahead must be at least 1");
+        int size = Integer.highestOneBit(lookahead);
+        if (size < lookahead) size <<= 1;
+        this.source = source;
+        this.ring = new Token[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adapter for an already built token list (must end with EOF).
+     */
+    public static TokenStream of(List<Token> tokens) {
+        Iterator<Token> it = tokens.iterator();
+        Token eof = tokens.get(tokens.size() - 1);
+        return new TokenStream(() -> it.hasNext() ? it.next() : eof);
+    }
+
+    public Token peek() {
+        return peek(0);
+    }
+
+    public Token peek(int k) {
+        if (k >= ring.length) throw new IllegalArgumentException("Lookahead " + k + " exceeds buffer size " + ring.length);
+        while (count <= k) {
+            ring[(head + count) & mask] = source.nextToken();
+            count++;
+        }
+        return ring[(head + k) & mask];
+    }
+
+    public Token next() {
+        Token token = peek(0);
+        ring[head] = null;
+        head = (head + 1) & mask;
+        count--;
+        return token;
+    }
+
+    // === TokenCursor ===
+
+    @Override
+    public TokenType type() { return peek(0).type; }
+
+    @Override
+    public int line() { return peek(0).line; }
+
+    @Override
+    public String text() { return peek(0).text; }
+
+    @Override
+    public void advance() { next(); }
+}